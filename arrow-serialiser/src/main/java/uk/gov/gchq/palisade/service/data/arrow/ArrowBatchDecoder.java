@@ -0,0 +1,113 @@
+/*
+ * Copyright 2018-2021 Crown Copyright
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package uk.gov.gchq.palisade.service.data.arrow;
+
+import org.apache.arrow.memory.BufferAllocator;
+import org.apache.arrow.vector.VectorSchemaRoot;
+import org.apache.arrow.vector.ipc.ArrowStreamReader;
+
+import uk.gov.gchq.palisade.service.data.arrow.ArrowColumn.ValueReader;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.util.Spliterator;
+import java.util.Spliterators;
+import java.util.function.Consumer;
+import java.util.stream.Stream;
+import java.util.stream.StreamSupport;
+
+/**
+ * Decodes the records of an Arrow IPC stream, one record batch at a time. Each batch is loaded into the same set of
+ * off-heap vectors, from which a domain object is read for each row. Columns of the domain class which are not in the
+ * stream are left unset, and columns in the stream which are not in the domain class are ignored.
+ *
+ * @param <O> the domain object type
+ */
+class ArrowBatchDecoder<O> extends Spliterators.AbstractSpliterator<O> implements Closeable {
+    private final ArrowStreamReader reader;
+    private final BufferAllocator allocator;
+    private final RecordColumn columns;
+    private final Class<O> domainClass;
+    private VectorSchemaRoot root;
+    private ValueReader[] readers;
+    private int rowCount;
+    private int row;
+
+    /**
+     * Create a new {@link ArrowBatchDecoder} reading batches from the given stream.
+     *
+     * @param reader      the reader of the Arrow stream, with no batches yet loaded
+     * @param allocator   the allocator used by the reader, owned and closed by this decoder
+     * @param columns     the columns of the domain class
+     * @param domainClass the domain class
+     */
+    ArrowBatchDecoder(final ArrowStreamReader reader, final BufferAllocator allocator, final RecordColumn columns, final Class<O> domainClass) {
+        super(Long.MAX_VALUE, Spliterator.ORDERED | Spliterator.NONNULL);
+        this.reader = reader;
+        this.allocator = allocator;
+        this.columns = columns;
+        this.domainClass = domainClass;
+    }
+
+    /**
+     * Create a stream of the records, which closes the Arrow stream and releases its vectors when it is closed.
+     *
+     * @return a sequential stream of the records
+     */
+    Stream<O> stream() {
+        return StreamSupport.stream(this, false)
+                .onClose(() -> {
+                    try {
+                        close();
+                    } catch (IOException e) {
+                        throw new UncheckedIOException("Failed to close the input stream", e);
+                    }
+                });
+    }
+
+    @Override
+    public boolean tryAdvance(final Consumer<? super O> action) {
+        try {
+            while (row == rowCount) {
+                if (!reader.loadNextBatch()) {
+                    return false;
+                }
+                if (root == null) {
+                    // The same vectors are reused for every batch in the stream
+                    root = reader.getVectorSchemaRoot();
+                    readers = columns.readers(root::getVector);
+                }
+                rowCount = root.getRowCount();
+                row = 0;
+            }
+        } catch (IOException e) {
+            throw new UncheckedIOException("An error occurred during deserialisation", e);
+        }
+        action.accept(domainClass.cast(columns.read(readers, row++)));
+        return true;
+    }
+
+    @Override
+    public void close() throws IOException {
+        try {
+            reader.close();
+        } finally {
+            allocator.close();
+        }
+    }
+}
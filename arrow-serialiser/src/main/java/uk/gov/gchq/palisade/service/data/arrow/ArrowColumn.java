@@ -0,0 +1,353 @@
+/*
+ * Copyright 2018-2021 Crown Copyright
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package uk.gov.gchq.palisade.service.data.arrow;
+
+import org.apache.arrow.vector.BigIntVector;
+import org.apache.arrow.vector.BitVector;
+import org.apache.arrow.vector.FieldVector;
+import org.apache.arrow.vector.Float4Vector;
+import org.apache.arrow.vector.Float8Vector;
+import org.apache.arrow.vector.IntVector;
+import org.apache.arrow.vector.VarBinaryVector;
+import org.apache.arrow.vector.VarCharVector;
+import org.apache.arrow.vector.complex.ListVector;
+import org.apache.arrow.vector.types.FloatingPointPrecision;
+import org.apache.arrow.vector.types.pojo.ArrowType;
+import org.apache.arrow.vector.types.pojo.Field;
+import org.apache.arrow.vector.types.pojo.FieldType;
+import org.apache.avro.Schema;
+import org.apache.avro.reflect.ReflectData;
+import org.apache.avro.specific.SpecificData;
+
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * Maps the values of one field of a domain class, as described by the field's reflected Avro schema, to and from an
+ * Arrow vector. A column is bound to a vector once, giving a writer or reader for every row of every batch which is
+ * later held in that vector.
+ * <p>
+ * Booleans, ints, longs, floats, doubles, strings, enums, bytes, nested records and lists of any of these are supported.
+ * Unions are only supported where they make a field nullable.
+ */
+abstract class ArrowColumn {
+    static final ReflectData DATA = ReflectData.AllowNull.get();
+
+    /**
+     * Writes a value to a row of the vector a column was bound to.
+     */
+    @FunctionalInterface
+    interface ValueWriter {
+        void write(int index, Object value);
+    }
+
+    /**
+     * Reads the value of a row of the vector a column was bound to.
+     */
+    @FunctionalInterface
+    interface ValueReader {
+        Object read(int index);
+    }
+
+    /**
+     * Writes a non-null value to a row of a vector of a known class.
+     *
+     * @param <V> the class of vector
+     */
+    @FunctionalInterface
+    private interface VectorWriter<V> {
+        void write(V vector, int index, Object value);
+    }
+
+    /**
+     * Reads the non-null value of a row of a vector of a known class.
+     *
+     * @param <V> the class of vector
+     */
+    @FunctionalInterface
+    private interface VectorReader<V> {
+        Object read(V vector, int index);
+    }
+
+    /**
+     * Create the column for a field's schema.
+     *
+     * @param schema    the schema of the field, with any nullable union already removed
+     * @param enclosing the full names of the records enclosing this field, to reject recursive records
+     * @return the column for the field
+     * @throws IllegalArgumentException if the schema cannot be mapped to an Arrow vector
+     */
+    static ArrowColumn forSchema(final Schema schema, final Set<String> enclosing) {
+        // Reflection marks byte arrays, collections and types such as shorts with their Java class
+        String javaClass = schema.getProp(SpecificData.CLASS_PROP);
+        boolean list = schema.getType() == Schema.Type.ARRAY && (javaClass == null || isListClass(javaClass));
+        if (javaClass != null && schema.getType() != Schema.Type.BYTES && !list) {
+            throw unsupported(schema);
+        }
+        switch (schema.getType()) {
+            case BOOLEAN:
+                return scalar(ArrowType.Bool.INSTANCE, BitVector.class,
+                        (bits, index, value) -> bits.setSafe(index, Boolean.TRUE.equals(value) ? 1 : 0),
+                        (bits, index) -> bits.get(index) != 0);
+            case INT:
+                return scalar(new ArrowType.Int(Integer.SIZE, true), IntVector.class,
+                        (ints, index, value) -> ints.setSafe(index, (Integer) value),
+                        (ints, index) -> ints.get(index));
+            case LONG:
+                return scalar(new ArrowType.Int(Long.SIZE, true), BigIntVector.class,
+                        (longs, index, value) -> longs.setSafe(index, (Long) value),
+                        (longs, index) -> longs.get(index));
+            case FLOAT:
+                return scalar(new ArrowType.FloatingPoint(FloatingPointPrecision.SINGLE), Float4Vector.class,
+                        (floats, index, value) -> floats.setSafe(index, (Float) value),
+                        (floats, index) -> floats.get(index));
+            case DOUBLE:
+                return scalar(new ArrowType.FloatingPoint(FloatingPointPrecision.DOUBLE), Float8Vector.class,
+                        (doubles, index, value) -> doubles.setSafe(index, (Double) value),
+                        (doubles, index) -> doubles.get(index));
+            case STRING:
+                return scalar(ArrowType.Utf8.INSTANCE, VarCharVector.class,
+                        (strings, index, value) -> strings.setSafe(index, value.toString().getBytes(StandardCharsets.UTF_8)),
+                        (strings, index) -> new String(strings.get(index), StandardCharsets.UTF_8));
+            case ENUM:
+                Map<String, Object> symbols = enumSymbols(schema);
+                return scalar(ArrowType.Utf8.INSTANCE, VarCharVector.class,
+                        (strings, index, value) -> strings.setSafe(index, ((Enum<?>) value).name().getBytes(StandardCharsets.UTF_8)),
+                        (strings, index) -> symbols.get(new String(strings.get(index), StandardCharsets.UTF_8)));
+            case BYTES:
+                // Fields without a Java class are ByteBuffers
+                boolean byteBuffer = javaClass == null;
+                return scalar(ArrowType.Binary.INSTANCE, VarBinaryVector.class,
+                        (binaries, index, value) -> binaries.setSafe(index, toByteArray(value)),
+                        (binaries, index) -> byteBuffer ? ByteBuffer.wrap(binaries.get(index)) : binaries.get(index));
+            case RECORD:
+                return new RecordColumn(schema, enclosing);
+            case ARRAY:
+                return new ListColumn(forSchema(nonNull(schema.getElementType()), enclosing));
+            default:
+                throw unsupported(schema);
+        }
+    }
+
+    /**
+     * Check whether a schema is a union of null and one other type, as used by Avro's reflection for nullable fields.
+     *
+     * @param schema the schema of a field
+     * @return true if the field may be null
+     */
+    static boolean isNullable(final Schema schema) {
+        return schema.getType() == Schema.Type.UNION
+                && schema.getTypes().stream().anyMatch(type -> type.getType() == Schema.Type.NULL);
+    }
+
+    /**
+     * Remove the null branch from a nullable union.
+     *
+     * @param schema the schema of a field
+     * @return the schema of the field's non-null values
+     * @throws IllegalArgumentException if the schema is any other union
+     */
+    static Schema nonNull(final Schema schema) {
+        if (schema.getType() != Schema.Type.UNION) {
+            return schema;
+        }
+        List<Schema> types = schema.getTypes();
+        if (types.size() == 2 && types.get(0).getType() == Schema.Type.NULL) {
+            return types.get(1);
+        }
+        if (types.size() == 2 && types.get(1).getType() == Schema.Type.NULL) {
+            return types.get(0);
+        }
+        throw unsupported(schema);
+    }
+
+    /**
+     * The Arrow type of the vector for this column.
+     *
+     * @return the Arrow type
+     */
+    abstract ArrowType type();
+
+    /**
+     * The fields of the child vectors for this column, if its vectors are nested.
+     *
+     * @return the child fields, in order
+     */
+    List<Field> children() {
+        return List.of();
+    }
+
+    /**
+     * The Arrow field describing the vector for this column.
+     *
+     * @param name     the name of the field
+     * @param nullable whether the field's values may be null
+     * @return the Arrow field
+     */
+    Field field(final String name, final boolean nullable) {
+        return new Field(name, new FieldType(nullable, type(), null), children());
+    }
+
+    /**
+     * Bind this column to a vector to be written. Null values are not written, since the vector's validity is reset
+     * before each batch is written, which leaves any unset row null.
+     *
+     * @param vector the vector to write, which was created from this column's field
+     * @return a writer of values to rows of the vector
+     */
+    final ValueWriter writer(final FieldVector vector) {
+        ValueWriter values = bindWriter(vector);
+        return (index, value) -> {
+            if (value != null) {
+                values.write(index, value);
+            }
+        };
+    }
+
+    /**
+     * Bind this column to a vector to be read.
+     *
+     * @param vector the vector to read
+     * @return a reader of values from rows of the vector, which returns null for null rows
+     * @throws IllegalArgumentException if the vector is not of this column's type
+     */
+    final ValueReader reader(final FieldVector vector) {
+        ArrowType actual = vector.getField().getType();
+        if (!type().equals(actual)) {
+            throw new IllegalArgumentException("Column " + vector.getName() + " has type " + actual + ", but " + type() + " was expected");
+        }
+        ValueReader values = bindReader(vector);
+        return index -> vector.isNull(index) ? null : values.read(index);
+    }
+
+    abstract ValueWriter bindWriter(FieldVector vector);
+
+    abstract ValueReader bindReader(FieldVector vector);
+
+    private static <V extends FieldVector> ArrowColumn scalar(final ArrowType type, final Class<V> vectorClass, final VectorWriter<V> writer, final VectorReader<V> reader) {
+        return new ArrowColumn() {
+            @Override
+            ArrowType type() {
+                return type;
+            }
+
+            @Override
+            ValueWriter bindWriter(final FieldVector vector) {
+                V typed = vectorClass.cast(vector);
+                return (index, value) -> writer.write(typed, index, value);
+            }
+
+            @Override
+            ValueReader bindReader(final FieldVector vector) {
+                V typed = vectorClass.cast(vector);
+                return index -> reader.read(typed, index);
+            }
+        };
+    }
+
+    private static Map<String, Object> enumSymbols(final Schema schema) {
+        Class<?> enumClass = DATA.getClass(schema);
+        if (enumClass == null || !enumClass.isEnum()) {
+            throw unsupported(schema);
+        }
+        Map<String, Object> symbols = new HashMap<>();
+        for (Object constant : enumClass.getEnumConstants()) {
+            symbols.put(((Enum<?>) constant).name(), constant);
+        }
+        return symbols;
+    }
+
+    private static byte[] toByteArray(final Object value) {
+        if (value instanceof ByteBuffer) {
+            ByteBuffer buffer = ((ByteBuffer) value).duplicate();
+            byte[] bytes = new byte[buffer.remaining()];
+            buffer.get(bytes);
+            return bytes;
+        }
+        return (byte[]) value;
+    }
+
+    private static boolean isListClass(final String className) {
+        try {
+            return Class.forName(className, false, ArrowColumn.class.getClassLoader()).isAssignableFrom(ArrayList.class);
+        } catch (ClassNotFoundException e) {
+            return false;
+        }
+    }
+
+    private static IllegalArgumentException unsupported(final Schema schema) {
+        return new IllegalArgumentException("Unsupported type for an Arrow column: " + schema);
+    }
+
+    /**
+     * The column for a list field, written to an Arrow list vector whose child vector holds the elements of every list.
+     */
+    private static final class ListColumn extends ArrowColumn {
+        private final ArrowColumn element;
+
+        ListColumn(final ArrowColumn element) {
+            this.element = element;
+        }
+
+        @Override
+        ArrowType type() {
+            return ArrowType.List.INSTANCE;
+        }
+
+        @Override
+        List<Field> children() {
+            return List.of(element.field(ListVector.DATA_VECTOR_NAME, true));
+        }
+
+        @Override
+        ValueWriter bindWriter(final FieldVector vector) {
+            ListVector list = (ListVector) vector;
+            ValueWriter elements = element.writer(list.getDataVector());
+            return (index, value) -> {
+                int offset = list.startNewValue(index);
+                int size = 0;
+                for (Object item : (Collection<?>) value) {
+                    elements.write(offset + size, item);
+                    size++;
+                }
+                list.endValue(index, size);
+            };
+        }
+
+        @Override
+        ValueReader bindReader(final FieldVector vector) {
+            ListVector list = (ListVector) vector;
+            ValueReader elements = element.reader(list.getDataVector());
+            return index -> {
+                // The offset buffer is replaced with each batch that is loaded
+                int start = list.getOffsetBuffer().getInt((long) index * ListVector.OFFSET_WIDTH);
+                int end = list.getOffsetBuffer().getInt((long) (index + 1) * ListVector.OFFSET_WIDTH);
+                List<Object> items = new ArrayList<>(end - start);
+                for (int item = start; item < end; item++) {
+                    items.add(elements.read(item));
+                }
+                return items;
+            };
+        }
+    }
+}
@@ -0,0 +1,173 @@
+/*
+ * Copyright 2018-2021 Crown Copyright
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package uk.gov.gchq.palisade.service.data.arrow;
+
+import org.apache.arrow.memory.BufferAllocator;
+import org.apache.arrow.vector.ValueVector;
+import org.apache.arrow.vector.VectorSchemaRoot;
+import org.apache.arrow.vector.dictionary.DictionaryProvider;
+import org.apache.arrow.vector.ipc.ArrowStreamWriter;
+import org.apache.arrow.vector.types.pojo.Schema;
+
+import uk.gov.gchq.palisade.service.data.arrow.ArrowColumn.ValueWriter;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.Iterator;
+import java.util.stream.Stream;
+
+import static java.util.Objects.requireNonNull;
+
+/**
+ * An {@link InputStream} of an Arrow IPC stream, encoded lazily from a {@link Stream} of domain objects.
+ * No background thread is used, instead each time the reader drains the buffered bytes, up to {@code batchSize} records
+ * are pulled from the stream and written to the same set of off-heap vectors, which are then written out as the next
+ * record batch. The vectors are reset rather than reallocated between batches, so once they have grown to fit a batch,
+ * encoding allocates little beyond the bytes of each batch.
+ *
+ * @param <O> the domain object type
+ */
+class ArrowEncodingInputStream<O> extends InputStream {
+    private final RecordColumn columns;
+    private final Schema schema;
+    private final Stream<O> objects;
+    private final Iterator<O> iterator;
+    private final int batchSize;
+    private final BufferAllocator allocator;
+    private final Buffer buffer = new Buffer();
+    private VectorSchemaRoot root;
+    private ArrowStreamWriter writer;
+    private ValueWriter[] writers;
+    private int position;
+    private boolean finished;
+
+    /**
+     * Create a new {@link ArrowEncodingInputStream}, nothing will be read from the stream of objects or allocated
+     * until this {@link InputStream} is itself read.
+     *
+     * @param columns   the columns of the domain class
+     * @param schema    the Arrow schema of the columns
+     * @param objects   the stream of domain objects to encode
+     * @param batchSize the maximum number of records in each record batch
+     * @param allocator the allocator for the vectors, owned and closed by this stream
+     */
+    ArrowEncodingInputStream(final RecordColumn columns, final Schema schema, final Stream<O> objects, final int batchSize, final BufferAllocator allocator) {
+        this.columns = requireNonNull(columns, "columns is required");
+        this.schema = requireNonNull(schema, "schema is required");
+        this.objects = requireNonNull(objects, "objects is required");
+        this.iterator = objects.iterator();
+        this.batchSize = batchSize;
+        this.allocator = requireNonNull(allocator, "allocator is required");
+    }
+
+    @Override
+    public int read() throws IOException {
+        if (!ensureBuffered()) {
+            return -1;
+        }
+        return buffer.array()[position++] & 0xFF;
+    }
+
+    @Override
+    public int read(final byte[] bytes, final int offset, final int length) throws IOException {
+        if (length == 0) {
+            return 0;
+        }
+        if (!ensureBuffered()) {
+            return -1;
+        }
+        int count = Math.min(length, buffer.size() - position);
+        System.arraycopy(buffer.array(), position, bytes, offset, count);
+        position += count;
+        return count;
+    }
+
+    @Override
+    public int available() {
+        return buffer.size() - position;
+    }
+
+    @Override
+    public void close() {
+        if (!finished) {
+            finished = true;
+            release();
+        }
+        buffer.reset();
+        position = 0;
+        objects.close();
+    }
+
+    private boolean ensureBuffered() throws IOException {
+        while (position == buffer.size()) {
+            if (finished) {
+                return false;
+            }
+            buffer.reset();
+            position = 0;
+            nextBatch();
+        }
+        return true;
+    }
+
+    private void nextBatch() throws IOException {
+        if (writer == null) {
+            root = VectorSchemaRoot.create(schema, allocator);
+            root.allocateNew();
+            writers = columns.writers(root::getVector);
+            writer = new ArrowStreamWriter(root, new DictionaryProvider.MapDictionaryProvider(), buffer);
+            // Writes the schema message
+            writer.start();
+            return;
+        }
+        int count = 0;
+        while (count < batchSize && iterator.hasNext()) {
+            columns.write(writers, count++, iterator.next());
+        }
+        if (count > 0) {
+            root.setRowCount(count);
+            writer.writeBatch();
+            // Keep the vectors' buffers for the next batch, clearing their validity so that unset rows are null
+            root.getFieldVectors().forEach(ValueVector::reset);
+        } else {
+            writer.end();
+            finished = true;
+            release();
+            objects.close();
+        }
+    }
+
+    private void release() {
+        try {
+            if (root != null) {
+                root.close();
+            }
+        } finally {
+            allocator.close();
+        }
+    }
+
+    /**
+     * A {@link ByteArrayOutputStream} which allows reading back its contents without copying the array.
+     */
+    private static final class Buffer extends ByteArrayOutputStream {
+        byte[] array() {
+            return buf;
+        }
+    }
+}
@@ -0,0 +1,117 @@
+/*
+ * Copyright 2018-2021 Crown Copyright
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package uk.gov.gchq.palisade.service.data.arrow;
+
+import com.fasterxml.jackson.annotation.JsonCreator;
+import com.fasterxml.jackson.annotation.JsonProperty;
+import org.apache.arrow.memory.BufferAllocator;
+import org.apache.arrow.memory.RootAllocator;
+import org.apache.arrow.vector.ipc.ArrowStreamReader;
+import org.apache.arrow.vector.types.pojo.Schema;
+
+import uk.gov.gchq.palisade.Generated;
+import uk.gov.gchq.palisade.data.serialise.Serialiser;
+
+import java.io.InputStream;
+import java.util.Set;
+import java.util.stream.Stream;
+
+import static java.util.Objects.nonNull;
+import static java.util.Objects.requireNonNull;
+
+/**
+ * An {@code ArrowSerialiser} is used to serialise and deserialise streams in the Arrow IPC streaming format.
+ * Converts an Arrow {@link InputStream} to/from a {@link Stream} of domain objects ({@link O}s), with a column for
+ * each field of the domain class's reflected Avro schema, so that the same domain classes may be used as for the Avro
+ * serialiser.
+ * <p>
+ * Records are written in batches of up to {@code batchSize} rows, each of which is built in off-heap vectors rather
+ * than on the Java heap, and can be read by clients directly into their own columnar structures.
+ *
+ * @param <O> the domain object type
+ */
+// Suppress making serialiser class itself serialisable
+@SuppressWarnings({"java:S2057", "java:S1948"})
+public class ArrowSerialiser<O> implements Serialiser<O> {
+    private static final int DEFAULT_BATCH_SIZE = 4096;
+    private static final BufferAllocator ROOT_ALLOCATOR = new RootAllocator(Long.MAX_VALUE);
+
+    private final Class<O> domainClass;
+    private final RecordColumn columns;
+    private final Schema schema;
+    private int batchSize = DEFAULT_BATCH_SIZE;
+
+    /**
+     * Constructor for the {@link ArrowSerialiser}
+     *
+     * @param domainClass the class for the serialiser
+     * @throws IllegalArgumentException if any field of the domain class cannot be mapped to an Arrow column
+     */
+    @JsonCreator
+    public ArrowSerialiser(@JsonProperty("domainClass") final Class<O> domainClass) {
+        this.domainClass = requireNonNull(domainClass, "domainClass is required");
+        this.columns = new RecordColumn(ArrowColumn.DATA.getSchema(domainClass), Set.of());
+        this.schema = new Schema(columns.children());
+    }
+
+    /**
+     * Sets the maximum number of records in each record batch, all of which are held in off-heap vectors at once
+     * while serialising.
+     *
+     * @param batchSize the maximum number of records in each batch
+     * @return the current {@link ArrowSerialiser} object
+     */
+    @Generated
+    public ArrowSerialiser<O> batchSize(final int batchSize) {
+        this.setBatchSize(batchSize);
+        return this;
+    }
+
+    @Generated
+    public int getBatchSize() {
+        return batchSize;
+    }
+
+    @Generated
+    public void setBatchSize(final int batchSize) {
+        if (batchSize < 1) {
+            throw new IllegalArgumentException("batchSize must be positive, but was " + batchSize);
+        }
+        this.batchSize = batchSize;
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public Stream<O> deserialise(final InputStream input) {
+        BufferAllocator allocator = ROOT_ALLOCATOR.newChildAllocator("deserialise", 0, Long.MAX_VALUE);
+        return new ArrowBatchDecoder<>(new ArrowStreamReader(input, allocator), allocator, columns, domainClass).stream();
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public InputStream serialise(final Stream<O> objects) {
+        if (nonNull(objects)) {
+            BufferAllocator allocator = ROOT_ALLOCATOR.newChildAllocator("serialise", 0, Long.MAX_VALUE);
+            return new ArrowEncodingInputStream<>(columns, schema, objects, batchSize, allocator);
+        }
+        return InputStream.nullInputStream();
+    }
+}
@@ -0,0 +1,174 @@
+/*
+ * Copyright 2018-2021 Crown Copyright
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package uk.gov.gchq.palisade.service.data.arrow;
+
+import org.apache.arrow.vector.FieldVector;
+import org.apache.arrow.vector.complex.StructVector;
+import org.apache.arrow.vector.types.pojo.ArrowType;
+import org.apache.arrow.vector.types.pojo.Field;
+import org.apache.avro.Schema;
+
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.function.Function;
+
+/**
+ * The column for a record, written to an Arrow struct vector with a child vector for each of the record's fields.
+ * The domain class itself is also a record, whose fields are instead written to the top-level vectors of a
+ * {@link org.apache.arrow.vector.VectorSchemaRoot}.
+ */
+class RecordColumn extends ArrowColumn {
+    private final Schema schema;
+    private final List<Member> members;
+
+    /**
+     * Create the column for a record.
+     *
+     * @param schema    the reflected schema of the record's class
+     * @param enclosing the full names of the records enclosing this record, to reject recursive records
+     * @throws IllegalArgumentException if the record is recursive, or any of its fields cannot be mapped to an Arrow vector
+     */
+    RecordColumn(final Schema schema, final Set<String> enclosing) {
+        if (schema.getType() != Schema.Type.RECORD || enclosing.contains(schema.getFullName())) {
+            throw new IllegalArgumentException("Unsupported type for an Arrow column: " + schema.getFullName());
+        }
+        if (DATA.getClass(schema) == null) {
+            throw new IllegalArgumentException("No class found for record " + schema.getFullName());
+        }
+        Set<String> nested = new HashSet<>(enclosing);
+        nested.add(schema.getFullName());
+        this.schema = schema;
+        this.members = new ArrayList<>(schema.getFields().size());
+        for (Schema.Field field : schema.getFields()) {
+            ArrowColumn column = forSchema(nonNull(field.schema()), nested);
+            members.add(new Member(field.name(), field.pos(), isNullable(field.schema()), column));
+        }
+    }
+
+    @Override
+    ArrowType type() {
+        return ArrowType.Struct.INSTANCE;
+    }
+
+    @Override
+    List<Field> children() {
+        List<Field> children = new ArrayList<>(members.size());
+        for (Member member : members) {
+            children.add(member.column.field(member.name, member.nullable));
+        }
+        return children;
+    }
+
+    /**
+     * Bind each of the record's fields to a vector to be written.
+     *
+     * @param vectors the vectors of the record's fields, by name
+     * @return a writer for each field, in the order of the record's fields
+     */
+    ValueWriter[] writers(final Function<String, FieldVector> vectors) {
+        ValueWriter[] writers = new ValueWriter[members.size()];
+        for (int i = 0; i < writers.length; i++) {
+            writers[i] = members.get(i).column.writer(vectors.apply(members.get(i).name));
+        }
+        return writers;
+    }
+
+    /**
+     * Bind each of the record's fields to a vector to be read. Fields with no vector are left unset.
+     *
+     * @param vectors the vectors of the record's fields, by name, or null for a field with no vector
+     * @return a reader for each field, in the order of the record's fields, or null for any field with no vector
+     * @throws IllegalArgumentException if a vector is not of the field's type
+     */
+    ValueReader[] readers(final Function<String, FieldVector> vectors) {
+        ValueReader[] readers = new ValueReader[members.size()];
+        for (int i = 0; i < readers.length; i++) {
+            FieldVector vector = vectors.apply(members.get(i).name);
+            readers[i] = vector != null ? members.get(i).column.reader(vector) : null;
+        }
+        return readers;
+    }
+
+    /**
+     * Write each field of a record to a row of its vector.
+     *
+     * @param writers the writers returned by {@link #writers(Function)}
+     * @param index   the row to write
+     * @param record  the record to write
+     */
+    void write(final ValueWriter[] writers, final int index, final Object record) {
+        for (int i = 0; i < writers.length; i++) {
+            Member member = members.get(i);
+            writers[i].write(index, DATA.getField(record, member.name, member.position));
+        }
+    }
+
+    /**
+     * Read a new record from a row of its fields' vectors.
+     *
+     * @param readers the readers returned by {@link #readers(Function)}
+     * @param index   the row to read
+     * @return a new instance of the record's class
+     */
+    Object read(final ValueReader[] readers, final int index) {
+        Object record = DATA.newRecord(null, schema);
+        for (int i = 0; i < readers.length; i++) {
+            Object value = readers[i] != null ? readers[i].read(index) : null;
+            if (value != null) {
+                Member member = members.get(i);
+                DATA.setField(record, member.name, member.position, value);
+            }
+        }
+        return record;
+    }
+
+    @Override
+    ValueWriter bindWriter(final FieldVector vector) {
+        StructVector struct = (StructVector) vector;
+        ValueWriter[] writers = writers(struct::getChild);
+        return (index, value) -> {
+            struct.setIndexDefined(index);
+            write(writers, index, value);
+        };
+    }
+
+    @Override
+    ValueReader bindReader(final FieldVector vector) {
+        StructVector struct = (StructVector) vector;
+        ValueReader[] readers = readers(struct::getChild);
+        return index -> read(readers, index);
+    }
+
+    /**
+     * A field of the record and its column.
+     */
+    private static final class Member {
+        private final String name;
+        private final int position;
+        private final boolean nullable;
+        private final ArrowColumn column;
+
+        Member(final String name, final int position, final boolean nullable, final ArrowColumn column) {
+            this.name = name;
+            this.position = position;
+            this.nullable = nullable;
+            this.column = column;
+        }
+    }
+}
@@ -0,0 +1,231 @@
+/*
+ * Copyright 2018-2021 Crown Copyright
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package uk.gov.gchq.palisade.service.data.arrow;
+
+import org.apache.arrow.memory.RootAllocator;
+import org.apache.arrow.vector.ipc.ArrowStreamReader;
+import org.apache.arrow.vector.types.pojo.Field;
+import org.junit.jupiter.api.Test;
+
+import uk.gov.gchq.palisade.Generated;
+
+import java.io.IOException;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+
+class ArrowSerialiserTest {
+    enum Status {
+        IN_TRANSIT, DELIVERED
+    }
+
+    static class Destination {
+        private String city;
+        private int floor;
+
+        @SuppressWarnings("unused")
+        Destination() {
+            // Used for serialisation
+        }
+
+        Destination(final String city, final int floor) {
+            this.city = city;
+            this.floor = floor;
+        }
+
+        @Override
+        @Generated
+        public boolean equals(final Object o) {
+            if (this == o) {
+                return true;
+            }
+            if (!(o instanceof Destination)) {
+                return false;
+            }
+            final Destination that = (Destination) o;
+            return floor == that.floor &&
+                    Objects.equals(city, that.city);
+        }
+
+        @Override
+        @Generated
+        public int hashCode() {
+            return Objects.hash(city, floor);
+        }
+    }
+
+    static class Parcel {
+        private long id;
+        private double weight;
+        private boolean fragile;
+        private String label;
+        private Integer locker;
+        private Status status;
+        private byte[] checksum;
+        private Destination destination;
+        private List<String> scans;
+
+        @SuppressWarnings("unused")
+        Parcel() {
+            // Used for serialisation
+        }
+
+        Parcel(final long id, final String label) {
+            this.id = id;
+            this.label = label;
+        }
+
+        @Override
+        @Generated
+        public boolean equals(final Object o) {
+            if (this == o) {
+                return true;
+            }
+            if (!(o instanceof Parcel)) {
+                return false;
+            }
+            final Parcel that = (Parcel) o;
+            return id == that.id &&
+                    Double.compare(that.weight, weight) == 0 &&
+                    fragile == that.fragile &&
+                    Objects.equals(label, that.label) &&
+                    Objects.equals(locker, that.locker) &&
+                    status == that.status &&
+                    Arrays.equals(checksum, that.checksum) &&
+                    Objects.equals(destination, that.destination) &&
+                    Objects.equals(scans, that.scans);
+        }
+
+        @Override
+        @Generated
+        public int hashCode() {
+            int result = Objects.hash(id, weight, fragile, label, locker, status, destination, scans);
+            result = 31 * result + Arrays.hashCode(checksum);
+            return result;
+        }
+    }
+
+    static class Label {
+        private String label;
+
+        @SuppressWarnings("unused")
+        Label() {
+            // Used for serialisation
+        }
+
+        Label(final String label) {
+            this.label = label;
+        }
+
+        @Override
+        @Generated
+        public boolean equals(final Object o) {
+            if (this == o) {
+                return true;
+            }
+            if (!(o instanceof Label)) {
+                return false;
+            }
+            return Objects.equals(label, ((Label) o).label);
+        }
+
+        @Override
+        @Generated
+        public int hashCode() {
+            return Objects.hash(label);
+        }
+    }
+
+    static class Directory {
+        private Map<String, String> entries;
+    }
+
+    ArrowSerialiser<Parcel> serialiser = new ArrowSerialiser<>(Parcel.class);
+
+    @Test
+    void testEveryColumnTypeSurvivesAcrossBatches() {
+        // Given one parcel with every field set, and one with every nullable field left null
+        var full = new Parcel(1L, "parcel one");
+        full.weight = 2.5;
+        full.fragile = true;
+        full.locker = 42;
+        full.status = Status.DELIVERED;
+        full.checksum = new byte[]{1, 2, 3};
+        full.destination = new Destination("London", 3);
+        full.scans = List.of("depot", "van");
+        var parcels = List.of(full, new Parcel(2L, null));
+
+        // When each parcel is written in its own record batch
+        var inputStream = serialiser.batchSize(1).serialise(parcels.stream());
+        var parcelStream = serialiser.deserialise(inputStream);
+
+        // Then
+        assertThat(parcelStream.collect(Collectors.toList()))
+                .as("Check the serialised-deserialised records, and their null fields, match their original counterparts")
+                .isEqualTo(parcels);
+    }
+
+    @Test
+    void testEmptyStreamIsWrittenWithItsSchema() throws IOException {
+        // Given
+        var inputStream = serialiser.serialise(Stream.empty());
+
+        // When
+        List<String> columns;
+        try (var allocator = new RootAllocator();
+             var reader = new ArrowStreamReader(inputStream, allocator)) {
+            columns = reader.getVectorSchemaRoot().getSchema().getFields().stream()
+                    .map(Field::getName)
+                    .collect(Collectors.toList());
+        }
+
+        // Then
+        assertThat(columns)
+                .as("Check an empty stream still has a column for each field of the domain class")
+                .containsExactly("id", "weight", "fragile", "label", "locker", "status", "checksum", "destination", "scans");
+    }
+
+    @Test
+    void testDeserialiseSubsetOfColumns() {
+        // Given
+        var parcels = List.of(new Parcel(1L, "parcel one"), new Parcel(2L, "parcel two"));
+        var labelSerialiser = new ArrowSerialiser<>(Label.class);
+
+        // When
+        var labels = labelSerialiser.deserialise(serialiser.serialise(parcels.stream()));
+
+        // Then
+        assertThat(labels.collect(Collectors.toList()))
+                .as("Check that columns not in the domain class are ignored")
+                .containsExactly(new Label("parcel one"), new Label("parcel two"));
+    }
+
+    @Test
+    void testUnsupportedFieldIsRejected() {
+        // Then
+        assertThatThrownBy(() -> new ArrowSerialiser<>(Directory.class))
+                .as("Check that a domain class with a map field is rejected")
+                .isInstanceOf(IllegalArgumentException.class)
+                .hasMessageContaining("map");
+    }
+}
@@ -0,0 +1,109 @@
+/*
+ * Copyright 2018-2021 Crown Copyright
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package uk.gov.gchq.palisade.service.data.avro;
+
+import java.io.IOException;
+import java.io.InputStream;
+
+/**
+ * An {@link InputStream} producing its bytes one block at a time, only encoding the next block once the reader has
+ * drained the previous one. Subclasses supply each block by calling {@link #setBlock(byte[], int, int)} from
+ * {@link #nextBlock()}.
+ */
+abstract class AbstractBlockInputStream extends InputStream {
+    private static final byte[] EMPTY = new byte[0];
+
+    private byte[] block = EMPTY;
+    private int position;
+    private int limit;
+    private boolean finished;
+
+    /**
+     * Produce the next block of bytes to be read, calling {@link #setBlock(byte[], int, int)} with the result.
+     * Producing an empty block is allowed, in which case this method will be called again.
+     *
+     * @return false if there are no further blocks, true if this method should be called again once the block is read
+     * @throws IOException if the block could not be produced
+     */
+    protected abstract boolean nextBlock() throws IOException;
+
+    /**
+     * Set the bytes to be read next, which must not be modified until {@link #nextBlock()} is next called.
+     *
+     * @param bytes  an array containing the block
+     * @param offset the offset of the block in the array
+     * @param length the length of the block
+     */
+    protected void setBlock(final byte[] bytes, final int offset, final int length) {
+        this.block = bytes;
+        this.position = offset;
+        this.limit = offset + length;
+    }
+
+    /**
+     * Stop producing blocks, discarding any remaining unread bytes.
+     */
+    protected void finish() {
+        finished = true;
+        setBlock(EMPTY, 0, 0);
+    }
+
+    @Override
+    public int read() throws IOException {
+        if (!ensureBuffered()) {
+            return -1;
+        }
+        return block[position++] & 0xFF;
+    }
+
+    @Override
+    public int read(final byte[] bytes, final int offset, final int length) throws IOException {
+        if (length == 0) {
+            return 0;
+        }
+        if (!ensureBuffered()) {
+            return -1;
+        }
+        int count = Math.min(length, limit - position);
+        System.arraycopy(block, position, bytes, offset, count);
+        position += count;
+        return count;
+    }
+
+    @Override
+    public int available() {
+        return limit - position;
+    }
+
+    @Override
+    public void close() throws IOException {
+        finish();
+    }
+
+    private boolean ensureBuffered() throws IOException {
+        while (position == limit) {
+            if (finished) {
+                return false;
+            }
+            setBlock(EMPTY, 0, 0);
+            if (!nextBlock()) {
+                finished = true;
+            }
+        }
+        return true;
+    }
+}
@@ -0,0 +1,116 @@
+/*
+ * Copyright 2018-2021 Crown Copyright
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package uk.gov.gchq.palisade.service.data.avro;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.Arrays;
+
+/**
+ * Reads the raw header and blocks of an Avro data file from an {@link InputStream}, without decompressing or
+ * decoding them, using {@link AvroContainer} to find where each one ends.
+ */
+class AvroBlockReader implements Closeable {
+    private static final int INITIAL_BUFFER_SIZE = 64 * 1024;
+
+    private final InputStream input;
+    private byte[] buffer = new byte[INITIAL_BUFFER_SIZE];
+    private int start;
+    private int end;
+    private boolean endOfInput;
+
+    AvroBlockReader(final InputStream input) {
+        this.input = input;
+    }
+
+    /**
+     * Read the header of the data file, which must be called before reading any blocks.
+     *
+     * @return the bytes of the header, including the sync marker
+     * @throws IOException if the input could not be read, or is not an Avro data file
+     */
+    byte[] readHeader() throws IOException {
+        int headerLength = AvroContainer.headerLength(buffer, end);
+        while (headerLength < 0) {
+            if (!fill(end + 1)) {
+                throw new IOException("Avro data file ended before the end of its header");
+            }
+            headerLength = AvroContainer.headerLength(buffer, end);
+        }
+        return take(headerLength);
+    }
+
+    /**
+     * Read the next raw block of the data file.
+     *
+     * @return the bytes of the block, including its prefix and sync marker, or null if there are no more blocks
+     * @throws IOException if the input could not be read, or ended part-way through a block
+     */
+    byte[] readBlock() throws IOException {
+        fill(AvroContainer.MAX_BLOCK_PREFIX);
+        if (start == end) {
+            return null;
+        }
+        long blockLength = AvroContainer.blockLength(buffer, start, end - start);
+        if (blockLength < 0 || blockLength > Integer.MAX_VALUE || !fill((int) blockLength)) {
+            throw new IOException("Avro data file ended part-way through a block");
+        }
+        return take((int) blockLength);
+    }
+
+    @Override
+    public void close() throws IOException {
+        input.close();
+    }
+
+    /**
+     * Read from the input until at least the given number of unconsumed bytes are buffered, or the input ends.
+     *
+     * @param length the number of bytes required
+     * @return true if the bytes are available, false if the input ended first
+     * @throws IOException if the input could not be read
+     */
+    private boolean fill(final int length) throws IOException {
+        if (end - start >= length) {
+            return true;
+        }
+        if (buffer.length - start < length) {
+            // Move the unconsumed bytes to the start of a buffer large enough to hold them
+            byte[] newBuffer = length > buffer.length ? new byte[Math.max(length, buffer.length * 2)] : buffer;
+            System.arraycopy(buffer, start, newBuffer, 0, end - start);
+            buffer = newBuffer;
+            end -= start;
+            start = 0;
+        }
+        while (end - start < length && !endOfInput) {
+            int read = input.read(buffer, end, buffer.length - end);
+            if (read < 0) {
+                endOfInput = true;
+            } else {
+                end += read;
+            }
+        }
+        return end - start >= length;
+    }
+
+    private byte[] take(final int length) {
+        byte[] bytes = Arrays.copyOfRange(buffer, start, start + length);
+        start += length;
+        return bytes;
+    }
+}
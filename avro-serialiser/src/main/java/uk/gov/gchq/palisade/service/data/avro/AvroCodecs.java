@@ -0,0 +1,101 @@
+/*
+ * Copyright 2018-2021 Crown Copyright
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package uk.gov.gchq.palisade.service.data.avro;
+
+import org.apache.avro.file.CodecFactory;
+import org.apache.avro.file.DataFileConstants;
+
+import java.util.Locale;
+import java.util.Optional;
+
+/**
+ * Parses the names of the compression codecs an {@link AvroSerialiser} may write with.
+ * <p>
+ * A codec is named as one of {@code null}, {@code deflate}, {@code snappy}, {@code bzip2} or {@code xz}, where
+ * {@code deflate} and {@code xz} may also be given a compression level, such as {@code deflate-6} or {@code xz-3}.
+ * A serialised format may name a codec with a {@code codec} parameter, such as {@code avro/binary; codec=snappy}.
+ */
+final class AvroCodecs {
+    private static final String LEVEL_SEPARATOR = "-";
+    static final String CODEC_PARAMETER = "codec";
+
+    private AvroCodecs() {
+        // Utility class
+    }
+
+    /**
+     * Get the codec with the given name.
+     *
+     * @param name the name of the codec, optionally with a compression level
+     * @return the {@link CodecFactory} for the codec
+     * @throws IllegalArgumentException if the codec or its level is not supported
+     */
+    static CodecFactory fromName(final String name) {
+        String codec = name.trim().toLowerCase(Locale.ROOT);
+        int separator = codec.lastIndexOf(LEVEL_SEPARATOR);
+        String baseName = separator < 0 ? codec : codec.substring(0, separator);
+        switch (baseName) {
+            case DataFileConstants.NULL_CODEC:
+                return separator < 0 ? CodecFactory.nullCodec() : unsupported(name);
+            case DataFileConstants.DEFLATE_CODEC:
+                return CodecFactory.deflateCodec(separator < 0 ? CodecFactory.DEFAULT_DEFLATE_LEVEL : level(name, codec.substring(separator + 1), 0, 9));
+            case DataFileConstants.XZ_CODEC:
+                return CodecFactory.xzCodec(separator < 0 ? CodecFactory.DEFAULT_XZ_LEVEL : level(name, codec.substring(separator + 1), 0, 9));
+            case DataFileConstants.SNAPPY_CODEC:
+                return separator < 0 ? CodecFactory.snappyCodec() : unsupported(name);
+            case DataFileConstants.BZIP2_CODEC:
+                return separator < 0 ? CodecFactory.bzip2Codec() : unsupported(name);
+            default:
+                return unsupported(name);
+        }
+    }
+
+    /**
+     * Get the value of a parameter of a serialised format, such as the {@code encoding} of
+     * {@code avro/binary; encoding=raw}.
+     *
+     * @param serialisedFormat a serialised format
+     * @param name             the name of the parameter, which is matched ignoring case
+     * @return the value of the parameter, or empty if the format has no such parameter
+     */
+    static Optional<String> formatParameter(final String serialisedFormat, final String name) {
+        String[] parameters = serialisedFormat.split(";");
+        for (int i = 1; i < parameters.length; i++) {
+            String[] parameter = parameters[i].split("=", 2);
+            if (parameter.length == 2 && parameter[0].trim().equalsIgnoreCase(name)) {
+                return Optional.of(parameter[1].trim().replace("\"", ""));
+            }
+        }
+        return Optional.empty();
+    }
+
+    private static int level(final String name, final String level, final int min, final int max) {
+        try {
+            int value = Integer.parseInt(level);
+            if (value >= min && value <= max) {
+                return value;
+            }
+        } catch (NumberFormatException e) {
+            // Reported below
+        }
+        throw new IllegalArgumentException("Compression level of codec " + name + " must be between " + min + " and " + max);
+    }
+
+    private static CodecFactory unsupported(final String name) {
+        throw new IllegalArgumentException("Unsupported Avro codec: " + name);
+    }
+}
@@ -0,0 +1,201 @@
+/*
+ * Copyright 2018-2021 Crown Copyright
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package uk.gov.gchq.palisade.service.data.avro;
+
+import org.apache.avro.file.DataFileConstants;
+import org.apache.avro.file.DataFileReader;
+import org.apache.avro.file.DataFileStream;
+import org.apache.avro.file.DataFileStream.Header;
+import org.apache.avro.file.SeekableByteArrayInput;
+import org.apache.avro.io.DatumReader;
+
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.util.Arrays;
+
+/**
+ * Utilities for splitting an Avro object container file into its header and raw (still compressed) blocks without
+ * decoding any records, and for decoding those blocks independently of one another.
+ * <p>
+ * Each of the length methods returns {@code -1} if the given bytes end before the structure is complete, so they
+ * may be called repeatedly as more of a file arrives.
+ *
+ * @see <a href="https://avro.apache.org/docs/1.8.2/spec.html#Object+Container+Files">Object Container Files</a>
+ */
+final class AvroContainer {
+    /**
+     * The maximum length of the block count and block size prefix of each block, enough for two varint longs.
+     */
+    static final int MAX_BLOCK_PREFIX = 20;
+
+    private static final int INCOMPLETE = -1;
+    private static final int MAX_VARINT_BYTES = 10;
+    private static final int VARINT_MASK = 0x7F;
+    private static final int VARINT_CONTINUE = 0x80;
+    private static final int VARINT_SHIFT = 7;
+
+    private AvroContainer() {
+        // Static utility class
+    }
+
+    /**
+     * Find the length of the container file header at the start of the given bytes, including the sync marker.
+     *
+     * @param bytes  the bytes read from the start of the file
+     * @param length the number of valid bytes in the array
+     * @return the length of the header, or -1 if more bytes are needed
+     * @throws IOException if the bytes are not the start of an Avro container file
+     */
+    static int headerLength(final byte[] bytes, final int length) throws IOException {
+        byte[] magic = DataFileConstants.MAGIC;
+        if (length < magic.length) {
+            return INCOMPLETE;
+        }
+        if (!Arrays.equals(magic, 0, magic.length, bytes, 0, magic.length)) {
+            throw new IOException("Not an Avro data file");
+        }
+        Cursor cursor = new Cursor(bytes, magic.length, length);
+        // Metadata is a map of string to bytes, written as a series of counted blocks
+        long count = cursor.readLong();
+        while (cursor.isComplete() && count != 0) {
+            if (count < 0) {
+                // A negative count is followed by the size of the block in bytes, which can be skipped directly
+                cursor.skip(cursor.readLong());
+            } else {
+                for (long i = 0; i < count && cursor.isComplete(); i++) {
+                    // Key and value are both length-prefixed
+                    cursor.skip(cursor.readLong());
+                    cursor.skip(cursor.readLong());
+                }
+            }
+            count = cursor.readLong();
+        }
+        if (!cursor.skip(DataFileConstants.SYNC_SIZE)) {
+            return INCOMPLETE;
+        }
+        return cursor.position;
+    }
+
+    /**
+     * Find the length of the block starting at the given offset, including its prefix and trailing sync marker.
+     * Only the first {@link #MAX_BLOCK_PREFIX} bytes of the block are required to be present.
+     *
+     * @param bytes  an array containing the start of a block
+     * @param offset the offset of the block in the array
+     * @param length the number of valid bytes in the array after the offset
+     * @return the length of the block, or -1 if more bytes are needed
+     */
+    static long blockLength(final byte[] bytes, final int offset, final int length) {
+        Cursor cursor = new Cursor(bytes, offset, offset + length);
+        cursor.readLong();
+        long size = cursor.readLong();
+        if (!cursor.isComplete()) {
+            return INCOMPLETE;
+        }
+        return cursor.position - offset + size + DataFileConstants.SYNC_SIZE;
+    }
+
+    /**
+     * Find the number of records in the complete block starting at the given offset, from its prefix.
+     *
+     * @param bytes  an array containing the start of a block
+     * @param offset the offset of the block in the array
+     * @param length the number of valid bytes in the array after the offset
+     * @return the number of records in the block, or -1 if more bytes are needed
+     */
+    static long blockCount(final byte[] bytes, final int offset, final int length) {
+        Cursor cursor = new Cursor(bytes, offset, offset + length);
+        long count = cursor.readLong();
+        return cursor.isComplete() ? count : INCOMPLETE;
+    }
+
+    /**
+     * Parse a container file header.
+     *
+     * @param headerBytes the complete header, as found by {@link #headerLength(byte[], int)}
+     * @param reader      a datum reader, which will have its schema set to the header's schema
+     * @return the parsed header
+     * @throws IOException if the header could not be parsed
+     */
+    static Header parseHeader(final byte[] headerBytes, final DatumReader<?> reader) throws IOException {
+        try (DataFileStream<?> stream = new DataFileStream<>(new ByteArrayInputStream(headerBytes), reader)) {
+            return stream.getHeader();
+        }
+    }
+
+    /**
+     * Open a reader over a single raw block, which will decompress and decode the block using the codec and schema
+     * described in the file header.
+     *
+     * @param header     the header of the file the block was read from
+     * @param reader     the datum reader used to decode each record
+     * @param blockBytes the complete block, including its prefix and trailing sync marker
+     * @param <O>        the domain object type
+     * @return a {@link DataFileStream} over the records in the block
+     * @throws IOException if the block could not be read
+     */
+    static <O> DataFileStream<O> openBlock(final Header header, final DatumReader<O> reader, final byte[] blockBytes) throws IOException {
+        return DataFileReader.openReader(new SeekableByteArrayInput(blockBytes), reader, header, false);
+    }
+
+    /**
+     * A position in a byte array, reading Avro's variable-length zig-zag encoded longs.
+     * Once the end of the valid bytes is reached, the cursor is marked incomplete and all further reads fail.
+     */
+    private static class Cursor {
+        private final byte[] bytes;
+        private final int limit;
+        private int position;
+        private boolean complete = true;
+
+        Cursor(final byte[] bytes, final int position, final int limit) {
+            this.bytes = bytes;
+            this.position = position;
+            this.limit = limit;
+        }
+
+        boolean isComplete() {
+            return complete;
+        }
+
+        long readLong() {
+            long raw = 0;
+            for (int i = 0; complete && i < MAX_VARINT_BYTES; i++) {
+                if (position >= limit) {
+                    complete = false;
+                    break;
+                }
+                int b = bytes[position++] & 0xFF;
+                raw |= (long) (b & VARINT_MASK) << (VARINT_SHIFT * i);
+                if ((b & VARINT_CONTINUE) == 0) {
+                    return (raw >>> 1) ^ -(raw & 1);
+                }
+            }
+            complete = false;
+            return INCOMPLETE;
+        }
+
+        boolean skip(final long count) {
+            if (complete && count >= 0 && count <= limit - position) {
+                position += (int) count;
+            } else {
+                complete = false;
+            }
+            return complete;
+        }
+    }
+}
@@ -0,0 +1,62 @@
+/*
+ * Copyright 2018-2021 Crown Copyright
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package uk.gov.gchq.palisade.service.data.avro;
+
+import java.util.Locale;
+
+/**
+ * The ways in which an {@link AvroSerialiser} may encode a stream of records.
+ * <p>
+ * An encoding may be requested by a serialised format with an {@code encoding} parameter, such as
+ * {@code avro/binary; encoding=single-object}.
+ */
+public enum AvroEncoding {
+    /**
+     * An Avro object container file, with a header holding the schema and codec, followed by blocks of records.
+     * This is the only encoding which may be compressed, or encoded and decoded in parallel.
+     */
+    CONTAINER,
+
+    /**
+     * Avro single-object encoding, where each record is written with a two byte marker and the CRC-64-AVRO
+     * fingerprint of its schema, followed by its binary encoding. The fingerprint is checked against the domain
+     * class's schema when reading.
+     */
+    SINGLE_OBJECT,
+
+    /**
+     * The binary encoding of each record with nothing else, for clients which already hold the domain class's schema,
+     * such as from an earlier response in either of the other encodings.
+     */
+    RAW;
+
+    /**
+     * Get the encoding with the given name, either as the enum constant or as written in a serialised format,
+     * such as {@code single-object}.
+     *
+     * @param name the name of the encoding
+     * @return the encoding
+     * @throws IllegalArgumentException if there is no such encoding
+     */
+    public static AvroEncoding fromName(final String name) {
+        try {
+            return valueOf(name.trim().toUpperCase(Locale.ROOT).replace('-', '_'));
+        } catch (IllegalArgumentException e) {
+            throw new IllegalArgumentException("Unsupported Avro encoding: " + name, e);
+        }
+    }
+}
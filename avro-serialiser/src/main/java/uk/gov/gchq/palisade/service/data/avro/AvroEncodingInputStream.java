@@ -0,0 +1,108 @@
+/*
+ * Copyright 2018-2021 Crown Copyright
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package uk.gov.gchq.palisade.service.data.avro;
+
+import org.apache.avro.Schema;
+import org.apache.avro.file.DataFileWriter;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.Iterator;
+import java.util.function.Function;
+import java.util.stream.Stream;
+
+import static java.util.Objects.requireNonNull;
+
+/**
+ * An {@link InputStream} of an Avro data file, encoded lazily from a {@link Stream} of domain objects.
+ * No background thread is used, instead each time the reader drains the buffered bytes, records are pulled from the
+ * stream and appended until the next Avro block has been written (or the stream is exhausted).
+ * As such, the stream of objects is consumed on whichever thread is reading from this {@link InputStream}.
+ *
+ * @param <O> the domain object type
+ */
+public class AvroEncodingInputStream<O> extends AbstractBlockInputStream {
+    private final Function<O, Schema> schemaOf;
+    private final Stream<O> objects;
+    private final Iterator<O> iterator;
+    private final DataFileWriter<O> writer;
+    private final BlockBuffer buffer = new BlockBuffer();
+    private boolean started;
+
+    /**
+     * Create a new {@link AvroEncodingInputStream} writing with the given {@link DataFileWriter}, which must not yet
+     * have been created, so that its codec and sync interval may be configured. Nothing will be read from the stream
+     * of objects until this {@link InputStream} is itself read.
+     *
+     * @param schema  the schema of the domain objects
+     * @param objects the stream of domain objects to encode
+     * @param writer  the writer used to encode the data file
+     */
+    public AvroEncodingInputStream(final Schema schema, final Stream<O> objects, final DataFileWriter<O> writer) {
+        this((O first) -> schema, objects, writer);
+        requireNonNull(schema, "schema is required");
+    }
+
+    /**
+     * Create a new {@link AvroEncodingInputStream} which takes its schema from the first object in the stream, once
+     * this {@link InputStream} is first read.
+     *
+     * @param schemaOf a function from the first object in the stream, or null if the stream is empty, to the schema
+     * @param objects  the stream of objects to encode
+     * @param writer   the writer used to encode the data file, which must not yet have been created
+     */
+    AvroEncodingInputStream(final Function<O, Schema> schemaOf, final Stream<O> objects, final DataFileWriter<O> writer) {
+        this.schemaOf = requireNonNull(schemaOf, "schemaOf is required");
+        this.objects = requireNonNull(objects, "objects is required");
+        this.iterator = objects.iterator();
+        this.writer = requireNonNull(writer, "writer is required");
+    }
+
+    @Override
+    public void close() throws IOException {
+        super.close();
+        objects.close();
+    }
+
+    @Override
+    protected boolean nextBlock() throws IOException {
+        buffer.reset();
+        if (!started) {
+            // The header is written and flushed immediately on creation
+            started = true;
+            O first = iterator.hasNext() ? iterator.next() : null;
+            writer.create(schemaOf.apply(first), buffer);
+            if (first != null) {
+                writer.append(first);
+            }
+            setBlock(buffer.array(), 0, buffer.size());
+            return true;
+        }
+        // The data file writer flushes to the buffer each time a block is completed
+        while (buffer.size() == 0 && iterator.hasNext()) {
+            writer.append(iterator.next());
+        }
+        boolean hasNext = buffer.size() > 0;
+        if (!hasNext) {
+            // Write out whatever remains as the final block
+            writer.close();
+            objects.close();
+        }
+        setBlock(buffer.array(), 0, buffer.size());
+        return hasNext;
+    }
+}
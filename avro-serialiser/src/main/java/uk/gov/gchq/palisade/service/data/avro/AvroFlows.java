@@ -0,0 +1,262 @@
+/*
+ * Copyright 2018-2021 Crown Copyright
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package uk.gov.gchq.palisade.service.data.avro;
+
+import akka.NotUsed;
+import akka.stream.Attributes;
+import akka.stream.FlowShape;
+import akka.stream.Inlet;
+import akka.stream.Outlet;
+import akka.stream.javadsl.Flow;
+import akka.stream.stage.AbstractInHandler;
+import akka.stream.stage.AbstractOutHandler;
+import akka.stream.stage.GraphStage;
+import akka.stream.stage.GraphStageLogic;
+import akka.util.ByteString;
+import org.apache.avro.Schema;
+import org.apache.avro.file.DataFileStream;
+import org.apache.avro.file.DataFileStream.Header;
+import org.apache.avro.file.DataFileWriter;
+import org.apache.avro.io.DatumReader;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Iterator;
+import java.util.function.Supplier;
+
+import static java.util.Objects.requireNonNull;
+
+/**
+ * Akka Streams equivalents of {@link AvroSerialiser#serialise} and {@link AvroSerialiser#deserialise}.
+ * Both flows work a block at a time and respect backpressure, so an Avro file can be read from (or written to) a
+ * {@link akka.stream.javadsl.Source} of {@link ByteString}s without blocking a thread on an {@link java.io.InputStream}.
+ */
+public final class AvroFlows {
+    private AvroFlows() {
+        // Static utility class
+    }
+
+    /**
+     * Create a flow encoding domain objects as an Avro data file, using the same schema as the given serialiser.
+     * The header is emitted first, followed by one {@link ByteString} per Avro block.
+     *
+     * @param serialiser the serialiser for the domain objects
+     * @param <O>        the domain object type
+     * @return a flow of domain objects to serialised bytes
+     */
+    public static <O> Flow<O, ByteString, NotUsed> serialise(final AvroSerialiser<O> serialiser) {
+        requireNonNull(serialiser, "serialiser is required");
+        return Flow.fromGraph(new EncodingStage<>(serialiser.getSchema(), serialiser::createDataFileWriter));
+    }
+
+    /**
+     * Create a flow decoding an Avro data file into domain objects, using the same schema as the given serialiser.
+     * Incoming bytes are buffered until a whole Avro block is available, then that block's records are emitted.
+     *
+     * @param serialiser the serialiser for the domain objects
+     * @param <O>        the domain object type
+     * @return a flow of serialised bytes to domain objects
+     */
+    public static <O> Flow<ByteString, O, NotUsed> deserialise(final AvroSerialiser<O> serialiser) {
+        requireNonNull(serialiser, "serialiser is required");
+        return Flow.fromGraph(new DecodingStage<>(serialiser::createDatumReader));
+    }
+
+    private static final class EncodingStage<O> extends GraphStage<FlowShape<O, ByteString>> {
+        private final Inlet<O> in = Inlet.create("AvroEncoding.in");
+        private final Outlet<ByteString> out = Outlet.create("AvroEncoding.out");
+        private final FlowShape<O, ByteString> shape = FlowShape.of(in, out);
+        private final Schema schema;
+        private final Supplier<DataFileWriter<O>> writers;
+
+        EncodingStage(final Schema schema, final Supplier<DataFileWriter<O>> writers) {
+            this.schema = schema;
+            this.writers = writers;
+        }
+
+        @Override
+        public FlowShape<O, ByteString> shape() {
+            return shape;
+        }
+
+        @Override
+        public GraphStageLogic createLogic(final Attributes inheritedAttributes) {
+            return new GraphStageLogic(shape) {
+                private final ByteArrayOutputStream buffer = new ByteArrayOutputStream();
+                private final DataFileWriter<O> writer = writers.get();
+
+                {
+                    setHandler(in, new AbstractInHandler() {
+                        @Override
+                        public void onPush() throws IOException {
+                            // The data file writer flushes to the buffer each time a block is completed
+                            writer.append(grab(in));
+                            if (buffer.size() > 0) {
+                                push(out, takeBuffer());
+                            } else {
+                                pull(in);
+                            }
+                        }
+
+                        @Override
+                        public void onUpstreamFinish() throws IOException {
+                            writer.close();
+                            if (buffer.size() > 0) {
+                                emit(out, takeBuffer());
+                            }
+                            // Completion is deferred until the final block has been emitted
+                            completeStage();
+                        }
+                    });
+
+                    setHandler(out, new AbstractOutHandler() {
+                        @Override
+                        public void onPull() {
+                            if (buffer.size() > 0) {
+                                push(out, takeBuffer());
+                            } else {
+                                pull(in);
+                            }
+                        }
+                    });
+                }
+
+                @Override
+                public void preStart() throws IOException {
+                    // The header is written and flushed immediately on creation, ready for the first pull
+                    writer.create(schema, buffer);
+                }
+
+                private ByteString takeBuffer() {
+                    ByteString bytes = ByteString.fromArray(buffer.toByteArray());
+                    buffer.reset();
+                    return bytes;
+                }
+            };
+        }
+    }
+
+    private static final class DecodingStage<O> extends GraphStage<FlowShape<ByteString, O>> {
+        private final Inlet<ByteString> in = Inlet.create("AvroDecoding.in");
+        private final Outlet<O> out = Outlet.create("AvroDecoding.out");
+        private final FlowShape<ByteString, O> shape = FlowShape.of(in, out);
+        private final Supplier<DatumReader<O>> datumReaders;
+
+        DecodingStage(final Supplier<DatumReader<O>> datumReaders) {
+            this.datumReaders = datumReaders;
+        }
+
+        @Override
+        public FlowShape<ByteString, O> shape() {
+            return shape;
+        }
+
+        @Override
+        public GraphStageLogic createLogic(final Attributes inheritedAttributes) {
+            return new GraphStageLogic(shape) {
+                private final DatumReader<O> reader = datumReaders.get();
+                // Until the header is complete, it is gathered in one growing array, so each attempt to parse it
+                // reads the bytes in place rather than copying everything received so far
+                private BlockBuffer headerBuffer = new BlockBuffer();
+                private ByteString buffer = ByteString.emptyByteString();
+                private Header header;
+                private long nextLength = -1;
+                private Iterator<O> records = Collections.emptyIterator();
+
+                {
+                    setHandler(in, new AbstractInHandler() {
+                        @Override
+                        public void onPush() throws IOException {
+                            ByteString bytes = grab(in);
+                            if (header == null) {
+                                headerBuffer.writeBytes(bytes.toArray());
+                            } else {
+                                buffer = buffer.concat(bytes);
+                            }
+                            emitOrPull();
+                        }
+
+                        @Override
+                        public void onUpstreamFinish() throws IOException {
+                            if (isAvailable(out)) {
+                                emitOrPull();
+                            }
+                        }
+                    });
+
+                    setHandler(out, new AbstractOutHandler() {
+                        @Override
+                        public void onPull() throws IOException {
+                            emitOrPull();
+                        }
+                    });
+                }
+
+                private void emitOrPull() throws IOException {
+                    if (!records.hasNext()) {
+                        records = nextBlock();
+                    }
+                    if (records.hasNext()) {
+                        push(out, records.next());
+                    } else if (!isClosed(in)) {
+                        if (!hasBeenPulled(in)) {
+                            pull(in);
+                        }
+                    } else {
+                        int trailing = header == null ? headerBuffer.size() : buffer.size();
+                        if (trailing == 0) {
+                            completeStage();
+                        } else {
+                            failStage(new IOException("Avro data file was truncated, " + trailing + " trailing bytes could not be decoded"));
+                        }
+                    }
+                }
+
+                /**
+                 * Decode the next complete block in the buffer, or return an empty iterator if there is not yet one.
+                 */
+                private Iterator<O> nextBlock() throws IOException {
+                    if (header == null) {
+                        byte[] bytes = headerBuffer.array();
+                        int received = headerBuffer.size();
+                        int headerLength = AvroContainer.headerLength(bytes, received);
+                        if (headerLength < 0) {
+                            return Collections.emptyIterator();
+                        }
+                        header = AvroContainer.parseHeader(Arrays.copyOf(bytes, headerLength), reader);
+                        buffer = ByteString.fromArray(bytes, headerLength, received - headerLength);
+                        headerBuffer = null;
+                    }
+                    if (nextLength < 0) {
+                        byte[] prefix = buffer.take(AvroContainer.MAX_BLOCK_PREFIX).toArray();
+                        nextLength = AvroContainer.blockLength(prefix, 0, prefix.length);
+                    }
+                    if (nextLength < 0 || buffer.size() < nextLength) {
+                        return Collections.emptyIterator();
+                    }
+                    byte[] block = buffer.take((int) nextLength).toArray();
+                    buffer = buffer.drop((int) nextLength);
+                    nextLength = -1;
+                    DataFileStream<O> blockStream = AvroContainer.openBlock(header, reader, block);
+                    return blockStream.iterator();
+                }
+            };
+        }
+    }
+}
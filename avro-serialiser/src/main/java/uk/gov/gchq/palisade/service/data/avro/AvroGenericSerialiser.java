@@ -0,0 +1,113 @@
+/*
+ * Copyright 2018-2021 Crown Copyright
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package uk.gov.gchq.palisade.service.data.avro;
+
+import org.apache.avro.Schema;
+import org.apache.avro.file.CodecFactory;
+import org.apache.avro.file.DataFileConstants;
+import org.apache.avro.file.DataFileStream;
+import org.apache.avro.file.DataFileWriter;
+import org.apache.avro.generic.GenericDatumReader;
+import org.apache.avro.generic.GenericDatumWriter;
+import org.apache.avro.generic.GenericRecord;
+
+import uk.gov.gchq.palisade.Generated;
+import uk.gov.gchq.palisade.data.serialise.Serialiser;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.UncheckedIOException;
+import java.util.stream.Stream;
+import java.util.stream.StreamSupport;
+
+import static java.util.Objects.nonNull;
+import static java.util.Objects.requireNonNull;
+
+/**
+ * An {@code AvroGenericSerialiser} is used to serialise and deserialise Avro files without a domain class.
+ * Converts an avro {@link InputStream} to/from a {@link Stream} of {@link GenericRecord}s.
+ * <p>
+ * Records are read using the schema from the header of each data file, so any Avro data file can be served
+ * without its domain class being deployed. Each {@link GenericRecord} holds its fields in a flat array indexed by
+ * field position, so no domain objects are instantiated reflectively. When serialising, the schema is taken from
+ * the first record, and every record in the stream must share that schema.
+ */
+// Suppress making serialiser class itself serialisable
+@SuppressWarnings({"java:S2057", "java:S1948"})
+public class AvroGenericSerialiser implements Serialiser<GenericRecord> {
+    // The schema written for an empty stream, where there is no record to take the schema from
+    private static final Schema EMPTY_SCHEMA = Schema.create(Schema.Type.NULL);
+
+    private String codec = DataFileConstants.NULL_CODEC;
+    private CodecFactory codecFactory = CodecFactory.nullCodec();
+
+    /**
+     * Sets the compression codec used for serialised data files.
+     *
+     * @param codec the name of the codec, one of null, deflate, snappy, bzip2 or xz, where deflate and xz may be
+     *              followed by a compression level, such as deflate-6
+     * @return the current {@link AvroGenericSerialiser} object
+     */
+    @Generated
+    public AvroGenericSerialiser codec(final String codec) {
+        this.setCodec(codec);
+        return this;
+    }
+
+    @Generated
+    public String getCodec() {
+        return codec;
+    }
+
+    @Generated
+    public void setCodec(final String codec) {
+        requireNonNull(codec);
+        this.codecFactory = AvroCodecs.fromName(codec);
+        this.codec = codec;
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public Stream<GenericRecord> deserialise(final InputStream input) {
+        DataFileStream<GenericRecord> in;
+        try {
+            // With no expected schema, the reader uses the writer's schema from the header
+            in = new DataFileStream<>(input, new GenericDatumReader<>());
+        } catch (IOException e) {
+            throw new UncheckedIOException("An error occurred during deserialisaton", e);
+        }
+
+        // Don't use try-with-resources here! This input stream needs to stay open until it is closed manually by the
+        // stream it is feeding below
+        return StreamSupport.stream(in.spliterator(), false);
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public InputStream serialise(final Stream<GenericRecord> objects) {
+        if (nonNull(objects)) {
+            DataFileWriter<GenericRecord> writer = new DataFileWriter<GenericRecord>(new GenericDatumWriter<>())
+                    .setCodec(codecFactory);
+            return new AvroEncodingInputStream<>((GenericRecord first) -> nonNull(first) ? first.getSchema() : EMPTY_SCHEMA, objects, writer);
+        }
+        return InputStream.nullInputStream();
+    }
+}
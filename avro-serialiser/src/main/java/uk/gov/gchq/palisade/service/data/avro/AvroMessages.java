@@ -0,0 +1,77 @@
+/*
+ * Copyright 2018-2021 Crown Copyright
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package uk.gov.gchq.palisade.service.data.avro;
+
+import org.apache.avro.Schema;
+import org.apache.avro.SchemaNormalization;
+import org.apache.avro.message.BadHeaderException;
+import org.apache.avro.message.MissingSchemaException;
+
+import java.security.NoSuchAlgorithmException;
+import java.util.Arrays;
+
+/**
+ * The header written before each record in Avro's single-object encoding, as used by
+ * {@link AvroEncoding#SINGLE_OBJECT}: a two byte marker followed by the 8 byte CRC-64-AVRO fingerprint of the
+ * record's schema, in little-endian order.
+ */
+final class AvroMessages {
+    static final int HEADER_LENGTH = 10;
+
+    private static final byte[] MARKER = {(byte) 0xC3, (byte) 0x01};
+    private static final String FINGERPRINT_ALGORITHM = "CRC-64-AVRO";
+
+    private AvroMessages() {
+        // Utility class
+    }
+
+    /**
+     * Create the single-object header for records with the given schema.
+     *
+     * @param schema the schema of the records
+     * @return the header written before each record
+     */
+    static byte[] header(final Schema schema) {
+        byte[] fingerprint;
+        try {
+            fingerprint = SchemaNormalization.parsingFingerprint(FINGERPRINT_ALGORITHM, schema);
+        } catch (NoSuchAlgorithmException e) {
+            // CRC-64-AVRO is implemented by Avro itself, so is always available
+            throw new IllegalStateException("Avro fingerprint algorithm is not available", e);
+        }
+        byte[] header = Arrays.copyOf(MARKER, HEADER_LENGTH);
+        System.arraycopy(fingerprint, 0, header, MARKER.length, fingerprint.length);
+        return header;
+    }
+
+    /**
+     * Check that a header read from a message matches the header expected for the domain class's schema.
+     *
+     * @param expected the header for the domain class's schema
+     * @param actual   the header read from the message
+     * @throws BadHeaderException     if the message is not in the single-object encoding
+     * @throws MissingSchemaException if the message was written with a different schema
+     */
+    static void checkHeader(final byte[] expected, final byte[] actual) {
+        if (!Arrays.equals(MARKER, 0, MARKER.length, actual, 0, MARKER.length)) {
+            throw new BadHeaderException("Unrecognized header bytes: 0x" + Integer.toHexString(actual[0] & 0xFF) + " 0x" + Integer.toHexString(actual[1] & 0xFF));
+        }
+        if (!Arrays.equals(expected, actual)) {
+            throw new MissingSchemaException("Cannot resolve the schema of a record which was not written with the domain class's schema");
+        }
+    }
+}
@@ -19,14 +19,18 @@ package uk.gov.gchq.palisade.service.data.avro;
 import com.fasterxml.jackson.annotation.JsonCreator;
 import com.fasterxml.jackson.annotation.JsonProperty;
 import org.apache.avro.Schema;
+import org.apache.avro.file.CodecFactory;
+import org.apache.avro.file.DataFileConstants;
+import org.apache.avro.file.DataFileReader;
 import org.apache.avro.file.DataFileStream;
 import org.apache.avro.file.DataFileWriter;
-import org.apache.avro.reflect.ReflectData;
-import org.apache.avro.reflect.ReflectDatumReader;
-import org.apache.avro.reflect.ReflectDatumWriter;
+import org.apache.avro.file.SeekableInput;
+import org.apache.avro.io.DatumReader;
+import org.apache.avro.io.DatumWriter;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
+import uk.gov.gchq.palisade.Generated;
 import uk.gov.gchq.palisade.data.serialise.Serialiser;
 
 import java.io.IOException;
@@ -35,8 +39,26 @@ import java.io.PipedInputStream;
 import java.io.PipedOutputStream;
 import java.io.UncheckedIOException;
 import java.util.Iterator;
+import java.util.List;
+import java.util.Optional;
+import java.util.Set;
+import java.util.Spliterator;
+import java.util.Spliterators;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
 import java.util.concurrent.Executor;
-import java.util.concurrent.Executors;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.SynchronousQueue;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.Consumer;
+import java.util.function.Function;
+import java.util.function.Predicate;
+import java.util.function.UnaryOperator;
 import java.util.stream.Stream;
 import java.util.stream.StreamSupport;
 
@@ -46,27 +68,359 @@ import static java.util.Objects.requireNonNull;
 /**
  * An {@code AvroInputStreamSerialiser} is used to serialise and deserialise Avro files.
  * Converts an avro {@link InputStream} to/from a {@link Stream} of domain objects ({@link O}s).
+ * <p>
+ * By default, {@link #serialise(Stream)} returns an {@link InputStream} of an Avro data file, which encodes records
+ * on the thread reading from it. Alternatively, an {@link Executor} may be supplied per-instance, in which case each call
+ * to {@link #serialise(Stream)} occupies one of its threads to write through a pipe for as long as the returned
+ * {@link InputStream} is being read.
+ * <p>
+ * If the {@code encodingParallelism} is greater than one, records are instead grouped into blocks of
+ * {@code blockRecordCount} records, with each block encoded and compressed on the {@link ForkJoinPool#commonPool()}
+ * by a {@link ParallelAvroEncodingInputStream}. Similarly, if the {@code decodingParallelism} is greater than one,
+ * {@link #deserialise(InputStream)} decompresses and decodes blocks in parallel on the same pool.
+ * <p>
+ * For responses of only a few records, the {@link AvroEncoding#SINGLE_OBJECT} and {@link AvroEncoding#RAW} encodings
+ * leave out the data file's header, which is otherwise often larger than the records themselves.
+ * <p>
+ * Fields are read and written by Avro's reflect implementation unless the {@link DatumBackend#GENERATED} backend is
+ * configured, which generates accessors for the domain class on first use.
  *
  * @param <O> the domain object type
  */
 // Suppress making serialiser class itself serialisable
 @SuppressWarnings({"java:S2057", "java:S1948"})
 public class AvroSerialiser<O> implements Serialiser<O> {
-    private static final int PARALLELISM = 1;
     private static final Logger LOGGER = LoggerFactory.getLogger(AvroSerialiser.class);
-    private static final Executor EXECUTOR = Executors.newFixedThreadPool(PARALLELISM);
+    private static final int DEFAULT_BLOCK_RECORD_COUNT = 4096;
+    private static final int MIN_SYNC_INTERVAL = 32;
+    private static final int MAX_SYNC_INTERVAL = 1 << 30;
+    private static final String ENCODING_PARAMETER = "encoding";
 
+    private final DatumCache<O> datumCache;
     private final Schema schema;
+    private final Executor executor;
+    private DatumBackend datumBackend = DatumBackend.REFLECT;
+    private AvroEncoding encoding = AvroEncoding.CONTAINER;
+    private Set<String> projection = Set.of();
+    private Schema readerSchema;
+    private int encodingParallelism = 1;
+    private int blockRecordCount = DEFAULT_BLOCK_RECORD_COUNT;
+    private int decodingParallelism = 1;
+    private String codec = DataFileConstants.NULL_CODEC;
+    private CodecFactory codecFactory = CodecFactory.nullCodec();
+    private int syncInterval = DataFileConstants.DEFAULT_SYNC_INTERVAL;
 
     /**
-     * Constructor for the {@link AvroSerialiser}
+     * Constructor for the {@link AvroSerialiser}, encoding records on the thread reading the serialised stream
      *
      * @param domainClass the class for the serialiser
      */
     @JsonCreator
     public AvroSerialiser(@JsonProperty("domainClass") final Class<O> domainClass) {
-        requireNonNull(domainClass, "domainClass is required");
-        this.schema = ReflectData.AllowNull.get().getSchema(domainClass);
+        this.datumCache = DatumCache.forClass(requireNonNull(domainClass, "domainClass is required"));
+        this.schema = datumCache.getSchema();
+        this.readerSchema = schema;
+        this.executor = null;
+    }
+
+    /**
+     * Constructor for the {@link AvroSerialiser}, using the given executor to run the pipe writers for
+     * {@link #serialise(Stream)}. Any {@link RejectedExecutionException} thrown by the executor is propagated
+     * to the caller of {@link #serialise(Stream)}.
+     *
+     * @param domainClass the class for the serialiser
+     * @param executor    the executor on which each serialised stream is written
+     */
+    public AvroSerialiser(final Class<O> domainClass, final Executor executor) {
+        this.datumCache = DatumCache.forClass(requireNonNull(domainClass, "domainClass is required"));
+        requireNonNull(executor, "executor is required");
+        this.schema = datumCache.getSchema();
+        this.readerSchema = schema;
+        this.executor = executor;
+    }
+
+    Schema getSchema() {
+        return schema;
+    }
+
+    /**
+     * Create a new reader for the domain class using the configured {@link DatumBackend} and projection, sharing
+     * any cached state with other readers for the same class.
+     *
+     * @return a new {@link DatumReader}, which should not be shared between threads
+     */
+    DatumReader<O> createDatumReader() {
+        return createDatumReader(readerSchema);
+    }
+
+    /**
+     * Create a new reader for the domain class using the configured {@link DatumBackend} and the given reader
+     * schema, sharing any cached state with other readers for the same class.
+     *
+     * @param readerSchema the schema to read records as, either the domain class's schema or a projection of it
+     * @return a new {@link DatumReader}, which should not be shared between threads
+     */
+    DatumReader<O> createDatumReader(final Schema readerSchema) {
+        return datumCache.createReader(datumBackend, readerSchema);
+    }
+
+    /**
+     * Sets the fields read by {@link #deserialise(InputStream)}, any other fields of the domain objects are skipped
+     * over without being decoded and left unset.
+     *
+     * @param projection the names of the top-level fields to read, or an empty set to read every field
+     * @return the current {@link AvroSerialiser} object
+     */
+    @Generated
+    public AvroSerialiser<O> projection(final Set<String> projection) {
+        this.setProjection(projection);
+        return this;
+    }
+
+    /**
+     * Create a new writer for the domain class using the configured {@link DatumBackend}, sharing any cached
+     * state with other writers for the same class.
+     *
+     * @return a new {@link DatumWriter}, which should not be shared between threads
+     */
+    DatumWriter<O> createDatumWriter() {
+        return datumCache.createWriter(datumBackend);
+    }
+
+    /**
+     * Create a new data file writer for the domain class, configured with this serialiser's codec and sync interval.
+     * The writer has not yet been created, so may be configured further.
+     *
+     * @return a new {@link DataFileWriter}
+     */
+    DataFileWriter<O> createDataFileWriter() {
+        return new DataFileWriter<>(createDatumWriter())
+                .setCodec(codecFactory)
+                .setSyncInterval(syncInterval);
+    }
+
+    /**
+     * Get the shared pool of encoders for the domain class, using the configured {@link DatumBackend},
+     * this serialiser's sync interval and the given codec.
+     *
+     * @param codecName the name of the codec to compress each block with
+     * @return the pool of encoders, which may be shared with other serialisers
+     */
+    EncoderPool<O> encoderPool(final String codecName) {
+        return datumCache.encoderPool(datumBackend, codecName, syncInterval);
+    }
+
+    /**
+     * Sets the compression codec used for serialised data files.
+     *
+     * @param codec the name of the codec, one of null, deflate, snappy, bzip2 or xz, where deflate and xz may be
+     *              followed by a compression level, such as deflate-6
+     * @return the current {@link AvroSerialiser} object
+     */
+    @Generated
+    public AvroSerialiser<O> codec(final String codec) {
+        this.setCodec(codec);
+        return this;
+    }
+
+    /**
+     * Sets the approximate number of bytes in each block of serialised data files, before compression.
+     *
+     * @param syncInterval the number of bytes after which a block is written, between 32 and 2^30
+     * @return the current {@link AvroSerialiser} object
+     */
+    @Generated
+    public AvroSerialiser<O> syncInterval(final int syncInterval) {
+        this.setSyncInterval(syncInterval);
+        return this;
+    }
+
+    /**
+     * Sets how records are encoded by {@link #serialise(Stream)} and expected to be encoded by
+     * {@link #deserialise(InputStream)}.
+     *
+     * @param encoding the {@link AvroEncoding} to use
+     * @return the current {@link AvroSerialiser} object
+     */
+    @Generated
+    public AvroSerialiser<O> encoding(final AvroEncoding encoding) {
+        this.setEncoding(encoding);
+        return this;
+    }
+
+    /**
+     * Sets the implementation used to read and write the fields of the domain objects.
+     *
+     * @param datumBackend the {@link DatumBackend} to use
+     * @return the current {@link AvroSerialiser} object
+     */
+    @Generated
+    public AvroSerialiser<O> datumBackend(final DatumBackend datumBackend) {
+        this.setDatumBackend(datumBackend);
+        return this;
+    }
+
+    /**
+     * Sets the number of blocks to encode in parallel for each call to {@link #serialise(Stream)}.
+     *
+     * @param encodingParallelism the number of blocks to encode at once, where 1 encodes sequentially
+     * @return the current {@link AvroSerialiser} object
+     */
+    @Generated
+    public AvroSerialiser<O> encodingParallelism(final int encodingParallelism) {
+        this.setEncodingParallelism(encodingParallelism);
+        return this;
+    }
+
+    /**
+     * Sets the number of records written in each block when encoding in parallel.
+     *
+     * @param blockRecordCount the number of records in each block
+     * @return the current {@link AvroSerialiser} object
+     */
+    @Generated
+    public AvroSerialiser<O> blockRecordCount(final int blockRecordCount) {
+        this.setBlockRecordCount(blockRecordCount);
+        return this;
+    }
+
+    /**
+     * Sets the number of blocks to decode in parallel for each call to {@link #deserialise(InputStream)}.
+     *
+     * @param decodingParallelism the number of blocks to decode at once, where 1 decodes sequentially
+     * @return the current {@link AvroSerialiser} object
+     */
+    @Generated
+    public AvroSerialiser<O> decodingParallelism(final int decodingParallelism) {
+        this.setDecodingParallelism(decodingParallelism);
+        return this;
+    }
+
+    @Generated
+    public DatumBackend getDatumBackend() {
+        return datumBackend;
+    }
+
+    @Generated
+    public void setDatumBackend(final DatumBackend datumBackend) {
+        requireNonNull(datumBackend);
+        this.datumBackend = datumBackend;
+    }
+
+    @Generated
+    public Set<String> getProjection() {
+        return projection;
+    }
+
+    @Generated
+    public void setProjection(final Set<String> projection) {
+        requireNonNull(projection);
+        this.readerSchema = datumCache.project(projection);
+        this.projection = Set.copyOf(projection);
+    }
+
+    @Generated
+    public AvroEncoding getEncoding() {
+        return encoding;
+    }
+
+    @Generated
+    public void setEncoding(final AvroEncoding encoding) {
+        requireNonNull(encoding);
+        this.encoding = encoding;
+    }
+
+    @Generated
+    public String getCodec() {
+        return codec;
+    }
+
+    @Generated
+    public void setCodec(final String codec) {
+        requireNonNull(codec);
+        this.codecFactory = AvroCodecs.fromName(codec);
+        this.codec = codec;
+    }
+
+    @Generated
+    public int getSyncInterval() {
+        return syncInterval;
+    }
+
+    @Generated
+    public void setSyncInterval(final int syncInterval) {
+        if (syncInterval < MIN_SYNC_INTERVAL || syncInterval > MAX_SYNC_INTERVAL) {
+            throw new IllegalArgumentException("syncInterval must be between " + MIN_SYNC_INTERVAL + " and " + MAX_SYNC_INTERVAL + ", but was " + syncInterval);
+        }
+        this.syncInterval = syncInterval;
+    }
+
+    @Generated
+    public int getEncodingParallelism() {
+        return encodingParallelism;
+    }
+
+    @Generated
+    public void setEncodingParallelism(final int encodingParallelism) {
+        if (encodingParallelism < 1) {
+            throw new IllegalArgumentException("encodingParallelism must be positive, but was " + encodingParallelism);
+        }
+        this.encodingParallelism = encodingParallelism;
+    }
+
+    @Generated
+    public int getBlockRecordCount() {
+        return blockRecordCount;
+    }
+
+    @Generated
+    public void setBlockRecordCount(final int blockRecordCount) {
+        if (blockRecordCount < 1) {
+            throw new IllegalArgumentException("blockRecordCount must be positive, but was " + blockRecordCount);
+        }
+        this.blockRecordCount = blockRecordCount;
+    }
+
+    /**
+     * Create a bounded executor suitable for use by an {@link AvroSerialiser}.
+     * At most {@code parallelism} streams will be serialised at once, with up to {@code queueCapacity} further
+     * streams waiting for a thread. Once the queue is full, new requests are rejected with a
+     * {@link RejectedExecutionException}, rather than blocking the caller.
+     *
+     * @param parallelism   the maximum number of streams to serialise concurrently
+     * @param queueCapacity the maximum number of streams waiting to be serialised, may be zero
+     * @return a new {@link ExecutorService}, which the caller is responsible for shutting down
+     */
+    public static ExecutorService newBoundedExecutor(final int parallelism, final int queueCapacity) {
+        if (parallelism < 1) {
+            throw new IllegalArgumentException("parallelism must be positive, but was " + parallelism);
+        }
+        if (queueCapacity < 0) {
+            throw new IllegalArgumentException("queueCapacity must not be negative, but was " + queueCapacity);
+        }
+        BlockingQueue<Runnable> queue = queueCapacity == 0
+                ? new SynchronousQueue<>()
+                : new ArrayBlockingQueue<>(queueCapacity);
+        AtomicInteger threadCount = new AtomicInteger();
+        ThreadFactory threadFactory = (Runnable runnable) -> {
+            Thread thread = new Thread(runnable, "avro-serialiser-" + threadCount.incrementAndGet());
+            thread.setDaemon(true);
+            return thread;
+        };
+        return new ThreadPoolExecutor(parallelism, parallelism, 0L, TimeUnit.MILLISECONDS, queue, threadFactory, new ThreadPoolExecutor.AbortPolicy());
+    }
+
+    @Generated
+    public int getDecodingParallelism() {
+        return decodingParallelism;
+    }
+
+    @Generated
+    public void setDecodingParallelism(final int decodingParallelism) {
+        if (decodingParallelism < 1) {
+            throw new IllegalArgumentException("decodingParallelism must be positive, but was " + decodingParallelism);
+        }
+        this.decodingParallelism = decodingParallelism;
     }
 
     /**
@@ -74,9 +428,47 @@ public class AvroSerialiser<O> implements Serialiser<O> {
      */
     @Override
     public Stream<O> deserialise(final InputStream input) {
+        return deserialise(input, encoding, readerSchema);
+    }
+
+    /**
+     * Deserialise the records of a resource with the given serialised format.
+     * If the format names an encoding with an {@code encoding} parameter, such as
+     * {@code avro/binary; encoding=single-object}, and that encoding is supported, the records are expected to be
+     * in that encoding in place of this serialiser's configured encoding.
+     *
+     * @param input            the encoded records
+     * @param serialisedFormat the serialised format of the resource
+     * @return a stream of the records
+     */
+    public Stream<O> deserialise(final InputStream input, final String serialisedFormat) {
+        requireNonNull(serialisedFormat, "serialisedFormat is required");
+        return deserialise(input, fromFormat(serialisedFormat, ENCODING_PARAMETER, AvroEncoding::fromName).orElse(encoding), readerSchema);
+    }
+
+    /**
+     * Deserialise only the given fields of each record in an Avro data file, in place of the configured projection.
+     * Any other fields are skipped over without being decoded, and are left unset in the domain objects.
+     *
+     * @param input  the Avro data file
+     * @param fields the names of the top-level fields to read, or an empty set to read every field
+     * @return a stream of the records in the file
+     * @throws IllegalArgumentException if any of the fields are not in the domain class's schema
+     */
+    public Stream<O> deserialise(final InputStream input, final Set<String> fields) {
+        return deserialise(input, encoding, datumCache.project(requireNonNull(fields, "fields is required")));
+    }
+
+    private Stream<O> deserialise(final InputStream input, final AvroEncoding encoding, final Schema projection) {
+        if (encoding != AvroEncoding.CONTAINER) {
+            return new MessageDecoder<>(schema, encoding, createDatumReader(projection), input, false).stream();
+        }
+        if (decodingParallelism > 1) {
+            return new ParallelBlockDecoder<O>(() -> createDatumReader(projection), input, decodingParallelism, true, ForkJoinPool.commonPool()).stream();
+        }
         DataFileStream<O> in;
         try {
-            in = new DataFileStream<>(input, new ReflectDatumReader<>(schema));
+            in = new DataFileStream<>(input, createDatumReader(projection));
         } catch (IOException e) {
             throw new UncheckedIOException("An error occurred during deserialisaton", e);
         }
@@ -86,14 +478,292 @@ public class AvroSerialiser<O> implements Serialiser<O> {
         return StreamSupport.stream(in.spliterator(), false);
     }
 
+    /**
+     * Deserialise the records of one byte range of an Avro data file, so that disjoint ranges of a large file can be
+     * read independently, such as by different requests or instances. The header is read from the start of the file,
+     * then records are read from the first block whose preceding sync marker starts at or after {@code start}, up to
+     * and including the block whose preceding sync marker starts before {@code end}.
+     * <p>
+     * Every block therefore belongs to exactly one range, and reading the ranges {@code [0, a)}, {@code [a, b)} ...
+     * {@code [z, length)} returns every record of the file once. The input must be a container file, and is decoded
+     * sequentially.
+     *
+     * @param input the Avro data file, which must support seeking
+     * @param start the position in the file at which the range starts, inclusive
+     * @param end   the position in the file at which the range ends, exclusive
+     * @return a sequential stream of the records in the blocks within the range
+     * @throws IllegalArgumentException if the range is negative or ends before it starts
+     */
+    public Stream<O> deserialiseRange(final SeekableInput input, final long start, final long end) {
+        requireNonNull(input, "input is required");
+        if (start < 0 || end < start) {
+            throw new IllegalArgumentException("Invalid range [" + start + ", " + end + ")");
+        }
+        DataFileReader<O> in;
+        try {
+            in = new DataFileReader<>(input, createDatumReader());
+            in.sync(start);
+        } catch (IOException e) {
+            throw new UncheckedIOException("An error occurred during deserialisaton", e);
+        }
+        Spliterator<O> rangeSpliterator = new Spliterators.AbstractSpliterator<>(Long.MAX_VALUE, Spliterator.ORDERED | Spliterator.NONNULL) {
+            @Override
+            public boolean tryAdvance(final Consumer<? super O> action) {
+                try {
+                    // A block belongs to the range if its preceding sync marker starts before the end of the range
+                    if (!in.hasNext() || in.pastSync(end)) {
+                        return false;
+                    }
+                } catch (IOException e) {
+                    throw new UncheckedIOException("An error occurred during deserialisaton", e);
+                }
+                action.accept(in.next());
+                return true;
+            }
+        };
+        return StreamSupport.stream(rangeSpliterator, false)
+                .onClose(() -> {
+                    try {
+                        in.close();
+                    } catch (IOException e) {
+                        throw new UncheckedIOException("Failed to close the input stream", e);
+                    }
+                });
+    }
+
+    /**
+     * Deserialise only the records of an Avro data file which are accepted by a filter over a few of their fields.
+     * Each record is first decoded with only the filter's fields, skipping over the rest, and only the records the
+     * filter accepts are then fully decoded. Where most records are rejected, such as by a policy on a single field,
+     * this avoids constructing almost any domain objects.
+     * <p>
+     * The filter is given the same domain object for every record, with only the filter's fields set, so must not
+     * keep hold of it. Accepted records are fully decoded as by {@link #deserialise(InputStream)}, including any
+     * projection. The input must be a container file, and is decoded sequentially.
+     *
+     * @param input        the Avro data file
+     * @param filterFields the names of the top-level fields used by the filter
+     * @param filter       the filter, returning true for records to be returned
+     * @return a sequential stream of the records accepted by the filter
+     * @throws IllegalArgumentException if any of the filter's fields are not in the domain class's schema
+     */
+    public Stream<O> deserialiseFiltered(final InputStream input, final Set<String> filterFields, final Predicate<? super O> filter) {
+        requireNonNull(filter, "filter is required");
+        DatumReader<O> filterReader = createDatumReader(datumCache.project(requireNonNull(filterFields, "filterFields is required")));
+        DatumReader<O> fullReader = createDatumReader();
+        DataFileStream<O> in;
+        try {
+            in = new DataFileStream<>(input, fullReader);
+        } catch (IOException e) {
+            throw new UncheckedIOException("An error occurred during deserialisaton", e);
+        }
+        filterReader.setSchema(in.getSchema());
+        return new FilteringBlockDecoder<>(in, filterReader, fullReader, filter).stream();
+    }
+
+    /**
+     * Deserialise an Avro data file, decoding every record into the same domain object. Each element of the returned
+     * stream is only valid until the next element is requested, so it must be used, or re-serialised, before then.
+     * Operations which hold on to elements, such as collecting, sorting or encoding in parallel with an
+     * {@code encodingParallelism} greater than one, must copy them first.
+     * <p>
+     * In exchange, at most one domain object is allocated for the whole file, which avoids most of the garbage
+     * created by {@link #deserialise(InputStream)} when records are filtered or redacted then re-serialised.
+     *
+     * @param input the Avro data file
+     * @return a sequential stream of the records in the file, all of which are the same object
+     */
+    public Stream<O> deserialiseReusing(final InputStream input) {
+        if (encoding != AvroEncoding.CONTAINER) {
+            return new MessageDecoder<>(schema, encoding, createDatumReader(), input, true).stream();
+        }
+        DataFileStream<O> in;
+        try {
+            in = new DataFileStream<>(input, createDatumReader());
+        } catch (IOException e) {
+            throw new UncheckedIOException("An error occurred during deserialisaton", e);
+        }
+        Spliterator<O> reusingSpliterator = new Spliterators.AbstractSpliterator<>(Long.MAX_VALUE, Spliterator.ORDERED | Spliterator.NONNULL) {
+            private O reuse;
+
+            @Override
+            public boolean tryAdvance(final Consumer<? super O> action) {
+                if (!in.hasNext()) {
+                    return false;
+                }
+                try {
+                    reuse = in.next(reuse);
+                } catch (IOException e) {
+                    throw new UncheckedIOException("An error occurred during deserialisaton", e);
+                }
+                action.accept(reuse);
+                return true;
+            }
+        };
+        return StreamSupport.stream(reusingSpliterator, false)
+                .onClose(() -> {
+                    try {
+                        in.close();
+                    } catch (IOException e) {
+                        throw new UncheckedIOException("Failed to close the input stream", e);
+                    }
+                });
+    }
+
+    /**
+     * Deserialise an Avro data file where the order of the records does not matter.
+     * If the {@code decodingParallelism} is greater than one, each block's records are returned as soon as that block
+     * has been decoded, rather than waiting for all earlier blocks. Records within a block are kept in order.
+     *
+     * @param input the Avro data file
+     * @return a stream of the records in the file, in no particular order
+     */
+    public Stream<O> deserialiseUnordered(final InputStream input) {
+        if (decodingParallelism > 1 && encoding == AvroEncoding.CONTAINER) {
+            return new ParallelBlockDecoder<O>(this::createDatumReader, input, decodingParallelism, false, ForkJoinPool.commonPool()).stream();
+        }
+        return deserialise(input).unordered();
+    }
+
+    /**
+     * Deserialise an Avro data file as batches of records, where each batch holds the records of one block.
+     * Consumers which process records in chunks, such as those writing to another batched sink, can then work with
+     * whole blocks without regrouping the records. Blocks are decoded on the {@link ForkJoinPool#commonPool()}
+     * if the {@code decodingParallelism} is greater than one, and are always returned in their original order.
+     * Since only container files have blocks, the input is read as a container file regardless of the encoding.
+     *
+     * @param input the Avro data file
+     * @return a stream of the blocks in the file, each as a list of its records
+     */
+    public Stream<List<O>> deserialiseBatches(final InputStream input) {
+        requireNonNull(input, "input is required");
+        Executor decoder = decodingParallelism > 1 ? ForkJoinPool.commonPool() : Runnable::run;
+        return new ParallelBlockDecoder<O>(this::createDatumReader, input, decodingParallelism, true, decoder).batches();
+    }
+
     /**
      * {@inheritDoc}
      */
-    // Suppress unclosed outputStream (closed in runnable thread finally)
-    @SuppressWarnings("java:S2095")
     @Override
     public InputStream serialise(final Stream<O> objects) {
-        PipedInputStream is = new PipedInputStream();
+        return serialise(objects, encoding, codec);
+    }
+
+    /**
+     * Serialise a stream of domain objects for a resource with the given serialised format.
+     * If the format names a codec with a {@code codec} parameter, such as {@code avro/binary; codec=deflate-6}, and
+     * that codec is supported, it is used in place of this serialiser's configured codec. Likewise for an encoding named
+     * with an {@code encoding} parameter, such as {@code avro/binary; encoding=raw}.
+     *
+     * @param objects          the stream of domain objects
+     * @param serialisedFormat the serialised format of the resource
+     * @return an {@link InputStream} of the serialised records
+     */
+    public InputStream serialise(final Stream<O> objects, final String serialisedFormat) {
+        requireNonNull(serialisedFormat, "serialisedFormat is required");
+        AvroEncoding negotiatedEncoding = fromFormat(serialisedFormat, ENCODING_PARAMETER, AvroEncoding::fromName).orElse(encoding);
+        String negotiatedCodec = fromFormat(serialisedFormat, AvroCodecs.CODEC_PARAMETER, (String name) -> {
+            AvroCodecs.fromName(name);
+            return name;
+        }).orElse(codec);
+        return serialise(objects, negotiatedEncoding, negotiatedCodec);
+    }
+
+    /**
+     * Serialise batches of domain objects, writing each batch as one block of the data file, rather than grouping
+     * records into blocks by the {@code blockRecordCount}. Empty batches are skipped, and any batch larger than the
+     * {@code syncInterval} is written as more than one block. Blocks are encoded on the
+     * {@link ForkJoinPool#commonPool()} if the {@code encodingParallelism} is greater than one, otherwise on the
+     * thread reading from the returned {@link InputStream}. A container file is always written, regardless of the
+     * encoding.
+     *
+     * @param batches the stream of batches of domain objects
+     * @return an {@link InputStream} of the serialised data file
+     */
+    public InputStream serialiseBatches(final Stream<List<O>> batches) {
+        if (nonNull(batches)) {
+            Executor encoder = encodingParallelism > 1 ? ForkJoinPool.commonPool() : Runnable::run;
+            return ParallelAvroEncodingInputStream.ofBatches(encoderPool(codec), batches, encodingParallelism, encoder);
+        }
+        return InputStream.nullInputStream();
+    }
+
+    private InputStream serialise(final Stream<O> objects, final AvroEncoding encoding, final String codecName) {
+        if (nonNull(objects) && encoding != AvroEncoding.CONTAINER) {
+            return new MessageEncodingInputStream<>(schema, encoding, createDatumWriter(), objects, syncInterval);
+        }
+        if (nonNull(executor)) {
+            return serialiseOnExecutor(objects, encoderPool(codecName));
+        }
+        if (nonNull(objects) && encodingParallelism > 1) {
+            return new ParallelAvroEncodingInputStream<>(encoderPool(codecName), objects, blockRecordCount, encodingParallelism, ForkJoinPool.commonPool());
+        }
+        if (nonNull(objects)) {
+            return new PooledAvroEncodingInputStream<>(encoderPool(codecName), objects);
+        }
+        return InputStream.nullInputStream();
+    }
+
+    /**
+     * Re-serialise an Avro data file after applying a function to each record, such as a redaction rule.
+     * Any block for which the function returns every record unchanged is copied to the output as-is, without being
+     * recompressed, so files which are mostly untouched by the function can be re-serialised cheaply.
+     * The data file must have been written with the same schema as this serialiser for blocks to be copied,
+     * otherwise every record is re-encoded. Every field is read, regardless of any projection.
+     *
+     * @param input    the Avro data file
+     * @param function the function to apply to each record, returning null to remove the record from the output
+     * @return an {@link InputStream} of the re-serialised data file, using the same codec as the input
+     */
+    public InputStream reserialise(final InputStream input, final UnaryOperator<O> function) {
+        return reserialise(input, function, RecordRangePredicate.ALL);
+    }
+
+    /**
+     * Re-serialise an Avro data file after applying a function to each record, such as a redaction rule, where the
+     * caller knows which records the function may change. Any block holding only records which {@code mayModify}
+     * rules out is copied to the output without being decompressed or decoded, and the function is not applied to
+     * its records. Every other block is handled as by {@link #reserialise(InputStream, UnaryOperator)}.
+     *
+     * @param input     the Avro data file
+     * @param function  the function to apply to each record, returning null to remove the record from the output
+     * @param mayModify whether the function may change any of a range of records, such as
+     *                  {@link RecordRangePredicate#NONE} where no redaction applies to the resource
+     * @return an {@link InputStream} of the re-serialised data file, using the same codec as the input
+     */
+    public InputStream reserialise(final InputStream input, final UnaryOperator<O> function, final RecordRangePredicate mayModify) {
+        requireNonNull(input, "input is required");
+        requireNonNull(function, "function is required");
+        requireNonNull(mayModify, "mayModify is required");
+        return new PassthroughAvroInputStream<>(schema, createDatumReader(schema), createDatumWriter(), input, function, mayModify);
+    }
+
+    /**
+     * Parse a parameter of a serialised format, ignoring it if its value is not supported.
+     *
+     * @param serialisedFormat the serialised format
+     * @param name             the name of the parameter
+     * @param parser           a function from the value of the parameter, throwing an
+     *                         {@link IllegalArgumentException} if it is not supported
+     * @param <T>              the type of the parsed value
+     * @return the parsed value, or empty if the format has no such parameter or its value is not supported
+     */
+    private static <T> Optional<T> fromFormat(final String serialisedFormat, final String name, final Function<String, T> parser) {
+        return AvroCodecs.formatParameter(serialisedFormat, name)
+                .flatMap((String value) -> {
+                    try {
+                        return Optional.of(parser.apply(value));
+                    } catch (IllegalArgumentException e) {
+                        LOGGER.debug("Ignoring unsupported {} requested by format {}", name, serialisedFormat, e);
+                        return Optional.empty();
+                    }
+                });
+    }
+
+    // Suppress unclosed outputStream (closed in runnable thread finally)
+    @SuppressWarnings("java:S2095")
+    private InputStream serialiseOnExecutor(final Stream<O> objects, final EncoderPool<O> pool) {
+        WriterPipe is = new WriterPipe();
         PipedOutputStream os = new PipedOutputStream();
         try {
             os.connect(is);
@@ -101,20 +771,34 @@ public class AvroSerialiser<O> implements Serialiser<O> {
             throw new UncheckedIOException("Failed to connect input and output stream pipes", e);
         }
         Runnable pipeWriter = () -> {
-            try (DataFileWriter<O> dataFileWriter = new DataFileWriter<>(new ReflectDatumWriter<>(schema))) {
+            BlockEncoder<O> encoder = null;
+            boolean written = false;
+            try {
                 if (nonNull(objects)) {
-                    // create a data file writer around the output stream
-                    LOGGER.debug("Creating data file writer");
-                    dataFileWriter.create(schema, os);
+                    // borrow an encoder and copy each block to the output stream once it is completed
+                    LOGGER.debug("Borrowing block encoder");
+                    encoder = pool.borrow(EncoderPool.newSync());
+                    os.write(encoder.getHeader());
                     Iterator<O> objectIt = objects.iterator();
                     while (objectIt.hasNext()) {
                         O next = objectIt.next();
-                        dataFileWriter.append(next);
+                        encoder.append(next);
+                        encoder.getBuffer().writeTo(os);
+                        encoder.reset();
                     }
+                    encoder.endBlock();
+                    encoder.getBuffer().writeTo(os);
                 }
-            } catch (IOException e) {
-                throw new UncheckedIOException("An error occurred during serialisation", e);
+                written = true;
+            } catch (IOException | RuntimeException e) {
+                // Recorded before the pipe is closed, so the reader fails rather than seeing a truncated data file end cleanly
+                LOGGER.debug("An error occurred during serialisation", e);
+                is.fail(e);
             } finally {
+                // An encoder abandoned part way through a record is left for the garbage collector rather than reused
+                if (written && nonNull(encoder)) {
+                    pool.release(encoder);
+                }
                 try {
                     os.flush();
                     os.close();
@@ -123,7 +807,49 @@ public class AvroSerialiser<O> implements Serialiser<O> {
                 }
             }
         };
-        EXECUTOR.execute(pipeWriter);
+        try {
+            executor.execute(pipeWriter);
+        } catch (RejectedExecutionException e) {
+            LOGGER.warn("Serialisation was rejected by executor {}", executor, e);
+            try {
+                os.close();
+                is.close();
+            } catch (IOException ex) {
+                e.addSuppressed(ex);
+            }
+            throw e;
+        }
         return is;
     }
+
+    /**
+     * The reading end of the pipe written by {@link #serialiseOnExecutor(Stream, EncoderPool)}. If the writer fails,
+     * its failure is thrown to the reader in place of the end of the stream, so that a partly written data file is
+     * never mistaken for a complete one.
+     */
+    private static final class WriterPipe extends PipedInputStream {
+        private volatile Throwable failure;
+
+        void fail(final Throwable cause) {
+            failure = cause;
+        }
+
+        @Override
+        public synchronized int read() throws IOException {
+            return checkFailure(super.read());
+        }
+
+        @Override
+        public synchronized int read(final byte[] b, final int off, final int len) throws IOException {
+            return checkFailure(super.read(b, off, len));
+        }
+
+        private int checkFailure(final int read) throws IOException {
+            Throwable cause = failure;
+            if (read < 0 && nonNull(cause)) {
+                throw new IOException("An error occurred during serialisation", cause);
+            }
+            return read;
+        }
+    }
 }
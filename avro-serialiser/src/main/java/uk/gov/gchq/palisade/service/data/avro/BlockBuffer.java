@@ -0,0 +1,34 @@
+/*
+ * Copyright 2018-2021 Crown Copyright
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package uk.gov.gchq.palisade.service.data.avro;
+
+import java.io.ByteArrayOutputStream;
+
+/**
+ * A {@link ByteArrayOutputStream} which allows reading back its contents without copying the array.
+ */
+class BlockBuffer extends ByteArrayOutputStream {
+
+    /**
+     * Get the internal array of this buffer, which is only valid up to {@link #size()} and until the next write.
+     *
+     * @return the internal array of this buffer
+     */
+    byte[] array() {
+        return buf;
+    }
+}
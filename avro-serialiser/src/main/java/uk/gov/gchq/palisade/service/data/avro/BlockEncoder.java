@@ -0,0 +1,140 @@
+/*
+ * Copyright 2018-2021 Crown Copyright
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package uk.gov.gchq.palisade.service.data.avro;
+
+import org.apache.avro.Schema;
+import org.apache.avro.file.DataFileConstants;
+import org.apache.avro.file.DataFileWriter;
+
+import java.io.IOException;
+import java.util.Arrays;
+
+/**
+ * A {@link DataFileWriter} which is kept open so that it can encode the blocks of many data files, rather than
+ * being created and thrown away for each one. The header is encoded once, when the writer is created, and is then
+ * copied for each data file.
+ * <p>
+ * Every data file must have its own sync marker, so the marker the writer was created with is never written out.
+ * Instead, the header of each data file and every block completed for it end with the marker given to
+ * {@link #setSync(byte[])}.
+ * <p>
+ * Completed blocks are written to a {@link BlockBuffer}, which is reused once its contents have been read.
+ * The writer's own buffers, encoders and compression codec are reused for every block.
+ *
+ * @param <O> the domain object type
+ */
+final class BlockEncoder<O> {
+    private final BlockBuffer buffer = new BlockBuffer();
+    private final DataFileWriter<O> writer;
+    private final byte[] header;
+    private byte[] sync;
+    private int stamped;
+    private boolean pending;
+
+    /**
+     * Create a new {@link BlockEncoder}, encoding the header of its data files.
+     *
+     * @param writer the writer used to encode blocks, which must not yet have been created
+     * @param schema the schema of the domain objects
+     * @throws IOException if the header could not be encoded
+     */
+    BlockEncoder(final DataFileWriter<O> writer, final Schema schema) throws IOException {
+        // The header is written and flushed immediately on creation
+        this.writer = writer.create(schema, buffer);
+        this.header = Arrays.copyOf(buffer.array(), buffer.size());
+        buffer.reset();
+    }
+
+    /**
+     * Set the sync marker of the data file this encoder is now writing blocks for.
+     *
+     * @param sync the sync marker of the data file
+     */
+    void setSync(final byte[] sync) {
+        this.sync = sync;
+    }
+
+    /**
+     * Get the header of the data file this encoder is writing blocks for, ending with its sync marker.
+     *
+     * @return the encoded header
+     */
+    byte[] getHeader() {
+        byte[] fileHeader = header.clone();
+        System.arraycopy(sync, 0, fileHeader, fileHeader.length - DataFileConstants.SYNC_SIZE, DataFileConstants.SYNC_SIZE);
+        return fileHeader;
+    }
+
+    /**
+     * Get the buffer of blocks completed since it was last reset, each followed by the data file's sync marker.
+     *
+     * @return the buffer of completed blocks
+     */
+    BlockBuffer getBuffer() {
+        return buffer;
+    }
+
+    /**
+     * Append a record to the current block, completing the block first if it has reached the writer's sync interval.
+     *
+     * @param record the record to append
+     * @throws IOException if the record could not be encoded
+     */
+    void append(final O record) throws IOException {
+        pending = true;
+        writer.append(record);
+        stampSync();
+    }
+
+    /**
+     * Complete the current block, if it has any records, writing it to the buffer.
+     *
+     * @throws IOException if the block could not be written
+     */
+    void endBlock() throws IOException {
+        writer.sync();
+        pending = false;
+        stampSync();
+    }
+
+    /**
+     * Discard the completed blocks in the buffer, once they have been read.
+     */
+    void reset() {
+        buffer.reset();
+        stamped = 0;
+    }
+
+    /**
+     * Check whether this encoder may have records which have been appended but not yet written to a completed block,
+     * in which case it cannot be used for another data file.
+     *
+     * @return true if the current block may have records in it
+     */
+    boolean hasPendingRecords() {
+        return pending;
+    }
+
+    private void stampSync() {
+        // The writer only ever flushes whole blocks to the buffer, so the marker ending each new one can be replaced
+        byte[] bytes = buffer.array();
+        while (stamped < buffer.size()) {
+            stamped += (int) AvroContainer.blockLength(bytes, stamped, buffer.size() - stamped);
+            System.arraycopy(sync, 0, bytes, stamped - DataFileConstants.SYNC_SIZE, DataFileConstants.SYNC_SIZE);
+        }
+    }
+}
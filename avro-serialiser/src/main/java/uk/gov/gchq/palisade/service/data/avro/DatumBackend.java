@@ -0,0 +1,86 @@
+/*
+ * Copyright 2018-2021 Crown Copyright
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package uk.gov.gchq.palisade.service.data.avro;
+
+import org.apache.avro.Schema;
+import org.apache.avro.io.DatumReader;
+import org.apache.avro.io.DatumWriter;
+import org.apache.avro.reflect.ReflectDatumReader;
+import org.apache.avro.reflect.ReflectDatumWriter;
+
+/**
+ * The implementation used by an {@link AvroSerialiser} to read and write the fields of its domain objects.
+ */
+public enum DatumBackend {
+    /**
+     * Use Avro's {@link ReflectDatumReader} and {@link ReflectDatumWriter}, which support any class Avro can
+     * derive a schema for.
+     */
+    REFLECT {
+        @Override
+        <O> DatumReader<O> createReader(final Class<O> type, final Schema schema) {
+            return new ReflectDatumReader<>(schema);
+        }
+
+        @Override
+        <O> DatumWriter<O> createWriter(final Class<O> type, final Schema schema) {
+            return new ReflectDatumWriter<>(schema);
+        }
+    },
+
+    /**
+     * Use a reader and writer generated for the domain class on first use, which access each field through a
+     * typed {@link java.lang.invoke.MethodHandle} without boxing primitives.
+     * Classes with fields that cannot be generated for, such as collections or nested records, fall back to
+     * {@link #REFLECT}, as do files written with a different schema.
+     */
+    GENERATED {
+        @Override
+        <O> DatumReader<O> createReader(final Class<O> type, final Schema schema) {
+            return GeneratedRecordCodec.forClass(type, schema)
+                    .<DatumReader<O>>map(GeneratedDatumReader::new)
+                    .orElseGet(() -> REFLECT.createReader(type, schema));
+        }
+
+        @Override
+        <O> DatumWriter<O> createWriter(final Class<O> type, final Schema schema) {
+            return GeneratedRecordCodec.forClass(type, schema)
+                    .<DatumWriter<O>>map(GeneratedDatumWriter::new)
+                    .orElseGet(() -> REFLECT.createWriter(type, schema));
+        }
+    };
+
+    /**
+     * Create a new reader for the domain class, which should not be shared between threads.
+     *
+     * @param type   the domain class
+     * @param schema the schema of the domain class
+     * @param <O>    the domain object type
+     * @return a new {@link DatumReader}
+     */
+    abstract <O> DatumReader<O> createReader(Class<O> type, Schema schema);
+
+    /**
+     * Create a new writer for the domain class, which should not be shared between threads.
+     *
+     * @param type   the domain class
+     * @param schema the schema of the domain class
+     * @param <O>    the domain object type
+     * @return a new {@link DatumWriter}
+     */
+    abstract <O> DatumWriter<O> createWriter(Class<O> type, Schema schema);
+}
@@ -0,0 +1,309 @@
+/*
+ * Copyright 2018-2021 Crown Copyright
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package uk.gov.gchq.palisade.service.data.avro;
+
+import org.apache.avro.Schema;
+import org.apache.avro.SchemaNormalization;
+import org.apache.avro.file.CodecFactory;
+import org.apache.avro.file.DataFileWriter;
+import org.apache.avro.io.DatumReader;
+import org.apache.avro.io.DatumWriter;
+import org.apache.avro.io.Decoder;
+import org.apache.avro.io.Encoder;
+import org.apache.avro.reflect.ReflectData;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.EnumMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.function.Supplier;
+
+/**
+ * A process-wide cache of the schema and the datum readers and writers for each domain class, so that each call to
+ * {@link AvroSerialiser#serialise} or {@link AvroSerialiser#deserialise} does not repeat the setup of reflecting
+ * over the class and resolving the writer's schema against it.
+ * <p>
+ * Avro's datum readers keep caches which are updated without locking as records are read, so readers are never shared:
+ * each caller is given a lightweight wrapper which creates its own reader when the writer's schema is set. Only the
+ * immutable parts of reading are shared. Each writer's schema, found by its parsing fingerprint, is replaced by a
+ * single cached instance, so the resolving decoders which Avro keeps for each thread and pair of schemas are reused
+ * by every file written with that schema, rather than being built again from the schema parsed from each header.
+ * Writers are shared between threads once their schema is set, since writing changes no state of the writer.
+ * <p>
+ * Pools of {@link BlockEncoder}s are also kept for each combination of backend, codec and sync interval, so that
+ * the buffers used to encode and compress each data file are reused by the next.
+ *
+ * @param <O> the domain object type
+ */
+final class DatumCache<O> {
+    // Bounds the number of writer schemas cached for each class, files with any other schema are resolved afresh
+    private static final int MAX_WRITER_SCHEMAS = 64;
+    // Bounds the number of projections cached for each class, any others are pruned each time they are used
+    private static final int MAX_PROJECTIONS = 64;
+    // Bounds the number of encoder pools for each class, any other configurations get a new pool each time
+    private static final int MAX_ENCODER_POOLS = 16;
+    private static final int ENCODER_POOL_CAPACITY = Runtime.getRuntime().availableProcessors();
+
+    private static final ClassValue<DatumCache<?>> CACHES = new ClassValue<>() {
+        @Override
+        protected DatumCache<?> computeValue(final Class<?> type) {
+            return new DatumCache<>(type);
+        }
+    };
+
+    private final Class<O> type;
+    private final Schema schema;
+    private final Map<DatumBackend, DatumWriter<O>> writers = new EnumMap<>(DatumBackend.class);
+    private final Map<Long, Schema> writerSchemas = new ConcurrentHashMap<>();
+    private final Map<Set<String>, Schema> projections = new ConcurrentHashMap<>();
+    private final Map<EncoderKey, EncoderPool<O>> encoderPools = new ConcurrentHashMap<>();
+
+    private DatumCache(final Class<O> type) {
+        this.type = type;
+        this.schema = ReflectData.AllowNull.get().getSchema(type);
+    }
+
+    /**
+     * Get the cache for a domain class, creating it if this is the first use of the class.
+     *
+     * @param type the domain class
+     * @param <O>  the domain object type
+     * @return the cache for the domain class
+     */
+    @SuppressWarnings("unchecked")
+    static <O> DatumCache<O> forClass(final Class<O> type) {
+        return (DatumCache<O>) CACHES.get(type);
+    }
+
+    Schema getSchema() {
+        return schema;
+    }
+
+    /**
+     * Get a reader schema for the domain class containing only the given fields, so that any other fields are
+     * skipped over when decoding. Fields of the domain object which are not in the projection are left unset.
+     *
+     * @param fields the names of the top-level fields to read, or an empty set to read every field
+     * @return the pruned schema, which is the domain class's own schema if every field is read
+     * @throws IllegalArgumentException if any of the fields are not in the domain class's schema
+     */
+    Schema project(final Set<String> fields) {
+        if (fields.isEmpty()) {
+            return schema;
+        }
+        Schema projection = projections.get(fields);
+        if (projection == null) {
+            projection = prune(fields);
+            if (projections.size() < MAX_PROJECTIONS) {
+                projections.putIfAbsent(Set.copyOf(fields), projection);
+                projection = projections.get(fields);
+            }
+        }
+        return projection;
+    }
+
+    /**
+     * Create a reader for the domain class, which resolves the writer's schema using the cached instance of it.
+     *
+     * @param backend      the backend used to create the reader once the writer's schema is set
+     * @param readerSchema the schema to read records as, either the domain class's schema or a projection of it
+     * @return a new {@link DatumReader}, which should not be shared between threads
+     */
+    DatumReader<O> createReader(final DatumBackend backend, final Schema readerSchema) {
+        return new CachingDatumReader(backend, readerSchema);
+    }
+
+    /**
+     * Create a writer for the domain class, which uses a shared writer when writing with the domain class's schema.
+     *
+     * @param backend the backend used to create the writer if it is not already cached
+     * @return a new {@link DatumWriter}, which should not be shared between threads
+     */
+    DatumWriter<O> createWriter(final DatumBackend backend) {
+        return new CachingDatumWriter(backend);
+    }
+
+    /**
+     * Get the shared pool of encoders for the domain class with the given configuration.
+     *
+     * @param backend      the backend used to create the encoders' writers
+     * @param codec        the name of the compression codec, as accepted by {@link AvroCodecs#fromName(String)}
+     * @param syncInterval the approximate size of each block before compression
+     * @return the pool of encoders, which may be shared with other serialisers
+     * @throws IllegalArgumentException if the codec is not supported
+     */
+    EncoderPool<O> encoderPool(final DatumBackend backend, final String codec, final int syncInterval) {
+        EncoderKey key = new EncoderKey(backend, codec, syncInterval);
+        EncoderPool<O> pool = encoderPools.get(key);
+        if (pool == null) {
+            CodecFactory codecFactory = AvroCodecs.fromName(codec);
+            Supplier<DataFileWriter<O>> writers = () -> new DataFileWriter<>(createWriter(backend))
+                    .setCodec(codecFactory)
+                    .setSyncInterval(syncInterval);
+            if (encoderPools.size() >= MAX_ENCODER_POOLS) {
+                return new EncoderPool<>(schema, writers, ENCODER_POOL_CAPACITY);
+            }
+            pool = encoderPools.computeIfAbsent(key, (EncoderKey k) -> new EncoderPool<>(schema, writers, ENCODER_POOL_CAPACITY));
+        }
+        return pool;
+    }
+
+    private DatumWriter<O> sharedWriter(final DatumBackend backend) {
+        synchronized (writers) {
+            return writers.computeIfAbsent(backend, (DatumBackend key) -> {
+                DatumWriter<O> writer = key.createWriter(type, schema);
+                writer.setSchema(schema);
+                return writer;
+            });
+        }
+    }
+
+    private Schema sharedWriterSchema(final Schema writerSchema) {
+        long fingerprint = SchemaNormalization.parsingFingerprint64(writerSchema);
+        Schema cached = writerSchemas.get(fingerprint);
+        if (cached == null && writerSchemas.size() < MAX_WRITER_SCHEMAS) {
+            cached = writerSchemas.computeIfAbsent(fingerprint, (Long k) -> writerSchema);
+        }
+        // The fingerprint ignores properties such as java-class, which still affect how records are read
+        if (cached != null && cached.equals(writerSchema)) {
+            return cached;
+        }
+        return writerSchema;
+    }
+
+    private DatumReader<O> newReader(final DatumBackend backend, final Schema readerSchema, final Schema writerSchema) {
+        DatumReader<O> reader = backend.createReader(type, readerSchema);
+        reader.setSchema(writerSchema);
+        return reader;
+    }
+
+    private Schema prune(final Set<String> fields) {
+        List<Schema.Field> pruned = new ArrayList<>(fields.size());
+        for (Schema.Field field : schema.getFields()) {
+            if (fields.contains(field.name())) {
+                Schema.Field copy = new Schema.Field(field.name(), field.schema(), field.doc(), field.defaultVal(), field.order());
+                field.getObjectProps().forEach(copy::addProp);
+                field.aliases().forEach(copy::addAlias);
+                pruned.add(copy);
+            }
+        }
+        if (pruned.size() != fields.size()) {
+            Set<String> unknown = new HashSet<>(fields);
+            schema.getFields().forEach(field -> unknown.remove(field.name()));
+            throw new IllegalArgumentException("Fields " + unknown + " are not in the schema of " + type.getName());
+        }
+        // The projection keeps the same full name, so records are still read into the domain class
+        Schema projection = Schema.createRecord(schema.getName(), schema.getDoc(), schema.getNamespace(), schema.isError(), pruned);
+        schema.getObjectProps().forEach(projection::addProp);
+        return projection;
+    }
+
+    private static final class EncoderKey {
+        private final DatumBackend backend;
+        private final String codec;
+        private final int syncInterval;
+
+        EncoderKey(final DatumBackend backend, final String codec, final int syncInterval) {
+            this.backend = backend;
+            this.codec = codec;
+            this.syncInterval = syncInterval;
+        }
+
+        @Override
+        public boolean equals(final Object o) {
+            if (this == o) {
+                return true;
+            }
+            if (!(o instanceof EncoderKey)) {
+                return false;
+            }
+            final EncoderKey other = (EncoderKey) o;
+            return syncInterval == other.syncInterval && backend == other.backend && codec.equals(other.codec);
+        }
+
+        @Override
+        public int hashCode() {
+            return Objects.hash(backend, codec, syncInterval);
+        }
+    }
+
+    final class CachingDatumReader implements DatumReader<O> {
+        private final DatumBackend backend;
+        private final Schema readerSchema;
+        private Schema writerSchema;
+        private DatumReader<O> delegate;
+
+        CachingDatumReader(final DatumBackend backend, final Schema readerSchema) {
+            this.backend = backend;
+            this.readerSchema = readerSchema;
+        }
+
+        DatumReader<O> getDelegate() {
+            return delegate;
+        }
+
+        Schema getWriterSchema() {
+            return writerSchema;
+        }
+
+        @Override
+        public void setSchema(final Schema writerSchema) {
+            this.writerSchema = sharedWriterSchema(writerSchema);
+            delegate = newReader(backend, readerSchema, this.writerSchema);
+        }
+
+        @Override
+        public O read(final O reuse, final Decoder in) throws IOException {
+            if (delegate == null) {
+                setSchema(readerSchema);
+            }
+            return delegate.read(reuse, in);
+        }
+    }
+
+    private final class CachingDatumWriter implements DatumWriter<O> {
+        private final DatumBackend backend;
+        private DatumWriter<O> delegate;
+
+        CachingDatumWriter(final DatumBackend backend) {
+            this.backend = backend;
+        }
+
+        @Override
+        public void setSchema(final Schema writerSchema) {
+            if (writerSchema.equals(schema)) {
+                delegate = sharedWriter(backend);
+            } else {
+                delegate = backend.createWriter(type, schema);
+                delegate.setSchema(writerSchema);
+            }
+        }
+
+        @Override
+        public void write(final O datum, final Encoder out) throws IOException {
+            if (delegate == null) {
+                setSchema(schema);
+            }
+            delegate.write(datum, out);
+        }
+    }
+}
@@ -0,0 +1,122 @@
+/*
+ * Copyright 2018-2021 Crown Copyright
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package uk.gov.gchq.palisade.service.data.avro;
+
+import org.apache.avro.Schema;
+import org.apache.avro.file.DataFileConstants;
+import org.apache.avro.file.DataFileWriter;
+
+import java.io.IOException;
+import java.security.SecureRandom;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.function.Supplier;
+
+import static java.util.Objects.requireNonNull;
+
+/**
+ * A bounded pool of {@link BlockEncoder}s, so that an encoder's buffers and compressor can be used for one data file
+ * after another without being allocated again for each.
+ * <p>
+ * Only the encoders are shared, never a sync marker. Each data file is given its own random marker by
+ * {@link #newSync()}, which every encoder borrowed for it writes after each block, so blocks encoded by any of the
+ * pool's encoders can be written to the same data file. A fresh marker for every file keeps to the Avro container
+ * format, and means the marker of one file cannot be used to forge block boundaries in the records of another.
+ * <p>
+ * Encoders are created on demand if the pool is empty, and any returned once the pool is full are left for the
+ * garbage collector, as are encoders whose buffers have grown unusually large.
+ *
+ * @param <O> the domain object type
+ */
+final class EncoderPool<O> {
+    // Encoders whose buffers have grown beyond this, such as after encoding a very large batch, are not kept
+    private static final int MAX_RETAINED_BUFFER = 8 << 20;
+    private static final SecureRandom SYNC_RANDOM = new SecureRandom();
+
+    private final Schema schema;
+    private final Supplier<DataFileWriter<O>> writers;
+    private final BlockingQueue<BlockEncoder<O>> idle;
+
+    /**
+     * Create a new, empty, {@link EncoderPool}.
+     *
+     * @param schema   the schema of the domain objects
+     * @param writers  a supplier of a new, not yet created, writer for each encoder
+     * @param capacity the maximum number of idle encoders to keep
+     */
+    EncoderPool(final Schema schema, final Supplier<DataFileWriter<O>> writers, final int capacity) {
+        this.schema = requireNonNull(schema, "schema is required");
+        this.writers = requireNonNull(writers, "writers is required");
+        this.idle = new ArrayBlockingQueue<>(capacity);
+    }
+
+    /**
+     * Create a random sync marker for a new data file.
+     *
+     * @return the sync marker
+     */
+    static byte[] newSync() {
+        byte[] sync = new byte[DataFileConstants.SYNC_SIZE];
+        SYNC_RANDOM.nextBytes(sync);
+        return sync;
+    }
+
+    /**
+     * Get the header written at the start of a data file encoded by this pool.
+     *
+     * @param sync the sync marker of the data file
+     * @return the encoded header
+     * @throws IOException if an encoder had to be created and its header could not be encoded
+     */
+    byte[] getHeader(final byte[] sync) throws IOException {
+        BlockEncoder<O> encoder = borrow(sync);
+        try {
+            return encoder.getHeader();
+        } finally {
+            release(encoder);
+        }
+    }
+
+    /**
+     * Take an idle encoder from the pool, or create a new one if there are none, to write blocks for a data file.
+     *
+     * @param sync the sync marker of the data file
+     * @return an encoder which is not in use by anything else
+     * @throws IOException if an encoder had to be created and its header could not be encoded
+     */
+    BlockEncoder<O> borrow(final byte[] sync) throws IOException {
+        BlockEncoder<O> encoder = idle.poll();
+        if (encoder == null) {
+            encoder = new BlockEncoder<>(writers.get(), schema);
+        }
+        encoder.setSync(sync);
+        return encoder;
+    }
+
+    /**
+     * Return an encoder to the pool once its blocks have been read. An encoder which still has records in its
+     * current block, such as one abandoned part way through a data file, is not reused.
+     *
+     * @param encoder the encoder, which must not be used again by the caller
+     */
+    void release(final BlockEncoder<O> encoder) {
+        encoder.reset();
+        if (!encoder.hasPendingRecords() && encoder.getBuffer().array().length <= MAX_RETAINED_BUFFER) {
+            idle.offer(encoder);
+        }
+    }
+}
@@ -0,0 +1,134 @@
+/*
+ * Copyright 2018-2021 Crown Copyright
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package uk.gov.gchq.palisade.service.data.avro;
+
+import org.apache.avro.file.DataFileStream;
+import org.apache.avro.io.BinaryDecoder;
+import org.apache.avro.io.DatumReader;
+import org.apache.avro.io.DecoderFactory;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.ByteBuffer;
+import java.util.Spliterator;
+import java.util.Spliterators;
+import java.util.function.Consumer;
+import java.util.function.Predicate;
+import java.util.stream.Stream;
+import java.util.stream.StreamSupport;
+
+/**
+ * Decodes the records of an Avro data file in two phases, so that records rejected by a filter are never fully
+ * decoded. Each decompressed block is held in memory while every record in it is first decoded with a reader for
+ * only the filter's fields, into the same domain object each time, skipping over the other fields. Only the records
+ * accepted by the filter are then decoded again, from their start in the block, with the full reader.
+ *
+ * @param <O> the domain object type
+ */
+class FilteringBlockDecoder<O> extends Spliterators.AbstractSpliterator<O> implements Closeable {
+    private static final Logger LOGGER = LoggerFactory.getLogger(FilteringBlockDecoder.class);
+
+    private final DataFileStream<O> in;
+    private final DatumReader<O> filterReader;
+    private final DatumReader<O> fullReader;
+    private final Predicate<? super O> filter;
+    private BinaryDecoder filterDecoder;
+    private BinaryDecoder fullDecoder;
+    private byte[] block;
+    private int blockOffset;
+    private int blockLength;
+    private long blockRemaining;
+    private O filterRecord;
+    private long rejected;
+    private long accepted;
+
+    /**
+     * Create a new {@link FilteringBlockDecoder} reading blocks from the given data file.
+     *
+     * @param in           the data file, with no records yet read
+     * @param filterReader a reader for only the fields used by the filter, whose writer's schema has been set
+     * @param fullReader   the reader used by the data file, for all the fields to be returned
+     * @param filter       the filter, which is only given the filter's fields and must not keep the object it is given
+     */
+    FilteringBlockDecoder(final DataFileStream<O> in, final DatumReader<O> filterReader, final DatumReader<O> fullReader, final Predicate<? super O> filter) {
+        super(Long.MAX_VALUE, Spliterator.ORDERED | Spliterator.NONNULL);
+        this.in = in;
+        this.filterReader = filterReader;
+        this.fullReader = fullReader;
+        this.filter = filter;
+    }
+
+    /**
+     * Create a stream of the records accepted by the filter, which closes the data file when it is closed.
+     *
+     * @return a sequential stream of the accepted records
+     */
+    Stream<O> stream() {
+        return StreamSupport.stream(this, false)
+                .onClose(() -> {
+                    try {
+                        close();
+                    } catch (IOException e) {
+                        throw new UncheckedIOException("Failed to close the input stream", e);
+                    }
+                });
+    }
+
+    @Override
+    public boolean tryAdvance(final Consumer<? super O> action) {
+        try {
+            while (blockRemaining > 0 || nextBlock()) {
+                // The decoder reads directly from the block, so its remaining bytes give the start of the next record
+                int recordStart = blockLength - filterDecoder.inputStream().available();
+                blockRemaining--;
+                filterRecord = filterReader.read(filterRecord, filterDecoder);
+                if (filter.test(filterRecord)) {
+                    accepted++;
+                    fullDecoder = DecoderFactory.get().binaryDecoder(block, blockOffset + recordStart, blockLength - recordStart, fullDecoder);
+                    action.accept(fullReader.read(null, fullDecoder));
+                    return true;
+                }
+                rejected++;
+            }
+        } catch (IOException e) {
+            throw new UncheckedIOException("An error occurred during deserialisation", e);
+        }
+        LOGGER.debug("Decoded {} records accepted by the filter, skipped {} rejected records", accepted, rejected);
+        return false;
+    }
+
+    @Override
+    public void close() throws IOException {
+        in.close();
+    }
+
+    private boolean nextBlock() throws IOException {
+        if (!in.hasNext()) {
+            return false;
+        }
+        blockRemaining = in.getBlockCount();
+        ByteBuffer decompressed = in.nextBlock();
+        block = decompressed.array();
+        blockOffset = decompressed.arrayOffset() + decompressed.position();
+        blockLength = decompressed.remaining();
+        filterDecoder = DecoderFactory.get().binaryDecoder(block, blockOffset, blockLength, filterDecoder);
+        return true;
+    }
+}
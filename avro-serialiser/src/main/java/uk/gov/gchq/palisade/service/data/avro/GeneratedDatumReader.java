@@ -0,0 +1,54 @@
+/*
+ * Copyright 2018-2021 Crown Copyright
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package uk.gov.gchq.palisade.service.data.avro;
+
+import org.apache.avro.Schema;
+import org.apache.avro.io.DatumReader;
+import org.apache.avro.io.Decoder;
+import org.apache.avro.reflect.ReflectDatumReader;
+
+import java.io.IOException;
+
+/**
+ * A {@link DatumReader} using a {@link GeneratedRecordCodec}. Data written with any schema other than the codec's
+ * own is resolved by a {@link ReflectDatumReader} instead.
+ *
+ * @param <O> the domain object type
+ */
+class GeneratedDatumReader<O> implements DatumReader<O> {
+    private final GeneratedRecordCodec<O> codec;
+    private DatumReader<O> resolvingReader;
+
+    GeneratedDatumReader(final GeneratedRecordCodec<O> codec) {
+        this.codec = codec;
+    }
+
+    @Override
+    public void setSchema(final Schema writerSchema) {
+        resolvingReader = writerSchema.equals(codec.getSchema())
+                ? null
+                : new ReflectDatumReader<>(writerSchema, codec.getSchema());
+    }
+
+    @Override
+    public O read(final O reuse, final Decoder in) throws IOException {
+        if (resolvingReader != null) {
+            return resolvingReader.read(reuse, in);
+        }
+        return codec.read(reuse, in);
+    }
+}
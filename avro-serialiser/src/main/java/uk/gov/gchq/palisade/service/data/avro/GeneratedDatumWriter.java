@@ -0,0 +1,55 @@
+/*
+ * Copyright 2018-2021 Crown Copyright
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package uk.gov.gchq.palisade.service.data.avro;
+
+import org.apache.avro.Schema;
+import org.apache.avro.io.DatumWriter;
+import org.apache.avro.io.Encoder;
+import org.apache.avro.reflect.ReflectDatumWriter;
+
+import java.io.IOException;
+
+/**
+ * A {@link DatumWriter} using a {@link GeneratedRecordCodec}. Writing with any schema other than the codec's own is
+ * done by a {@link ReflectDatumWriter} instead.
+ *
+ * @param <O> the domain object type
+ */
+class GeneratedDatumWriter<O> implements DatumWriter<O> {
+    private final GeneratedRecordCodec<O> codec;
+    private DatumWriter<O> otherWriter;
+
+    GeneratedDatumWriter(final GeneratedRecordCodec<O> codec) {
+        this.codec = codec;
+    }
+
+    @Override
+    public void setSchema(final Schema schema) {
+        otherWriter = schema.equals(codec.getSchema())
+                ? null
+                : new ReflectDatumWriter<>(schema);
+    }
+
+    @Override
+    public void write(final O datum, final Encoder out) throws IOException {
+        if (otherWriter != null) {
+            otherWriter.write(datum, out);
+        } else {
+            codec.write(datum, out);
+        }
+    }
+}
@@ -0,0 +1,440 @@
+/*
+ * Copyright 2018-2021 Crown Copyright
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package uk.gov.gchq.palisade.service.data.avro;
+
+import org.apache.avro.AvroRuntimeException;
+import org.apache.avro.Schema;
+import org.apache.avro.Schema.Type;
+import org.apache.avro.io.Decoder;
+import org.apache.avro.io.Encoder;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.IOException;
+import java.lang.annotation.Annotation;
+import java.lang.invoke.MethodHandle;
+import java.lang.invoke.MethodHandles;
+import java.lang.invoke.MethodType;
+import java.lang.reflect.Constructor;
+import java.lang.reflect.Field;
+import java.lang.reflect.Modifier;
+import java.util.List;
+import java.util.Optional;
+
+/**
+ * Reads and writes the fields of a domain class through {@link MethodHandle}s generated once per class, rather than
+ * the per-field reflection used by Avro's reflect readers and writers. Each primitive field has its own accessors
+ * typed to that primitive, so they are read and written without boxing.
+ * <p>
+ * Only classes whose fields are all primitives, boxed primitives or {@link String}s, without any Avro annotations,
+ * are supported. The encoding is identical to that of the reflect writer for the same schema.
+ *
+ * @param <O> the domain object type
+ */
+final class GeneratedRecordCodec<O> {
+    private static final Logger LOGGER = LoggerFactory.getLogger(GeneratedRecordCodec.class);
+    private static final MethodHandles.Lookup LOOKUP = MethodHandles.lookup();
+    private static final String AVRO_ANNOTATIONS = "org.apache.avro";
+
+    // Codecs are generated on first use of each class, then kept for as long as the class is loaded
+    private static final ClassValue<Optional<GeneratedRecordCodec<?>>> CODECS = new ClassValue<>() {
+        @Override
+        protected Optional<GeneratedRecordCodec<?>> computeValue(final Class<?> type) {
+            return generate(type, DatumCache.forClass(type).getSchema());
+        }
+    };
+
+    private final Class<O> type;
+    private final Schema schema;
+    private final MethodHandle constructor;
+    private final FieldCodec[] fields;
+
+    private GeneratedRecordCodec(final Class<O> type, final Schema schema, final MethodHandle constructor, final FieldCodec[] fields) {
+        this.type = type;
+        this.schema = schema;
+        this.constructor = constructor;
+        this.fields = fields;
+    }
+
+    /**
+     * Get the codec for a domain class, generating it if this is the first use of the class.
+     *
+     * @param type   the domain class
+     * @param schema the schema of the domain class
+     * @param <O>    the domain object type
+     * @return the codec, or empty if one could not be generated for this class and schema
+     */
+    @SuppressWarnings("unchecked")
+    static <O> Optional<GeneratedRecordCodec<O>> forClass(final Class<O> type, final Schema schema) {
+        return CODECS.get(type)
+                .filter(codec -> codec.schema.equals(schema))
+                .map(codec -> (GeneratedRecordCodec<O>) codec);
+    }
+
+    Schema getSchema() {
+        return schema;
+    }
+
+    void write(final O record, final Encoder out) throws IOException {
+        try {
+            for (FieldCodec field : fields) {
+                field.write(record, out);
+            }
+        } catch (IOException | RuntimeException | Error e) {
+            throw e;
+        } catch (Throwable e) {
+            throw new AvroRuntimeException("Failed to write " + type.getName(), e);
+        }
+    }
+
+    O read(final O reuse, final Decoder in) throws IOException {
+        try {
+            Object record = type.isInstance(reuse) ? reuse : (Object) constructor.invokeExact();
+            for (FieldCodec field : fields) {
+                field.read(record, in);
+            }
+            return type.cast(record);
+        } catch (IOException | RuntimeException | Error e) {
+            throw e;
+        } catch (Throwable e) {
+            throw new AvroRuntimeException("Failed to read " + type.getName(), e);
+        }
+    }
+
+    private static <O> Optional<GeneratedRecordCodec<?>> generate(final Class<O> type, final Schema schema) {
+        if (schema.getType() != Type.RECORD) {
+            return Optional.empty();
+        }
+        try {
+            Constructor<O> noArgs = type.getDeclaredConstructor();
+            noArgs.setAccessible(true);
+            MethodHandle constructor = LOOKUP.unreflectConstructor(noArgs).asType(MethodType.methodType(Object.class));
+            List<Schema.Field> schemaFields = schema.getFields();
+            FieldCodec[] fields = new FieldCodec[schemaFields.size()];
+            for (int i = 0; i < fields.length; i++) {
+                Schema.Field schemaField = schemaFields.get(i);
+                Optional<Field> javaField = findField(type, schemaField.name());
+                Optional<FieldCodec> field = javaField.isPresent() ? fieldCodec(javaField.get(), schemaField.schema()) : Optional.empty();
+                if (field.isEmpty()) {
+                    LOGGER.debug("Cannot generate a codec for field {} of {}, falling back to reflection", schemaField.name(), type);
+                    return Optional.empty();
+                }
+                fields[i] = field.get();
+            }
+            LOGGER.debug("Generated a codec for {}", type);
+            return Optional.of(new GeneratedRecordCodec<>(type, schema, constructor, fields));
+        } catch (ReflectiveOperationException | RuntimeException e) {
+            LOGGER.debug("Cannot generate a codec for {}, falling back to reflection", type, e);
+            return Optional.empty();
+        }
+    }
+
+    private static Optional<Field> findField(final Class<?> type, final String name) {
+        for (Class<?> c = type; c != null; c = c.getSuperclass()) {
+            for (Field field : c.getDeclaredFields()) {
+                if (field.getName().equals(name) && (field.getModifiers() & (Modifier.STATIC | Modifier.TRANSIENT)) == 0) {
+                    return Optional.of(field);
+                }
+            }
+        }
+        return Optional.empty();
+    }
+
+    private static Optional<FieldCodec> fieldCodec(final Field field, final Schema schema) throws IllegalAccessException {
+        for (Annotation annotation : field.getAnnotations()) {
+            if (annotation.annotationType().getName().startsWith(AVRO_ANNOTATIONS)) {
+                return Optional.empty();
+            }
+        }
+        field.setAccessible(true);
+        MethodHandle getter = LOOKUP.unreflectGetter(field);
+        MethodHandle setter = LOOKUP.unreflectSetter(field);
+        Class<?> fieldType = field.getType();
+
+        if (fieldType.isPrimitive()) {
+            return primitiveCodec(fieldType, schema.getType(), getter, setter);
+        }
+        Schema valueSchema = schema;
+        int nullIndex = -1;
+        if (schema.getType() == Type.UNION) {
+            List<Schema> branches = schema.getTypes();
+            if (branches.size() != 2 || (branches.get(0).getType() != Type.NULL && branches.get(1).getType() != Type.NULL)) {
+                return Optional.empty();
+            }
+            nullIndex = branches.get(0).getType() == Type.NULL ? 0 : 1;
+            valueSchema = branches.get(1 - nullIndex);
+        }
+        Optional<ValueCodec> value = ValueCodec.forType(fieldType, valueSchema);
+        if (value.isEmpty()) {
+            return Optional.empty();
+        }
+        return Optional.of(new ObjectField(
+                getter.asType(MethodType.methodType(Object.class, Object.class)),
+                setter.asType(MethodType.methodType(void.class, Object.class, Object.class)),
+                nullIndex, value.get()));
+    }
+
+    private static Optional<FieldCodec> primitiveCodec(final Class<?> fieldType, final Type schemaType, final MethodHandle getter, final MethodHandle setter) {
+        MethodHandle typedGetter = getter.asType(MethodType.methodType(fieldType, Object.class));
+        MethodHandle typedSetter = setter.asType(MethodType.methodType(void.class, Object.class, fieldType));
+        if (fieldType == int.class && schemaType == Type.INT) {
+            return Optional.of(new IntField(typedGetter, typedSetter));
+        }
+        if (fieldType == long.class && schemaType == Type.LONG) {
+            return Optional.of(new LongField(typedGetter, typedSetter));
+        }
+        if (fieldType == float.class && schemaType == Type.FLOAT) {
+            return Optional.of(new FloatField(typedGetter, typedSetter));
+        }
+        if (fieldType == double.class && schemaType == Type.DOUBLE) {
+            return Optional.of(new DoubleField(typedGetter, typedSetter));
+        }
+        if (fieldType == boolean.class && schemaType == Type.BOOLEAN) {
+            return Optional.of(new BooleanField(typedGetter, typedSetter));
+        }
+        return Optional.empty();
+    }
+
+    /**
+     * Reads and writes a single field of a record, where {@code getter} and {@code setter} are typed to the field.
+     */
+    private abstract static class FieldCodec {
+        protected final MethodHandle getter;
+        protected final MethodHandle setter;
+
+        FieldCodec(final MethodHandle getter, final MethodHandle setter) {
+            this.getter = getter;
+            this.setter = setter;
+        }
+
+        abstract void write(Object record, Encoder out) throws Throwable;
+
+        abstract void read(Object record, Decoder in) throws Throwable;
+    }
+
+    private static class IntField extends FieldCodec {
+        IntField(final MethodHandle getter, final MethodHandle setter) {
+            super(getter, setter);
+        }
+
+        @Override
+        void write(final Object record, final Encoder out) throws Throwable {
+            out.writeInt((int) getter.invokeExact(record));
+        }
+
+        @Override
+        void read(final Object record, final Decoder in) throws Throwable {
+            setter.invokeExact(record, in.readInt());
+        }
+    }
+
+    private static class LongField extends FieldCodec {
+        LongField(final MethodHandle getter, final MethodHandle setter) {
+            super(getter, setter);
+        }
+
+        @Override
+        void write(final Object record, final Encoder out) throws Throwable {
+            out.writeLong((long) getter.invokeExact(record));
+        }
+
+        @Override
+        void read(final Object record, final Decoder in) throws Throwable {
+            setter.invokeExact(record, in.readLong());
+        }
+    }
+
+    private static class FloatField extends FieldCodec {
+        FloatField(final MethodHandle getter, final MethodHandle setter) {
+            super(getter, setter);
+        }
+
+        @Override
+        void write(final Object record, final Encoder out) throws Throwable {
+            out.writeFloat((float) getter.invokeExact(record));
+        }
+
+        @Override
+        void read(final Object record, final Decoder in) throws Throwable {
+            setter.invokeExact(record, in.readFloat());
+        }
+    }
+
+    private static class DoubleField extends FieldCodec {
+        DoubleField(final MethodHandle getter, final MethodHandle setter) {
+            super(getter, setter);
+        }
+
+        @Override
+        void write(final Object record, final Encoder out) throws Throwable {
+            out.writeDouble((double) getter.invokeExact(record));
+        }
+
+        @Override
+        void read(final Object record, final Decoder in) throws Throwable {
+            setter.invokeExact(record, in.readDouble());
+        }
+    }
+
+    private static class BooleanField extends FieldCodec {
+        BooleanField(final MethodHandle getter, final MethodHandle setter) {
+            super(getter, setter);
+        }
+
+        @Override
+        void write(final Object record, final Encoder out) throws Throwable {
+            out.writeBoolean((boolean) getter.invokeExact(record));
+        }
+
+        @Override
+        void read(final Object record, final Decoder in) throws Throwable {
+            setter.invokeExact(record, in.readBoolean());
+        }
+    }
+
+    /**
+     * A field holding an object, which may be written as a union with null.
+     */
+    private static class ObjectField extends FieldCodec {
+        private final int nullIndex;
+        private final ValueCodec value;
+
+        ObjectField(final MethodHandle getter, final MethodHandle setter, final int nullIndex, final ValueCodec value) {
+            super(getter, setter);
+            this.nullIndex = nullIndex;
+            this.value = value;
+        }
+
+        @Override
+        void write(final Object record, final Encoder out) throws Throwable {
+            Object fieldValue = (Object) getter.invokeExact(record);
+            if (nullIndex >= 0) {
+                if (fieldValue == null) {
+                    out.writeIndex(nullIndex);
+                    out.writeNull();
+                    return;
+                }
+                out.writeIndex(1 - nullIndex);
+            }
+            value.write(fieldValue, out);
+        }
+
+        @Override
+        void read(final Object record, final Decoder in) throws Throwable {
+            if (nullIndex >= 0 && in.readIndex() == nullIndex) {
+                in.readNull();
+                setter.invokeExact(record, (Object) null);
+            } else {
+                setter.invokeExact(record, value.read(in));
+            }
+        }
+    }
+
+    /**
+     * Reads and writes the value of an {@link ObjectField}.
+     */
+    private enum ValueCodec {
+        INT(Integer.class, Type.INT) {
+            @Override
+            void write(final Object value, final Encoder out) throws IOException {
+                out.writeInt((Integer) value);
+            }
+
+            @Override
+            Object read(final Decoder in) throws IOException {
+                return in.readInt();
+            }
+        },
+        LONG(Long.class, Type.LONG) {
+            @Override
+            void write(final Object value, final Encoder out) throws IOException {
+                out.writeLong((Long) value);
+            }
+
+            @Override
+            Object read(final Decoder in) throws IOException {
+                return in.readLong();
+            }
+        },
+        FLOAT(Float.class, Type.FLOAT) {
+            @Override
+            void write(final Object value, final Encoder out) throws IOException {
+                out.writeFloat((Float) value);
+            }
+
+            @Override
+            Object read(final Decoder in) throws IOException {
+                return in.readFloat();
+            }
+        },
+        DOUBLE(Double.class, Type.DOUBLE) {
+            @Override
+            void write(final Object value, final Encoder out) throws IOException {
+                out.writeDouble((Double) value);
+            }
+
+            @Override
+            Object read(final Decoder in) throws IOException {
+                return in.readDouble();
+            }
+        },
+        BOOLEAN(Boolean.class, Type.BOOLEAN) {
+            @Override
+            void write(final Object value, final Encoder out) throws IOException {
+                out.writeBoolean((Boolean) value);
+            }
+
+            @Override
+            Object read(final Decoder in) throws IOException {
+                return in.readBoolean();
+            }
+        },
+        STRING(String.class, Type.STRING) {
+            @Override
+            void write(final Object value, final Encoder out) throws IOException {
+                out.writeString((String) value);
+            }
+
+            @Override
+            Object read(final Decoder in) throws IOException {
+                return in.readString();
+            }
+        };
+
+        private final Class<?> javaType;
+        private final Type schemaType;
+
+        ValueCodec(final Class<?> javaType, final Type schemaType) {
+            this.javaType = javaType;
+            this.schemaType = schemaType;
+        }
+
+        static Optional<ValueCodec> forType(final Class<?> javaType, final Schema schema) {
+            for (ValueCodec codec : values()) {
+                // Any property, such as a java-class, changes how the reflect reader and writer treat the value
+                if (codec.javaType == javaType && codec.schemaType == schema.getType() && schema.getObjectProps().isEmpty()) {
+                    return Optional.of(codec);
+                }
+            }
+            return Optional.empty();
+        }
+
+        abstract void write(Object value, Encoder out) throws IOException;
+
+        abstract Object read(Decoder in) throws IOException;
+    }
+}
@@ -0,0 +1,114 @@
+/*
+ * Copyright 2018-2021 Crown Copyright
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package uk.gov.gchq.palisade.service.data.avro;
+
+import org.apache.avro.Schema;
+import org.apache.avro.io.BinaryDecoder;
+import org.apache.avro.io.DatumReader;
+import org.apache.avro.io.DecoderFactory;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.UncheckedIOException;
+import java.util.Spliterator;
+import java.util.Spliterators;
+import java.util.function.Consumer;
+import java.util.stream.Stream;
+import java.util.stream.StreamSupport;
+
+/**
+ * Decodes records in the {@link AvroEncoding#SINGLE_OBJECT} or {@link AvroEncoding#RAW} encoding, one after another
+ * until the end of the {@link InputStream}. Every record must have been written with the domain class's schema,
+ * which for single-object encoded records is checked against the fingerprint in each record's header.
+ *
+ * @param <O> the domain object type
+ */
+class MessageDecoder<O> extends Spliterators.AbstractSpliterator<O> implements Closeable {
+    private final InputStream input;
+    private final BinaryDecoder decoder;
+    private final DatumReader<O> reader;
+    private final byte[] expectedHeader;
+    private final byte[] header = new byte[AvroMessages.HEADER_LENGTH];
+    private final boolean reuse;
+    private O last;
+
+    /**
+     * Create a new {@link MessageDecoder}, nothing will be read from the input until records are requested.
+     *
+     * @param schema   the schema the records were written with, which is the domain class's schema
+     * @param encoding the encoding to read, either single-object or raw
+     * @param reader   the reader used to decode each record, which may read a projection of the schema
+     * @param input    the encoded records
+     * @param reuse    whether to decode every record into the same domain object
+     */
+    MessageDecoder(final Schema schema, final AvroEncoding encoding, final DatumReader<O> reader, final InputStream input, final boolean reuse) {
+        super(Long.MAX_VALUE, Spliterator.ORDERED | Spliterator.NONNULL);
+        if (encoding == AvroEncoding.CONTAINER) {
+            throw new IllegalArgumentException("Container files must be read by a DataFileStream");
+        }
+        this.input = input;
+        this.decoder = DecoderFactory.get().binaryDecoder(input, null);
+        this.reader = reader;
+        this.expectedHeader = encoding == AvroEncoding.SINGLE_OBJECT ? AvroMessages.header(schema) : null;
+        this.reuse = reuse;
+        reader.setSchema(schema);
+    }
+
+    /**
+     * Create a stream of the decoded records, which closes the input when it is closed.
+     *
+     * @return a sequential stream of the records
+     */
+    Stream<O> stream() {
+        return StreamSupport.stream(this, false)
+                .onClose(() -> {
+                    try {
+                        close();
+                    } catch (IOException e) {
+                        throw new UncheckedIOException("Failed to close the input stream", e);
+                    }
+                });
+    }
+
+    @Override
+    public boolean tryAdvance(final Consumer<? super O> action) {
+        O record;
+        try {
+            if (decoder.isEnd()) {
+                return false;
+            }
+            if (expectedHeader != null) {
+                decoder.readFixed(header);
+                AvroMessages.checkHeader(expectedHeader, header);
+            }
+            record = reader.read(reuse ? last : null, decoder);
+        } catch (IOException e) {
+            throw new UncheckedIOException("An error occurred during deserialisation", e);
+        }
+        if (reuse) {
+            last = record;
+        }
+        action.accept(record);
+        return true;
+    }
+
+    @Override
+    public void close() throws IOException {
+        input.close();
+    }
+}
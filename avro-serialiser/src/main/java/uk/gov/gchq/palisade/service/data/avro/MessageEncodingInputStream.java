@@ -0,0 +1,95 @@
+/*
+ * Copyright 2018-2021 Crown Copyright
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package uk.gov.gchq.palisade.service.data.avro;
+
+import org.apache.avro.Schema;
+import org.apache.avro.io.BinaryEncoder;
+import org.apache.avro.io.DatumWriter;
+import org.apache.avro.io.EncoderFactory;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.Iterator;
+import java.util.stream.Stream;
+
+import static java.util.Objects.requireNonNull;
+
+/**
+ * An {@link InputStream} of records in the {@link AvroEncoding#SINGLE_OBJECT} or {@link AvroEncoding#RAW} encoding,
+ * encoded lazily from a {@link Stream} of domain objects. No container file header is written, so for a handful of
+ * records the output is many times smaller than a data file.
+ * <p>
+ * As with an {@link AvroEncodingInputStream}, records are pulled from the stream on the thread reading from this
+ * {@link InputStream}, with roughly {@code blockSize} bytes of records encoded each time the previous bytes are read.
+ *
+ * @param <O> the domain object type
+ */
+class MessageEncodingInputStream<O> extends AbstractBlockInputStream {
+    private static final byte[] NO_HEADER = new byte[0];
+
+    private final Stream<O> objects;
+    private final Iterator<O> iterator;
+    private final DatumWriter<O> writer;
+    private final byte[] header;
+    private final int blockSize;
+    private final BlockBuffer buffer = new BlockBuffer();
+    private final BinaryEncoder encoder = EncoderFactory.get().directBinaryEncoder(buffer, null);
+
+    /**
+     * Create a new {@link MessageEncodingInputStream}, nothing will be read from the stream of objects until this
+     * {@link InputStream} is itself read.
+     *
+     * @param schema    the schema of the domain objects
+     * @param encoding  the encoding to write, either single-object or raw
+     * @param writer    the writer used to encode each record
+     * @param objects   the stream of domain objects to encode
+     * @param blockSize the approximate number of bytes to encode at a time
+     */
+    MessageEncodingInputStream(final Schema schema, final AvroEncoding encoding, final DatumWriter<O> writer, final Stream<O> objects, final int blockSize) {
+        if (encoding == AvroEncoding.CONTAINER) {
+            throw new IllegalArgumentException("Container files must be written by an AvroEncodingInputStream");
+        }
+        this.objects = requireNonNull(objects, "objects is required");
+        this.iterator = objects.iterator();
+        this.writer = requireNonNull(writer, "writer is required");
+        this.header = encoding == AvroEncoding.SINGLE_OBJECT ? AvroMessages.header(schema) : NO_HEADER;
+        this.blockSize = blockSize;
+        writer.setSchema(schema);
+    }
+
+    @Override
+    public void close() throws IOException {
+        super.close();
+        objects.close();
+    }
+
+    @Override
+    protected boolean nextBlock() throws IOException {
+        buffer.reset();
+        // The encoder is unbuffered, so each header and record is written to the buffer in turn
+        while (buffer.size() < blockSize && iterator.hasNext()) {
+            buffer.write(header, 0, header.length);
+            writer.write(iterator.next(), encoder);
+        }
+        boolean hasNext = iterator.hasNext();
+        if (!hasNext) {
+            objects.close();
+        }
+        setBlock(buffer.array(), 0, buffer.size());
+        return hasNext;
+    }
+}
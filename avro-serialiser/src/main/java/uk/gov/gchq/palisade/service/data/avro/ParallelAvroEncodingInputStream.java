@@ -0,0 +1,230 @@
+/*
+ * Copyright 2018-2021 Crown Copyright
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package uk.gov.gchq.palisade.service.data.avro;
+
+import org.apache.avro.Schema;
+import org.apache.avro.file.DataFileWriter;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.UncheckedIOException;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Deque;
+import java.util.Iterator;
+import java.util.List;
+import java.util.NoSuchElementException;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.Executor;
+import java.util.function.Supplier;
+import java.util.stream.Stream;
+
+import static java.util.Objects.requireNonNull;
+
+/**
+ * An {@link InputStream} of an Avro data file, where each block is encoded and compressed in parallel.
+ * Records are pulled from the {@link Stream} on the thread reading from this {@link InputStream} and grouped into
+ * blocks of a fixed number of records. Each block is then encoded on the given {@link Executor}, with up to
+ * {@code parallelism} blocks in flight at once, and written out in the original order after a single header.
+ * <p>
+ * Every block is written with the same sync marker, chosen at random for this data file, so the output is a single
+ * valid Avro data file. A group of records larger than the writer's sync interval is written as more than one block.
+ * Each block's encoder is reused once the block has been read, so no more encoders are created than there are blocks
+ * in flight.
+ *
+ * @param <O> the domain object type
+ */
+public class ParallelAvroEncodingInputStream<O> extends AbstractBlockInputStream {
+    private final Stream<?> objects;
+    private final Iterator<List<O>> blocks;
+    private final int parallelism;
+    private final Executor executor;
+    private final EncoderPool<O> pool;
+    private final Deque<CompletableFuture<BlockEncoder<O>>> inFlight = new ArrayDeque<>();
+    private final byte[] sync = EncoderPool.newSync();
+    private BlockEncoder<O> current;
+    private boolean started;
+
+    /**
+     * Create a new {@link ParallelAvroEncodingInputStream} using {@link DataFileWriter}s from the given supplier to
+     * encode blocks, so that their codec and sync interval may be configured. Nothing will be read from the stream
+     * of objects until this {@link InputStream} is itself read.
+     *
+     * @param schema       the schema of the domain objects
+     * @param objects      the stream of domain objects to encode
+     * @param blockRecords the number of records to write in each block
+     * @param parallelism  the maximum number of blocks to encode at once
+     * @param executor     the executor on which blocks are encoded
+     * @param writers      a supplier of a new, not yet created, writer for each concurrent encoder
+     */
+    public ParallelAvroEncodingInputStream(final Schema schema, final Stream<O> objects, final int blockRecords, final int parallelism, final Executor executor,
+                                           final Supplier<DataFileWriter<O>> writers) {
+        // Only as many encoders as there may be blocks in flight, plus the one being read, are ever needed
+        this(new EncoderPool<>(schema, writers, Math.max(parallelism, 0) + 1), objects, blockRecords, parallelism, executor);
+    }
+
+    /**
+     * Create a new {@link ParallelAvroEncodingInputStream} borrowing its encoders from a shared pool, which may be
+     * used by many data files at once. Nothing will be read from the stream of objects until this
+     * {@link InputStream} is itself read.
+     *
+     * @param pool         the pool of encoders to borrow from
+     * @param objects      the stream of domain objects to encode
+     * @param blockRecords the number of records to write in each block
+     * @param parallelism  the maximum number of blocks to encode at once
+     * @param executor     the executor on which blocks are encoded
+     */
+    ParallelAvroEncodingInputStream(final EncoderPool<O> pool, final Stream<O> objects, final int blockRecords, final int parallelism, final Executor executor) {
+        this(pool, objects, groups(requireNonNull(objects, "objects is required").iterator(), blockRecords), parallelism, executor);
+    }
+
+    private ParallelAvroEncodingInputStream(final EncoderPool<O> pool, final Stream<?> objects, final Iterator<List<O>> blocks, final int parallelism,
+                                            final Executor executor) {
+        if (parallelism < 1) {
+            throw new IllegalArgumentException("parallelism must be positive, but was " + parallelism);
+        }
+        this.pool = requireNonNull(pool, "pool is required");
+        this.objects = objects;
+        this.blocks = blocks;
+        this.executor = requireNonNull(executor, "executor is required");
+        this.parallelism = parallelism;
+    }
+
+    /**
+     * Create a new {@link ParallelAvroEncodingInputStream} which writes each batch of records as one block, rather
+     * than grouping records into blocks of a fixed size. Empty batches are skipped, and any batch larger than the
+     * writer's sync interval is written as more than one block.
+     *
+     * @param pool        the pool of encoders to borrow from
+     * @param batches     the stream of batches of domain objects to encode
+     * @param parallelism the maximum number of blocks to encode at once
+     * @param executor    the executor on which blocks are encoded
+     * @param <O>         the domain object type
+     * @return an {@link InputStream} of the data file, nothing will be read from the batches until it is itself read
+     */
+    static <O> ParallelAvroEncodingInputStream<O> ofBatches(final EncoderPool<O> pool, final Stream<List<O>> batches, final int parallelism, final Executor executor) {
+        requireNonNull(batches, "batches is required");
+        Iterator<List<O>> blocks = batches
+                .map(batch -> requireNonNull(batch, "batch is required"))
+                .filter(batch -> !batch.isEmpty())
+                .iterator();
+        return new ParallelAvroEncodingInputStream<>(pool, batches, blocks, parallelism, executor);
+    }
+
+    private static <O> Iterator<List<O>> groups(final Iterator<O> iterator, final int blockRecords) {
+        if (blockRecords < 1) {
+            throw new IllegalArgumentException("blockRecords must be positive, but was " + blockRecords);
+        }
+        return new Iterator<>() {
+            @Override
+            public boolean hasNext() {
+                return iterator.hasNext();
+            }
+
+            @Override
+            public List<O> next() {
+                if (!iterator.hasNext()) {
+                    throw new NoSuchElementException();
+                }
+                List<O> records = new ArrayList<>(blockRecords);
+                while (records.size() < blockRecords && iterator.hasNext()) {
+                    records.add(iterator.next());
+                }
+                return records;
+            }
+        };
+    }
+
+    @Override
+    public void close() throws IOException {
+        super.close();
+        // Any encoder still running when cancelled is left for the garbage collector rather than returned to the pool
+        inFlight.forEach(block -> block.cancel(false));
+        inFlight.clear();
+        release();
+        objects.close();
+    }
+
+    @Override
+    protected boolean nextBlock() throws IOException {
+        if (!started) {
+            started = true;
+            byte[] header = pool.getHeader(sync);
+            setBlock(header, 0, header.length);
+            return true;
+        }
+        // The previous block has now been read, so its encoder can be reused
+        release();
+        while (inFlight.size() < parallelism && blocks.hasNext()) {
+            List<O> records = blocks.next();
+            inFlight.add(CompletableFuture.supplyAsync(() -> encodeUnchecked(records), executor));
+        }
+        if (inFlight.isEmpty()) {
+            objects.close();
+            return false;
+        }
+        current = await(inFlight.remove());
+        BlockBuffer block = current.getBuffer();
+        setBlock(block.array(), 0, block.size());
+        return true;
+    }
+
+    private void release() {
+        if (current != null) {
+            pool.release(current);
+            current = null;
+        }
+    }
+
+    private BlockEncoder<O> encodeUnchecked(final List<O> records) {
+        try {
+            return encode(records);
+        } catch (IOException e) {
+            throw new UncheckedIOException("An error occurred during serialisation", e);
+        }
+    }
+
+    /**
+     * Encode the records as a block, using an encoder from the pool. Since every encoder in the pool shares the same
+     * schema and metadata, and is given this data file's sync marker, the block can follow the header written by any
+     * of them.
+     *
+     * @param records the records to encode
+     * @return the encoder, whose buffer contains the encoded block
+     * @throws IOException if the records could not be encoded
+     */
+    private BlockEncoder<O> encode(final List<O> records) throws IOException {
+        BlockEncoder<O> encoder = pool.borrow(sync);
+        for (O record : records) {
+            encoder.append(record);
+        }
+        encoder.endBlock();
+        return encoder;
+    }
+
+    private static <O> BlockEncoder<O> await(final CompletableFuture<BlockEncoder<O>> block) throws IOException {
+        try {
+            return block.join();
+        } catch (CompletionException e) {
+            if (e.getCause() instanceof UncheckedIOException) {
+                throw ((UncheckedIOException) e.getCause()).getCause();
+            }
+            throw e;
+        }
+    }
+}
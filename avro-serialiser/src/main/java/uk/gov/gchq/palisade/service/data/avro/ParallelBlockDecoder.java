@@ -0,0 +1,171 @@
+/*
+ * Copyright 2018-2021 Crown Copyright
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package uk.gov.gchq.palisade.service.data.avro;
+
+import org.apache.avro.file.DataFileStream;
+import org.apache.avro.file.DataFileStream.Header;
+import org.apache.avro.io.DatumReader;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.UncheckedIOException;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Deque;
+import java.util.Iterator;
+import java.util.List;
+import java.util.NoSuchElementException;
+import java.util.Spliterator;
+import java.util.Spliterators;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.Executor;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.function.Supplier;
+import java.util.stream.Stream;
+import java.util.stream.StreamSupport;
+
+/**
+ * Decodes the blocks of an Avro data file in parallel. Raw blocks are read from the {@link InputStream} on the
+ * consuming thread, then decompressed and decoded on the given {@link Executor}, with up to {@code parallelism}
+ * blocks in flight at once.
+ * <p>
+ * Blocks are returned either in their original order, or in the order their decoding completes. Records within a
+ * block always keep their original order.
+ *
+ * @param <O> the domain object type
+ */
+class ParallelBlockDecoder<O> implements Iterator<List<O>>, Closeable {
+    private final Supplier<? extends DatumReader<O>> datumReaders;
+    private final AvroBlockReader blockReader;
+    private final int parallelism;
+    private final boolean ordered;
+    private final Executor executor;
+    private final Deque<CompletableFuture<List<O>>> inFlight = new ArrayDeque<>();
+    // Only used when unordered, blocks are added here by the executor as they finish decoding
+    private final BlockingQueue<CompletableFuture<List<O>>> completed = new LinkedBlockingQueue<>();
+    private Header header;
+    private boolean endOfBlocks;
+
+    ParallelBlockDecoder(final Supplier<? extends DatumReader<O>> datumReaders, final InputStream input, final int parallelism, final boolean ordered, final Executor executor) {
+        this.datumReaders = datumReaders;
+        this.blockReader = new AvroBlockReader(input);
+        this.parallelism = parallelism;
+        this.ordered = ordered;
+        this.executor = executor;
+    }
+
+    /**
+     * Create a stream of the decoded records, which closes this decoder when it is closed.
+     *
+     * @return a stream of the records in the data file
+     */
+    Stream<O> stream() {
+        return batches().flatMap(List::stream);
+    }
+
+    /**
+     * Create a stream of the decoded blocks, each as a list of its records, which closes this decoder when it is
+     * closed.
+     *
+     * @return a stream of the blocks in the data file
+     */
+    Stream<List<O>> batches() {
+        int characteristics = ordered ? Spliterator.ORDERED | Spliterator.NONNULL : Spliterator.NONNULL;
+        return StreamSupport.stream(Spliterators.spliteratorUnknownSize(this, characteristics), false)
+                .onClose(() -> {
+                    try {
+                        close();
+                    } catch (IOException e) {
+                        throw new UncheckedIOException("Failed to close the input stream", e);
+                    }
+                });
+    }
+
+    @Override
+    public boolean hasNext() {
+        try {
+            submitBlocks();
+        } catch (IOException e) {
+            throw new UncheckedIOException("An error occurred during deserialisation", e);
+        }
+        return !inFlight.isEmpty();
+    }
+
+    @Override
+    public List<O> next() {
+        if (!hasNext()) {
+            throw new NoSuchElementException();
+        }
+        CompletableFuture<List<O>> block;
+        try {
+            block = ordered ? inFlight.peek() : completed.take();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new IllegalStateException("Interrupted while waiting for a block to be decoded", e);
+        }
+        inFlight.remove(block);
+        try {
+            return block.join();
+        } catch (CompletionException e) {
+            if (e.getCause() instanceof UncheckedIOException) {
+                throw (UncheckedIOException) e.getCause();
+            }
+            throw e;
+        }
+    }
+
+    @Override
+    public void close() throws IOException {
+        endOfBlocks = true;
+        inFlight.forEach(block -> block.cancel(false));
+        inFlight.clear();
+        completed.clear();
+        blockReader.close();
+    }
+
+    private void submitBlocks() throws IOException {
+        if (header == null) {
+            header = AvroContainer.parseHeader(blockReader.readHeader(), datumReaders.get());
+        }
+        while (!endOfBlocks && inFlight.size() < parallelism) {
+            byte[] block = blockReader.readBlock();
+            if (block == null) {
+                endOfBlocks = true;
+            } else {
+                CompletableFuture<List<O>> decoded = CompletableFuture.supplyAsync(() -> decode(block), executor);
+                inFlight.add(decoded);
+                if (!ordered) {
+                    decoded.whenComplete((records, error) -> completed.add(decoded));
+                }
+            }
+        }
+    }
+
+    private List<O> decode(final byte[] block) {
+        // Readers are not safe to share between threads, so each block gets its own
+        try (DataFileStream<O> records = AvroContainer.openBlock(header, datumReaders.get(), block)) {
+            List<O> decoded = new ArrayList<>();
+            records.forEach(decoded::add);
+            return decoded;
+        } catch (IOException e) {
+            throw new UncheckedIOException("An error occurred during deserialisation", e);
+        }
+    }
+}
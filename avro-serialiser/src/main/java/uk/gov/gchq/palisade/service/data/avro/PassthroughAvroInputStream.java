@@ -0,0 +1,206 @@
+/*
+ * Copyright 2018-2021 Crown Copyright
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package uk.gov.gchq.palisade.service.data.avro;
+
+import org.apache.avro.Schema;
+import org.apache.avro.file.CodecFactory;
+import org.apache.avro.file.DataFileConstants;
+import org.apache.avro.file.DataFileStream;
+import org.apache.avro.file.DataFileStream.Header;
+import org.apache.avro.file.DataFileWriter;
+import org.apache.avro.io.BinaryDecoder;
+import org.apache.avro.io.BinaryEncoder;
+import org.apache.avro.io.DatumReader;
+import org.apache.avro.io.DatumWriter;
+import org.apache.avro.io.DecoderFactory;
+import org.apache.avro.io.EncoderFactory;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.ByteBuffer;
+import java.util.Arrays;
+import java.util.function.UnaryOperator;
+
+import static java.util.Objects.nonNull;
+
+/**
+ * An {@link InputStream} re-serialising an Avro data file after applying a function to each record, which copies
+ * any block left untouched by the function straight to the output without recompressing it.
+ * <p>
+ * A block whose records the {@link RecordRangePredicate} says the function cannot change is copied without being
+ * decompressed or decoded at all, and the function is not applied to its records.
+ * <p>
+ * Any other block is decompressed and decoded, then the function is applied to each record and the results are
+ * re-encoded. If no records were removed and the re-encoded bytes are identical to the original block, the original
+ * compressed block is copied to the output. Otherwise, the re-encoded records are compressed as normal.
+ * Because the comparison is made on the encoded bytes, functions which modify records in-place are still detected.
+ *
+ * @param <O> the domain object type
+ */
+class PassthroughAvroInputStream<O> extends AbstractBlockInputStream {
+    private static final Logger LOGGER = LoggerFactory.getLogger(PassthroughAvroInputStream.class);
+
+    private final Schema schema;
+    private final AvroBlockReader blockReader;
+    private final UnaryOperator<O> function;
+    private final RecordRangePredicate mayModify;
+    private final DatumReader<O> datumReader;
+    private final DatumWriter<O> datumWriter;
+    private final DataFileWriter<O> writer;
+    private final BlockBuffer buffer = new BlockBuffer();
+    private final BlockBuffer encoded = new BlockBuffer();
+    private int[] recordEnds = new int[0];
+    private BinaryDecoder decoder;
+    private BinaryEncoder encoder;
+    private Header header;
+    private boolean passthrough;
+    private long nextRecord;
+    private long copiedBlocks;
+    private long rewrittenBlocks;
+
+    /**
+     * Create a new {@link PassthroughAvroInputStream}, nothing will be read from the input until this
+     * {@link InputStream} is itself read.
+     *
+     * @param schema      the schema of the domain objects
+     * @param datumReader the reader used to decode each record
+     * @param datumWriter the writer used to encode each record
+     * @param input       the Avro data file to re-serialise
+     * @param function    the function to apply to each record, returning null to remove the record
+     * @param mayModify   whether the function may change any of a range of records, otherwise they are copied
+     */
+    PassthroughAvroInputStream(final Schema schema, final DatumReader<O> datumReader, final DatumWriter<O> datumWriter, final InputStream input,
+                               final UnaryOperator<O> function, final RecordRangePredicate mayModify) {
+        this.schema = schema;
+        this.blockReader = new AvroBlockReader(input);
+        this.function = function;
+        this.mayModify = mayModify;
+        this.datumReader = datumReader;
+        this.datumWriter = datumWriter;
+        this.writer = new DataFileWriter<>(datumWriter);
+    }
+
+    @Override
+    public void close() throws IOException {
+        super.close();
+        blockReader.close();
+    }
+
+    @Override
+    protected boolean nextBlock() throws IOException {
+        buffer.reset();
+        if (header == null) {
+            writeHeader();
+            setBlock(buffer.array(), 0, buffer.size());
+            return true;
+        }
+        // The data file writer flushes to the buffer each time a block is completed
+        byte[] block = buffer.size() == 0 ? blockReader.readBlock() : null;
+        while (nonNull(block)) {
+            long count = AvroContainer.blockCount(block, 0, block.length);
+            if (!passthrough) {
+                rewrite(block);
+            } else if (mayModify.mayModify(nextRecord, count)) {
+                copyOrRewrite(block);
+            } else {
+                copy(block);
+            }
+            nextRecord += count;
+            block = buffer.size() == 0 ? blockReader.readBlock() : null;
+        }
+        boolean hasNext = buffer.size() > 0;
+        if (!hasNext) {
+            // Write out whatever remains as the final block
+            writer.close();
+            blockReader.close();
+            LOGGER.debug("Re-serialised data file, copied {} blocks and rewrote {} blocks", copiedBlocks, rewrittenBlocks);
+        }
+        setBlock(buffer.array(), 0, buffer.size());
+        return hasNext;
+    }
+
+    private void writeHeader() throws IOException {
+        try (DataFileStream<O> headerStream = new DataFileStream<>(new ByteArrayInputStream(blockReader.readHeader()), datumReader)) {
+            header = headerStream.getHeader();
+            // Blocks may only be copied if they were written with the same schema, the codec is kept the same below
+            passthrough = headerStream.getSchema().equals(schema);
+            String codec = headerStream.getMetaString(DataFileConstants.CODEC);
+            if (nonNull(codec)) {
+                writer.setCodec(CodecFactory.fromString(codec));
+            }
+        }
+        writer.create(schema, buffer);
+    }
+
+    private void copyOrRewrite(final byte[] block) throws IOException {
+        DataFileStream<O> records = AvroContainer.openBlock(header, datumReader, block);
+        if (!records.hasNext()) {
+            return;
+        }
+        int count = (int) records.getBlockCount();
+        ByteBuffer original = records.nextBlock();
+        if (recordEnds.length < count) {
+            recordEnds = new int[count];
+        }
+
+        // Decode, apply the function, and re-encode each record, remembering where each one ends
+        decoder = DecoderFactory.get().binaryDecoder(original.array(), original.arrayOffset() + original.position(), original.remaining(), decoder);
+        encoder = EncoderFactory.get().directBinaryEncoder(encoded, encoder);
+        encoded.reset();
+        int kept = 0;
+        for (int i = 0; i < count; i++) {
+            O result = function.apply(datumReader.read(null, decoder));
+            if (nonNull(result)) {
+                datumWriter.write(result, encoder);
+                recordEnds[kept++] = encoded.size();
+            }
+        }
+
+        int offset = original.arrayOffset() + original.position();
+        if (kept == count && Arrays.equals(encoded.array(), 0, encoded.size(), original.array(), offset, offset + original.remaining())) {
+            copy(block);
+        } else {
+            int start = 0;
+            for (int i = 0; i < kept; i++) {
+                writer.appendEncoded(ByteBuffer.wrap(encoded.array(), start, recordEnds[i] - start));
+                start = recordEnds[i];
+            }
+            rewrittenBlocks++;
+        }
+    }
+
+    private void copy(final byte[] block) throws IOException {
+        // Appending from a stream with the same schema and codec copies its raw blocks without decoding them
+        writer.appendAllFrom(AvroContainer.openBlock(header, datumReader, block), false);
+        copiedBlocks++;
+    }
+
+    private void rewrite(final byte[] block) throws IOException {
+        try (DataFileStream<O> records = AvroContainer.openBlock(header, datumReader, block)) {
+            for (O record : records) {
+                O result = function.apply(record);
+                if (nonNull(result)) {
+                    writer.append(result);
+                }
+            }
+        }
+        rewrittenBlocks++;
+    }
+}
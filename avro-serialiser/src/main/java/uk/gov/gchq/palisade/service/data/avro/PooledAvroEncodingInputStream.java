@@ -0,0 +1,98 @@
+/*
+ * Copyright 2018-2021 Crown Copyright
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package uk.gov.gchq.palisade.service.data.avro;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.Iterator;
+import java.util.stream.Stream;
+
+import static java.util.Objects.requireNonNull;
+
+/**
+ * An {@link InputStream} of an Avro data file, encoded lazily from a {@link Stream} of domain objects in the same
+ * way as an {@link AvroEncodingInputStream}, but using an encoder borrowed from an {@link EncoderPool}.
+ * The encoder is borrowed when this {@link InputStream} is first read, and returned once the last block has been
+ * read or this {@link InputStream} is closed, so that its buffers can be reused by the next data file.
+ *
+ * @param <O> the domain object type
+ */
+class PooledAvroEncodingInputStream<O> extends AbstractBlockInputStream {
+    private final EncoderPool<O> pool;
+    private final Stream<O> objects;
+    private final Iterator<O> iterator;
+    private BlockEncoder<O> encoder;
+    private boolean started;
+    private boolean ended;
+
+    /**
+     * Create a new {@link PooledAvroEncodingInputStream}, nothing will be read from the stream of objects until this
+     * {@link InputStream} is itself read.
+     *
+     * @param pool    the pool of encoders to borrow from
+     * @param objects the stream of domain objects to encode
+     */
+    PooledAvroEncodingInputStream(final EncoderPool<O> pool, final Stream<O> objects) {
+        this.pool = requireNonNull(pool, "pool is required");
+        this.objects = requireNonNull(objects, "objects is required");
+        this.iterator = objects.iterator();
+    }
+
+    @Override
+    public void close() throws IOException {
+        super.close();
+        release();
+        objects.close();
+    }
+
+    @Override
+    protected boolean nextBlock() throws IOException {
+        if (!started) {
+            started = true;
+            encoder = pool.borrow(EncoderPool.newSync());
+            byte[] header = encoder.getHeader();
+            setBlock(header, 0, header.length);
+            return true;
+        }
+        if (ended) {
+            // The final block has now been read, so the encoder can be reused
+            release();
+            return false;
+        }
+        encoder.reset();
+        BlockBuffer buffer = encoder.getBuffer();
+        // The encoder writes to its buffer each time a block is completed
+        while (buffer.size() == 0 && iterator.hasNext()) {
+            encoder.append(iterator.next());
+        }
+        if (buffer.size() == 0) {
+            // Write out whatever remains as the final block
+            encoder.endBlock();
+            ended = true;
+            objects.close();
+        }
+        setBlock(buffer.array(), 0, buffer.size());
+        return true;
+    }
+
+    private void release() {
+        if (encoder != null) {
+            pool.release(encoder);
+            encoder = null;
+        }
+    }
+}
@@ -0,0 +1,45 @@
+/*
+ * Copyright 2018-2021 Crown Copyright
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package uk.gov.gchq.palisade.service.data.avro;
+
+/**
+ * Decides, from their positions in a data file alone, whether a function may change any of a range of records.
+ * This lets {@link AvroSerialiser#reserialise(java.io.InputStream, java.util.function.UnaryOperator, RecordRangePredicate)}
+ * copy the blocks holding records which the function is known to leave unchanged without decoding them.
+ */
+@FunctionalInterface
+public interface RecordRangePredicate {
+    /**
+     * A predicate for functions which may change any record, so every block is decoded.
+     */
+    RecordRangePredicate ALL = (long firstRecord, long recordCount) -> true;
+
+    /**
+     * A predicate for functions which change no records, such as when no redaction applies to a resource, so every
+     * block is copied.
+     */
+    RecordRangePredicate NONE = (long firstRecord, long recordCount) -> false;
+
+    /**
+     * Test whether a function may change any of a range of records.
+     *
+     * @param firstRecord the index in the data file of the first record in the range
+     * @param recordCount the number of records in the range
+     * @return true if any of the records may be changed or removed, false if they are all certainly unchanged
+     */
+    boolean mayModify(long firstRecord, long recordCount);
+}
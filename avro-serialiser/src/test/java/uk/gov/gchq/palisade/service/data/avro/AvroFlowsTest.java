@@ -0,0 +1,129 @@
+/*
+ * Copyright 2018-2021 Crown Copyright
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package uk.gov.gchq.palisade.service.data.avro;
+
+import akka.actor.ActorSystem;
+import akka.stream.Materializer;
+import akka.stream.javadsl.Sink;
+import akka.stream.javadsl.Source;
+import akka.stream.javadsl.StreamConverters;
+import akka.util.ByteString;
+import org.junit.jupiter.api.AfterAll;
+import org.junit.jupiter.api.BeforeAll;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.TestInstance;
+import org.junit.jupiter.api.TestInstance.Lifecycle;
+
+import java.io.IOException;
+import java.util.List;
+import java.util.concurrent.CompletionException;
+import java.util.stream.Collectors;
+import java.util.stream.IntStream;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+
+@TestInstance(Lifecycle.PER_CLASS)
+class AvroFlowsTest {
+    private static final int CHUNK_SIZE = 7;
+
+    ActorSystem system;
+    Materializer materialiser;
+    AvroSerialiser<AvroSerialiserTest.Record> serialiser = new AvroSerialiser<>(AvroSerialiserTest.Record.class);
+
+    // Enough records to span several Avro blocks
+    List<AvroSerialiserTest.Record> records = IntStream.range(0, 10_000)
+            .mapToObj(i -> new AvroSerialiserTest.Record("record " + i))
+            .collect(Collectors.toList());
+
+    @BeforeAll
+    void setUp() {
+        system = ActorSystem.create("avro-flows-test");
+        materialiser = Materializer.createMaterializer(system);
+    }
+
+    @AfterAll
+    void tearDown() {
+        system.terminate();
+    }
+
+    @Test
+    void testSerialiseFlowIsReadableByDeserialise() {
+        // Given
+        var source = Source.from(records);
+
+        // When
+        var inputStream = source.via(AvroFlows.serialise(serialiser))
+                .runWith(StreamConverters.asInputStream(), materialiser);
+
+        // Then
+        assertThat(serialiser.deserialise(inputStream).collect(Collectors.toList()))
+                .as("Check the records serialised by the flow match their original counterparts")
+                .isEqualTo(records);
+    }
+
+    @Test
+    void testDeserialiseFlowReadsSerialisedChunks() {
+        // Given a serialised file split into small, unaligned chunks
+        var source = StreamConverters.fromInputStream(() -> serialiser.serialise(records.stream()), CHUNK_SIZE);
+
+        // When
+        var deserialised = source.via(AvroFlows.deserialise(serialiser))
+                .runWith(Sink.seq(), materialiser)
+                .toCompletableFuture().join();
+
+        // Then
+        assertThat(deserialised)
+                .as("Check the records deserialised by the flow match their original counterparts")
+                .isEqualTo(records);
+    }
+
+    @Test
+    void testFlowsRoundTripEmptyStream() {
+        // Given
+        var source = Source.<AvroSerialiserTest.Record>empty();
+
+        // When
+        var deserialised = source.via(AvroFlows.serialise(serialiser))
+                .via(AvroFlows.deserialise(serialiser))
+                .runWith(Sink.seq(), materialiser)
+                .toCompletableFuture().join();
+
+        // Then
+        assertThat(deserialised)
+                .as("Check that an empty stream of records round-trips through the flows")
+                .isEmpty();
+    }
+
+    @Test
+    void testDeserialiseFlowFailsOnTruncatedFile() throws IOException {
+        // Given a serialised file missing its final byte
+        var bytes = serialiser.serialise(records.stream()).readAllBytes();
+        var source = Source.single(ByteString.fromArray(bytes, 0, bytes.length - 1));
+
+        // When
+        var future = source.via(AvroFlows.deserialise(serialiser))
+                .runWith(Sink.ignore(), materialiser)
+                .toCompletableFuture();
+
+        // Then
+        assertThatThrownBy(future::join)
+                .as("Check that a truncated file fails the stream")
+                .isInstanceOf(CompletionException.class)
+                .hasCauseInstanceOf(IOException.class);
+    }
+}
@@ -0,0 +1,81 @@
+/*
+ * Copyright 2018-2021 Crown Copyright
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package uk.gov.gchq.palisade.service.data.avro;
+
+import org.apache.avro.generic.GenericRecord;
+import org.junit.jupiter.api.Test;
+
+import uk.gov.gchq.palisade.service.data.avro.AvroSerialiserTest.Record;
+
+import java.util.List;
+import java.util.stream.Collectors;
+import java.util.stream.IntStream;
+import java.util.stream.Stream;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+class AvroGenericSerialiserTest {
+    AvroSerialiser<Record> domainSerialiser = new AvroSerialiser<>(Record.class);
+    AvroGenericSerialiser serialiser = new AvroGenericSerialiser();
+
+    @Test
+    void testDeserialiseUsesSchemaFromFile() {
+        // Given a file written from domain objects
+        var records = List.of(new Record("record one"), new Record("record two"));
+        var inputStream = domainSerialiser.serialise(records.stream());
+
+        // When
+        var recordStream = serialiser.deserialise(inputStream);
+
+        // Then
+        assertThat(recordStream.collect(Collectors.toList()))
+                .as("Check the records are read using the schema in the file")
+                .extracting((GenericRecord record) -> record.get("field").toString())
+                .containsExactly("record one", "record two");
+    }
+
+    @Test
+    void testSerialiseIsReadableAsDomainObjects() {
+        // Given generic records read from a file
+        var records = IntStream.range(0, 10_000)
+                .mapToObj(i -> new Record("record " + i))
+                .collect(Collectors.toList());
+        var genericRecords = serialiser.deserialise(domainSerialiser.serialise(records.stream()));
+
+        // When
+        var inputStream = new AvroGenericSerialiser().codec("deflate").serialise(genericRecords);
+
+        // Then
+        assertThat(domainSerialiser.deserialise(inputStream).collect(Collectors.toList()))
+                .as("Check the re-serialised generic records match their original counterparts")
+                .isEqualTo(records);
+    }
+
+    @Test
+    void testSerialiseAndDeserialiseEmptyStream() {
+        // Given
+        var inputStream = serialiser.serialise(Stream.empty());
+
+        // When
+        var recordStream = serialiser.deserialise(inputStream);
+
+        // Then
+        assertThat(recordStream)
+                .as("Check that an empty stream is serialised as a valid data file")
+                .isEmpty();
+    }
+}
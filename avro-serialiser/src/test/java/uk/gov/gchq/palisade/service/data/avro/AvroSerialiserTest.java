@@ -16,16 +16,41 @@
 
 package uk.gov.gchq.palisade.service.data.avro;
 
+import org.apache.avro.Schema;
+import org.apache.avro.file.DataFileConstants;
+import org.apache.avro.file.DataFileStream;
+import org.apache.avro.file.SeekableByteArrayInput;
+import org.apache.avro.generic.GenericDatumReader;
+import org.apache.avro.message.MissingSchemaException;
 import org.junit.jupiter.api.Test;
 
 import uk.gov.gchq.palisade.Generated;
 
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.IdentityHashMap;
 import java.util.List;
 import java.util.Objects;
 import java.util.Optional;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.CyclicBarrier;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.UnaryOperator;
 import java.util.stream.Collectors;
+import java.util.stream.IntStream;
+import java.util.stream.Stream;
 
 import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
 
 class AvroSerialiserTest {
     static class Record {
@@ -71,6 +96,87 @@ class AvroSerialiserTest {
         }
     }
 
+    static class PrimitiveRecord {
+        private int intField;
+        private long longField;
+        private float floatField;
+        private double doubleField;
+        private boolean booleanField;
+        private Integer boxedField;
+        private String stringField;
+
+        @SuppressWarnings("unused")
+        PrimitiveRecord() {
+            // Used for serialisation
+        }
+
+        PrimitiveRecord(final int i) {
+            this.intField = i;
+            this.longField = i * 1_000_000_000L;
+            this.floatField = i / 2.0f;
+            this.doubleField = i / 3.0;
+            this.booleanField = i % 2 == 0;
+            this.boxedField = i % 3 == 0 ? null : i;
+            this.stringField = i % 5 == 0 ? null : "record " + i;
+        }
+
+        @Override
+        @Generated
+        public boolean equals(final Object o) {
+            if (this == o) {
+                return true;
+            }
+            if (!(o instanceof PrimitiveRecord)) {
+                return false;
+            }
+            final PrimitiveRecord that = (PrimitiveRecord) o;
+            return intField == that.intField &&
+                    longField == that.longField &&
+                    Float.compare(that.floatField, floatField) == 0 &&
+                    Double.compare(that.doubleField, doubleField) == 0 &&
+                    booleanField == that.booleanField &&
+                    Objects.equals(boxedField, that.boxedField) &&
+                    Objects.equals(stringField, that.stringField);
+        }
+
+        @Override
+        @Generated
+        public int hashCode() {
+            return Objects.hash(intField, longField, floatField, doubleField, booleanField, boxedField, stringField);
+        }
+    }
+
+    static class ListRecord {
+        private List<String> values;
+
+        @SuppressWarnings("unused")
+        ListRecord() {
+            // Used for serialisation
+        }
+
+        ListRecord(final List<String> values) {
+            this.values = values;
+        }
+
+        @Override
+        @Generated
+        public boolean equals(final Object o) {
+            if (this == o) {
+                return true;
+            }
+            if (!(o instanceof ListRecord)) {
+                return false;
+            }
+            return Objects.equals(values, ((ListRecord) o).values);
+        }
+
+        @Override
+        @Generated
+        public int hashCode() {
+            return Objects.hash(values);
+        }
+    }
+
     AvroSerialiser<Record> serialiser = new AvroSerialiser<>(Record.class);
 
     @Test
@@ -87,4 +193,753 @@ class AvroSerialiserTest {
                 .as("Check the serialised-deserialised records match their original counterparts")
                 .isEqualTo(records);
     }
-}
\ No newline at end of file
+
+    @Test
+    void testSerialiseEncodesOnReadingThread() {
+        // Given enough records to span several Avro blocks
+        var records = IntStream.range(0, 10_000)
+                .mapToObj(i -> new Record("record " + i))
+                .collect(Collectors.toList());
+        var encodingThreads = ConcurrentHashMap.<String>newKeySet();
+
+        // When
+        var inputStream = serialiser.serialise(records.stream()
+                .peek(record -> encodingThreads.add(Thread.currentThread().getName())));
+
+        // Then no records are pulled until the stream is read
+        assertThat(encodingThreads)
+                .as("Check that no records are encoded before the stream is read")
+                .isEmpty();
+        assertThat(serialiser.deserialise(inputStream).collect(Collectors.toList()))
+                .as("Check the serialised-deserialised records match their original counterparts")
+                .isEqualTo(records);
+        assertThat(encodingThreads)
+                .as("Check that records were encoded on the thread reading the stream")
+                .containsOnly(Thread.currentThread().getName());
+    }
+
+    @Test
+    void testParallelSerialisePreservesOrder() {
+        // Given a serialiser encoding small blocks in parallel
+        var parallelSerialiser = new AvroSerialiser<>(Record.class)
+                .encodingParallelism(4)
+                .blockRecordCount(100);
+        var records = IntStream.range(0, 10_000)
+                .mapToObj(i -> new Record("record " + i))
+                .collect(Collectors.toList());
+
+        // When
+        var inputStream = parallelSerialiser.serialise(records.stream());
+
+        // Then
+        assertThat(serialiser.deserialise(inputStream).collect(Collectors.toList()))
+                .as("Check the records encoded in parallel are read back in their original order")
+                .isEqualTo(records);
+    }
+
+    @Test
+    void testParallelSerialiseEmptyStream() {
+        // Given
+        var parallelSerialiser = new AvroSerialiser<>(Record.class).encodingParallelism(4);
+
+        // When
+        var inputStream = parallelSerialiser.serialise(Stream.empty());
+
+        // Then
+        assertThat(serialiser.deserialise(inputStream))
+                .as("Check that an empty stream encoded in parallel is still a valid data file")
+                .isEmpty();
+    }
+
+    @Test
+    void testEachDataFileHasItsOwnSyncMarker() throws IOException {
+        // Given two serialisers sharing a pool of encoders, one encoding many small blocks in parallel
+        var parallelSerialiser = new AvroSerialiser<>(Record.class)
+                .encodingParallelism(4)
+                .blockRecordCount(100);
+        var records = IntStream.range(0, 1_000)
+                .mapToObj(i -> new Record("record " + i))
+                .collect(Collectors.toList());
+
+        // When each writes two data files
+        var files = List.of(
+                serialiser.serialise(records.stream()).readAllBytes(),
+                serialiser.serialise(records.stream()).readAllBytes(),
+                parallelSerialiser.serialise(records.stream()).readAllBytes(),
+                parallelSerialiser.serialise(records.stream()).readAllBytes());
+
+        // Then
+        var syncs = new ArrayList<List<Byte>>();
+        for (byte[] file : files) {
+            var headerLength = AvroContainer.headerLength(file, file.length);
+            var sync = new ArrayList<Byte>();
+            for (int i = headerLength - DataFileConstants.SYNC_SIZE; i < headerLength; i++) {
+                sync.add(file[i]);
+            }
+            syncs.add(sync);
+            assertThat(serialiser.deserialise(new ByteArrayInputStream(file)).collect(Collectors.toList()))
+                    .as("Check every block of the data file ends with the data file's own sync marker")
+                    .isEqualTo(records);
+        }
+        assertThat(syncs)
+                .as("Check no two data files share a sync marker")
+                .doesNotHaveDuplicates();
+    }
+
+    @Test
+    void testParallelDeserialisePreservesOrder() {
+        // Given a file of many small blocks
+        var records = IntStream.range(0, 10_000)
+                .mapToObj(i -> new Record("record " + i))
+                .collect(Collectors.toList());
+        var inputStream = new AvroSerialiser<>(Record.class)
+                .encodingParallelism(2)
+                .blockRecordCount(100)
+                .serialise(records.stream());
+        var parallelSerialiser = new AvroSerialiser<>(Record.class).decodingParallelism(4);
+
+        // When
+        var recordStream = parallelSerialiser.deserialise(inputStream);
+
+        // Then
+        assertThat(recordStream.collect(Collectors.toList()))
+                .as("Check the records decoded in parallel are returned in their original order")
+                .isEqualTo(records);
+    }
+
+    @Test
+    void testUnorderedParallelDeserialiseReturnsAllRecords() {
+        // Given a file of many small blocks
+        var records = IntStream.range(0, 10_000)
+                .mapToObj(i -> new Record("record " + i))
+                .collect(Collectors.toList());
+        var inputStream = new AvroSerialiser<>(Record.class)
+                .encodingParallelism(2)
+                .blockRecordCount(100)
+                .serialise(records.stream());
+        var parallelSerialiser = new AvroSerialiser<>(Record.class).decodingParallelism(4);
+
+        // When
+        var recordStream = parallelSerialiser.deserialiseUnordered(inputStream);
+
+        // Then
+        assertThat(recordStream.collect(Collectors.toList()))
+                .as("Check the records decoded in parallel are all returned, in any order")
+                .containsExactlyInAnyOrderElementsOf(records);
+    }
+
+    @Test
+    void testDeserialiseReusingDecodesIntoOneObject() {
+        // Given
+        var records = IntStream.range(0, 10_000)
+                .mapToObj(i -> new Record("record " + i))
+                .collect(Collectors.toList());
+        var instances = Collections.newSetFromMap(new IdentityHashMap<Record, Boolean>());
+
+        // When
+        var fields = serialiser.deserialiseReusing(serialiser.serialise(records.stream()))
+                .peek(instances::add)
+                .map(Record::getField)
+                .collect(Collectors.toList());
+
+        // Then
+        assertThat(fields)
+                .as("Check each record was decoded in order")
+                .isEqualTo(records.stream().map(Record::getField).collect(Collectors.toList()));
+        assertThat(instances)
+                .as("Check every record was decoded into the same object")
+                .hasSize(1);
+    }
+
+    @Test
+    void testDeserialiseReusingCanBeReserialised() {
+        // Given
+        var records = IntStream.range(0, 10_000)
+                .mapToObj(i -> new Record("record " + i))
+                .collect(Collectors.toList());
+
+        // When the reused records are modified and immediately re-serialised
+        var reusedStream = serialiser.deserialiseReusing(serialiser.serialise(records.stream()))
+                .peek(record -> record.setField(record.getField().toUpperCase()));
+        var recordStream = serialiser.deserialise(serialiser.serialise(reusedStream));
+
+        // Then
+        assertThat(recordStream.collect(Collectors.toList()))
+                .as("Check the re-serialised records reflect each modification")
+                .isEqualTo(records.stream().map(record -> new Record(record.getField().toUpperCase())).collect(Collectors.toList()));
+    }
+
+    @Test
+    void testSerialiseBatchesWritesEachBatchAsOneBlock() {
+        // Given batches of varying sizes, including an empty batch
+        var batches = List.of(
+                IntStream.range(0, 3).mapToObj(i -> new Record("first " + i)).collect(Collectors.toList()),
+                List.<Record>of(),
+                IntStream.range(0, 700).mapToObj(i -> new Record("second " + i)).collect(Collectors.toList()),
+                List.of(new Record("third")));
+
+        // When
+        var inputStream = serialiser.serialiseBatches(batches.stream());
+
+        // Then
+        assertThat(serialiser.deserialiseBatches(inputStream).collect(Collectors.toList()))
+                .as("Check each non-empty batch was written as one block and read back as one batch")
+                .isEqualTo(List.of(batches.get(0), batches.get(2), batches.get(3)));
+    }
+
+    @Test
+    void testParallelDeserialiseBatchesAlignsWithBlocks() {
+        // Given a file written in blocks of 100 records
+        var records = IntStream.range(0, 1_050)
+                .mapToObj(i -> new Record("record " + i))
+                .collect(Collectors.toList());
+        var inputStream = new AvroSerialiser<>(Record.class)
+                .encodingParallelism(2)
+                .blockRecordCount(100)
+                .serialise(records.stream());
+
+        // When
+        var batches = new AvroSerialiser<>(Record.class)
+                .decodingParallelism(4)
+                .deserialiseBatches(inputStream)
+                .collect(Collectors.toList());
+
+        // Then
+        assertThat(batches)
+                .as("Check the records are returned in order, in batches of one block each")
+                .extracting(List::size)
+                .containsExactly(100, 100, 100, 100, 100, 100, 100, 100, 100, 100, 50);
+        assertThat(batches.stream().flatMap(List::stream).collect(Collectors.toList()))
+                .isEqualTo(records);
+    }
+
+    @Test
+    void testSerialiseWithConfiguredCodec() throws IOException {
+        // Given
+        var deflateSerialiser = new AvroSerialiser<>(Record.class)
+                .codec("deflate-9")
+                .syncInterval(1024);
+        var records = IntStream.range(0, 10_000)
+                .mapToObj(i -> new Record("record " + i))
+                .collect(Collectors.toList());
+
+        // When
+        var uncompressed = serialiser.serialise(records.stream()).readAllBytes();
+        var compressed = deflateSerialiser.serialise(records.stream()).readAllBytes();
+
+        // Then
+        assertThat(codecOf(compressed))
+                .as("Check the data file was written with the configured codec")
+                .isEqualTo("deflate");
+        assertThat(compressed.length)
+                .as("Check the compressed data file is smaller than the uncompressed one")
+                .isLessThan(uncompressed.length);
+        assertThat(serialiser.deserialise(new ByteArrayInputStream(compressed)).collect(Collectors.toList()))
+                .as("Check the compressed records match their original counterparts")
+                .isEqualTo(records);
+    }
+
+    @Test
+    void testSerialiseNegotiatesCodecFromFormat() throws IOException {
+        // Given
+        var records = List.of(new Record("record one"), new Record("record two"));
+
+        // When
+        var requested = serialiser.serialise(records.stream(), "avro/binary; codec=snappy").readAllBytes();
+        var unsupported = serialiser.serialise(records.stream(), "avro/binary; codec=zstd").readAllBytes();
+        var unspecified = serialiser.serialise(records.stream(), "avro/binary").readAllBytes();
+
+        // Then
+        assertThat(codecOf(requested))
+                .as("Check the codec requested by the format was used")
+                .isEqualTo("snappy");
+        assertThat(List.of(codecOf(unsupported), codecOf(unspecified)))
+                .as("Check the configured codec was used when the format requested no supported codec")
+                .containsOnly("null");
+        assertThat(serialiser.deserialise(new ByteArrayInputStream(requested)).collect(Collectors.toList()))
+                .as("Check the records match their original counterparts")
+                .isEqualTo(records);
+    }
+
+    @Test
+    void testUnsupportedCodecIsRejected() {
+        // Given
+        var codecSerialiser = new AvroSerialiser<>(Record.class);
+
+        // When/Then
+        assertThatThrownBy(() -> codecSerialiser.setCodec("zstd"))
+                .as("Check that an unsupported codec is rejected")
+                .isInstanceOf(IllegalArgumentException.class);
+        assertThatThrownBy(() -> codecSerialiser.setCodec("deflate-10"))
+                .as("Check that an unsupported compression level is rejected")
+                .isInstanceOf(IllegalArgumentException.class);
+    }
+
+    @Test
+    void testDeserialiseRangesReadsEachBlockOnce() throws IOException {
+        // Given a file of many blocks
+        var records = IntStream.range(0, 10_000)
+                .mapToObj(i -> new Record("record " + i))
+                .collect(Collectors.toList());
+        var bytes = new AvroSerialiser<>(Record.class).syncInterval(1024).serialise(records.stream()).readAllBytes();
+        var split = bytes.length / 3;
+
+        // When the file is read as three ranges, the first of which ends part way through a block
+        var ranges = List.of(
+                serialiser.deserialiseRange(new SeekableByteArrayInput(bytes), 0, split).collect(Collectors.toList()),
+                serialiser.deserialiseRange(new SeekableByteArrayInput(bytes), split, 2L * split).collect(Collectors.toList()),
+                serialiser.deserialiseRange(new SeekableByteArrayInput(bytes), 2L * split, bytes.length).collect(Collectors.toList()));
+
+        // Then
+        assertThat(ranges)
+                .as("Check each range contains some of the records")
+                .allSatisfy(range -> assertThat(range).isNotEmpty());
+        assertThat(ranges.stream().flatMap(List::stream).collect(Collectors.toList()))
+                .as("Check the ranges together contain every record exactly once, in order")
+                .isEqualTo(records);
+        assertThat(serialiser.deserialiseRange(new SeekableByteArrayInput(bytes), split, split))
+                .as("Check an empty range contains no records")
+                .isEmpty();
+    }
+
+    @Test
+    void testSingleObjectEncodingOmitsContainerHeader() throws IOException {
+        // Given
+        var records = List.of(new Record("record one"), new Record("record two"));
+        var singleObjectSerialiser = new AvroSerialiser<>(Record.class).encoding(AvroEncoding.SINGLE_OBJECT);
+
+        // When
+        var containerBytes = serialiser.serialise(records.stream()).readAllBytes();
+        var singleObjectBytes = singleObjectSerialiser.serialise(records.stream()).readAllBytes();
+
+        // Then
+        assertThat(singleObjectBytes)
+                .as("Check each record is written with the single-object marker and is smaller than a data file")
+                .startsWith((byte) 0xC3, (byte) 0x01)
+                .hasSizeLessThan(containerBytes.length / 4);
+        assertThat(singleObjectSerialiser.deserialise(new ByteArrayInputStream(singleObjectBytes)).collect(Collectors.toList()))
+                .as("Check the single-object encoded records can be deserialised")
+                .isEqualTo(records);
+    }
+
+    @Test
+    void testRawEncodingNegotiatedFromFormat() throws IOException {
+        // Given
+        var records = IntStream.range(0, 1_000)
+                .mapToObj(PrimitiveRecord::new)
+                .collect(Collectors.toList());
+        var primitiveSerialiser = new AvroSerialiser<>(PrimitiveRecord.class);
+        var format = "avro/binary; encoding=raw";
+
+        // When
+        var rawBytes = primitiveSerialiser.serialise(records.stream(), format).readAllBytes();
+        var singleObjectBytes = primitiveSerialiser.serialise(records.stream(), "avro/binary; encoding=single-object").readAllBytes();
+
+        // Then
+        assertThat(rawBytes)
+                .as("Check the raw encoding has no header before each record")
+                .hasSize(singleObjectBytes.length - records.size() * AvroMessages.HEADER_LENGTH);
+        assertThat(primitiveSerialiser.deserialise(new ByteArrayInputStream(rawBytes), format).collect(Collectors.toList()))
+                .as("Check the raw encoded records can be deserialised using the same format")
+                .isEqualTo(records);
+    }
+
+    @Test
+    void testSingleObjectWithDifferentSchemaIsRejected() throws IOException {
+        // Given records written with a different schema
+        var bytes = new AvroSerialiser<>(PrimitiveRecord.class)
+                .encoding(AvroEncoding.SINGLE_OBJECT)
+                .serialise(Stream.of(new PrimitiveRecord(1)))
+                .readAllBytes();
+        var singleObjectSerialiser = new AvroSerialiser<>(Record.class).encoding(AvroEncoding.SINGLE_OBJECT);
+
+        // When
+        var recordStream = singleObjectSerialiser.deserialise(new ByteArrayInputStream(bytes));
+
+        // Then
+        assertThatThrownBy(recordStream::count)
+                .as("Check records whose fingerprint does not match the domain class's schema are rejected")
+                .isInstanceOf(MissingSchemaException.class);
+    }
+
+    @Test
+    void testDeserialiseProjectionReadsOnlyGivenFields() {
+        // Given
+        var primitiveSerialiser = new AvroSerialiser<>(PrimitiveRecord.class);
+        var records = IntStream.range(0, 1_000)
+                .mapToObj(PrimitiveRecord::new)
+                .collect(Collectors.toList());
+        var projectedSerialiser = new AvroSerialiser<>(PrimitiveRecord.class).projection(Set.of("longField"));
+
+        // When
+        var perCall = primitiveSerialiser.deserialise(primitiveSerialiser.serialise(records.stream()), Set.of("intField", "stringField"));
+        var configured = projectedSerialiser.deserialise(primitiveSerialiser.serialise(records.stream()));
+
+        // Then
+        assertThat(perCall.collect(Collectors.toList()))
+                .as("Check only the requested fields were read")
+                .isEqualTo(records.stream()
+                        .map((PrimitiveRecord record) -> {
+                            var projected = new PrimitiveRecord();
+                            projected.intField = record.intField;
+                            projected.stringField = record.stringField;
+                            return projected;
+                        })
+                        .collect(Collectors.toList()));
+        assertThat(configured.collect(Collectors.toList()))
+                .as("Check only the configured fields were read")
+                .isEqualTo(records.stream()
+                        .map((PrimitiveRecord record) -> {
+                            var projected = new PrimitiveRecord();
+                            projected.longField = record.longField;
+                            return projected;
+                        })
+                        .collect(Collectors.toList()));
+    }
+
+    @Test
+    void testDeserialiseFilteredDecodesOnlyAcceptedRecords() {
+        // Given a file of many blocks, using a codec so that blocks are decompressed
+        var primitiveSerialiser = new AvroSerialiser<>(PrimitiveRecord.class).codec("deflate").syncInterval(1024);
+        var records = IntStream.range(0, 10_000)
+                .mapToObj(PrimitiveRecord::new)
+                .collect(Collectors.toList());
+        var filtered = new ArrayList<PrimitiveRecord>();
+
+        // When
+        var recordStream = primitiveSerialiser.deserialiseFiltered(primitiveSerialiser.serialise(records.stream()), Set.of("intField"),
+                (PrimitiveRecord record) -> {
+                    filtered.add(record);
+                    return record.intField % 97 == 0;
+                });
+
+        // Then
+        assertThat(recordStream.collect(Collectors.toList()))
+                .as("Check only the accepted records are returned, with every field decoded")
+                .isEqualTo(records.stream().filter(record -> record.intField % 97 == 0).collect(Collectors.toList()));
+        assertThat(filtered)
+                .as("Check the filter was given every record, decoded into one object with only the filter's fields")
+                .hasSize(records.size())
+                .allSatisfy(record -> assertThat(record.stringField).isNull())
+                .containsOnly(filtered.get(0));
+    }
+
+    @Test
+    void testProjectionOfUnknownFieldIsRejected() {
+        // Given
+        var projectedSerialiser = new AvroSerialiser<>(Record.class);
+
+        // When/Then
+        assertThatThrownBy(() -> projectedSerialiser.setProjection(Set.of("field", "unknownField")))
+                .as("Check that a projection of a field not in the schema is rejected")
+                .isInstanceOf(IllegalArgumentException.class)
+                .hasMessageContaining("unknownField");
+    }
+
+    @Test
+    void testReserialiseCopiesUnmodifiedBlocks() throws IOException {
+        // Given a file of many small blocks
+        var records = IntStream.range(0, 10_000)
+                .mapToObj(i -> new Record("record " + i))
+                .collect(Collectors.toList());
+        var serialised = new AvroSerialiser<>(Record.class)
+                .encodingParallelism(2)
+                .blockRecordCount(100)
+                .serialise(records.stream())
+                .readAllBytes();
+
+        // When the records are re-serialised without being modified
+        var reserialised = serialiser.reserialise(new ByteArrayInputStream(serialised), UnaryOperator.identity())
+                .readAllBytes();
+
+        // Then
+        assertThat(reserialised)
+                .as("Check the re-serialised file is the same size, since every block was copied")
+                .hasSameSizeAs(serialised);
+        assertThat(serialiser.deserialise(new ByteArrayInputStream(reserialised)).collect(Collectors.toList()))
+                .as("Check the re-serialised records match their original counterparts")
+                .isEqualTo(records);
+    }
+
+    @Test
+    void testReserialiseSkipsBlocksTheFunctionCannotModify() throws IOException {
+        // Given a file of blocks of 100 records, where only record 550 is to be redacted
+        var records = IntStream.range(0, 1_000)
+                .mapToObj(i -> new Record("record " + i))
+                .collect(Collectors.toList());
+        var serialised = new AvroSerialiser<>(Record.class)
+                .encodingParallelism(2)
+                .blockRecordCount(100)
+                .serialise(records.stream())
+                .readAllBytes();
+        var applied = new AtomicInteger();
+        UnaryOperator<Record> redaction = (Record record) -> {
+            applied.incrementAndGet();
+            return record.getField().equals("record 550") ? new Record("redacted") : record;
+        };
+
+        // When only the block holding that record is selected for redaction
+        var reserialised = serialiser.reserialise(new ByteArrayInputStream(serialised), redaction,
+                (long firstRecord, long recordCount) -> firstRecord <= 550 && 550 < firstRecord + recordCount);
+
+        // Then
+        assertThat(serialiser.deserialise(reserialised).collect(Collectors.toList()))
+                .as("Check the selected record was redacted, and every other record was copied")
+                .isEqualTo(records.stream()
+                        .map(record -> record.getField().equals("record 550") ? new Record("redacted") : record)
+                        .collect(Collectors.toList()));
+        assertThat(applied)
+                .as("Check the function was only applied to the records of the selected block")
+                .hasValue(100);
+    }
+
+    @Test
+    void testReserialiseAppliesFunction() throws IOException {
+        // Given a file of many small blocks
+        var records = IntStream.range(0, 1_000)
+                .mapToObj(i -> new Record("record " + i))
+                .collect(Collectors.toList());
+        var serialised = new AvroSerialiser<>(Record.class)
+                .encodingParallelism(2)
+                .blockRecordCount(100)
+                .serialise(records.stream());
+
+        // When some records are removed, and some are modified in-place
+        var reserialised = serialiser.reserialise(serialised, (Record record) -> {
+            if (record.getField().endsWith("0")) {
+                return null;
+            }
+            if (record.getField().endsWith("5")) {
+                record.setField("redacted");
+            }
+            return record;
+        });
+
+        // Then
+        var expected = records.stream()
+                .filter(record -> !record.getField().endsWith("0"))
+                .map(record -> record.getField().endsWith("5") ? new Record("redacted") : record)
+                .collect(Collectors.toList());
+        assertThat(serialiser.deserialise(reserialised).collect(Collectors.toList()))
+                .as("Check the function was applied to every re-serialised record")
+                .isEqualTo(expected);
+    }
+
+    @Test
+    void testGeneratedBackendMatchesReflectBackend() {
+        // Given
+        var reflectSerialiser = new AvroSerialiser<>(PrimitiveRecord.class);
+        var generatedSerialiser = new AvroSerialiser<>(PrimitiveRecord.class).datumBackend(DatumBackend.GENERATED);
+        var records = IntStream.range(0, 1_000)
+                .mapToObj(PrimitiveRecord::new)
+                .collect(Collectors.toList());
+
+        // When
+        var generatedToReflect = reflectSerialiser.deserialise(generatedSerialiser.serialise(records.stream()));
+        var reflectToGenerated = generatedSerialiser.deserialise(reflectSerialiser.serialise(records.stream()));
+
+        // Then
+        assertThat(GeneratedRecordCodec.forClass(PrimitiveRecord.class, reflectSerialiser.getSchema()))
+                .as("Check that a codec was generated for a class of primitives and strings")
+                .isPresent();
+        assertThat(generatedToReflect.collect(Collectors.toList()))
+                .as("Check the records written by the generated backend are read back by the reflect backend")
+                .isEqualTo(records);
+        assertThat(reflectToGenerated.collect(Collectors.toList()))
+                .as("Check the records written by the reflect backend are read back by the generated backend")
+                .isEqualTo(records);
+    }
+
+    @Test
+    void testGeneratedBackendFallsBackToReflection() {
+        // Given a class with a field the generated backend does not support
+        var generatedSerialiser = new AvroSerialiser<>(ListRecord.class).datumBackend(DatumBackend.GENERATED);
+        var records = List.of(new ListRecord(List.of("one", "two")), new ListRecord(List.of()));
+
+        // When
+        var recordStream = generatedSerialiser.deserialise(generatedSerialiser.serialise(records.stream()));
+
+        // Then
+        assertThat(GeneratedRecordCodec.forClass(ListRecord.class, generatedSerialiser.getSchema()))
+                .as("Check that no codec was generated for a class with a list field")
+                .isEmpty();
+        assertThat(recordStream.collect(Collectors.toList()))
+                .as("Check the records are still serialised and deserialised by reflection")
+                .isEqualTo(records);
+    }
+
+    @Test
+    void testSerialisersShareCachedSchemaAndReaders() {
+        // Given two serialisers for the same class, and two copies of the same writer schema parsed from different files
+        var otherSerialiser = new AvroSerialiser<>(Record.class);
+        var writerSchema = new Schema.Parser().parse(serialiser.getSchema().toString());
+        var otherWriterSchema = new Schema.Parser().parse(serialiser.getSchema().toString());
+        var reader = (DatumCache<Record>.CachingDatumReader) serialiser.createDatumReader();
+        var otherReader = (DatumCache<Record>.CachingDatumReader) otherSerialiser.createDatumReader();
+
+        // When
+        reader.setSchema(writerSchema);
+        otherReader.setSchema(otherWriterSchema);
+
+        // Then
+        assertThat(otherSerialiser.getSchema())
+                .as("Check the reflected schema is shared between serialisers")
+                .isSameAs(serialiser.getSchema());
+        assertThat(otherReader.getWriterSchema())
+                .as("Check the same instance of the writer schema is resolved against for equal writer schemas")
+                .isSameAs(reader.getWriterSchema());
+        assertThat(otherReader.getDelegate())
+                .as("Check each reader decodes with its own datum reader")
+                .isNotSameAs(reader.getDelegate());
+    }
+
+    @Test
+    void testConcurrentDeserialiseThroughSharedCache() throws IOException, InterruptedException, ExecutionException {
+        // Given many files of string fields, each with many small blocks, written with the same schema
+        var records = IntStream.range(0, 5_000)
+                .mapToObj(PrimitiveRecord::new)
+                .collect(Collectors.toList());
+        var primitiveSerialiser = new AvroSerialiser<>(PrimitiveRecord.class).blockRecordCount(50);
+        var dataFile = primitiveSerialiser.encodingParallelism(2).serialise(records.stream()).readAllBytes();
+        var parallelSerialiser = new AvroSerialiser<>(PrimitiveRecord.class).decodingParallelism(4);
+        var executor = Executors.newFixedThreadPool(4);
+
+        // When each file is decoded in parallel, on several threads at once, through the same cache
+        var decoding = new ArrayList<Future<List<PrimitiveRecord>>>();
+        for (var i = 0; i < 8; i++) {
+            decoding.add(executor.submit(() -> parallelSerialiser.deserialise(new ByteArrayInputStream(dataFile)).collect(Collectors.toList())));
+        }
+
+        // Then
+        for (var decoded : decoding) {
+            assertThat(decoded.get())
+                    .as("Check every file decoded concurrently returns all of its records intact")
+                    .isEqualTo(records);
+        }
+        executor.shutdown();
+    }
+
+    @Test
+    void testSerialisersShareEncoderPools() {
+        // Given two serialisers for the same class
+        var otherSerialiser = new AvroSerialiser<>(Record.class);
+
+        // When
+        var pool = serialiser.encoderPool("deflate");
+
+        // Then
+        assertThat(otherSerialiser.encoderPool("deflate"))
+                .as("Check the encoder pool is shared between serialisers with the same configuration")
+                .isSameAs(pool);
+        assertThat(otherSerialiser.encoderPool("snappy"))
+                .as("Check serialisers with different codecs use different encoder pools")
+                .isNotSameAs(pool);
+    }
+
+    @Test
+    void testPooledEncoderIsNotReusedAfterFailedStream() throws IOException {
+        // Given a stream which fails part way through a block
+        var failing = IntStream.range(0, 10_000).mapToObj((int i) -> {
+            if (i == 5_000) {
+                throw new IllegalStateException("Failed to read record " + i);
+            }
+            return new Record("failing " + i);
+        });
+        try (var inputStream = serialiser.serialise(failing)) {
+            assertThatThrownBy(inputStream::readAllBytes).isInstanceOf(IllegalStateException.class);
+        }
+        var records = List.of(new Record("record one"), new Record("record two"));
+
+        // When
+        var recordStream = serialiser.deserialise(serialiser.serialise(records.stream()));
+
+        // Then
+        assertThat(recordStream.collect(Collectors.toList()))
+                .as("Check no records from the failed stream are written to the next data file")
+                .isEqualTo(records);
+    }
+
+    @Test
+    void testConcurrentSerialiseRunsInParallel() {
+        // Given a serialiser with two threads, and two streams which can only complete if both are written concurrently
+        var executor = AvroSerialiser.newBoundedExecutor(2, 0);
+        var parallelSerialiser = new AvroSerialiser<>(Record.class, executor);
+        var barrier = new CyclicBarrier(2);
+        var records = List.of(new Record("record one"), new Record("record two"));
+
+        // When
+        var firstStream = parallelSerialiser.serialise(records.stream().peek(record -> await(barrier)));
+        var secondStream = parallelSerialiser.serialise(records.stream().peek(record -> await(barrier)));
+
+        // Then
+        assertThat(parallelSerialiser.deserialise(firstStream).collect(Collectors.toList()))
+                .as("Check the first stream was serialised alongside the second")
+                .isEqualTo(records);
+        assertThat(parallelSerialiser.deserialise(secondStream).collect(Collectors.toList()))
+                .as("Check the second stream was serialised alongside the first")
+                .isEqualTo(records);
+        executor.shutdown();
+    }
+
+    @Test
+    void testSerialiseRejectsWhenExecutorIsSaturated() {
+        // Given a serialiser with a single thread and no queue, which is busy serialising a stream
+        var executor = AvroSerialiser.newBoundedExecutor(1, 0);
+        var boundedSerialiser = new AvroSerialiser<>(Record.class, executor);
+        var latch = new CountDownLatch(1);
+        boundedSerialiser.serialise(Stream.of(new Record("blocked")).peek(record -> await(latch)));
+
+        // When a second stream is serialised
+        // Then it is rejected rather than waiting
+        assertThatThrownBy(() -> boundedSerialiser.serialise(Stream.of(new Record("rejected"))))
+                .as("Check that serialising beyond the executor's capacity is rejected")
+                .isInstanceOf(RejectedExecutionException.class);
+        latch.countDown();
+        executor.shutdown();
+    }
+
+    @Test
+    void testExecutorSerialiseFailureReachesReader() {
+        // Given a serialiser writing on an executor, and a stream which fails part way through
+        var executor = AvroSerialiser.newBoundedExecutor(1, 0);
+        var executorSerialiser = new AvroSerialiser<>(Record.class, executor);
+        var failing = IntStream.range(0, 1_000).mapToObj((int i) -> {
+            if (i == 500) {
+                throw new IllegalStateException("Failed to read record " + i);
+            }
+            return new Record("failing " + i);
+        });
+
+        // When
+        var inputStream = executorSerialiser.serialise(failing);
+
+        // Then
+        assertThatThrownBy(inputStream::readAllBytes)
+                .as("Check the writer's failure is thrown to the reader rather than ending the data file early")
+                .isInstanceOf(IOException.class)
+                .hasRootCauseInstanceOf(IllegalStateException.class);
+        executor.shutdown();
+    }
+
+    private static String codecOf(final byte[] dataFile) throws IOException {
+        try (var stream = new DataFileStream<>(new ByteArrayInputStream(dataFile), new GenericDatumReader<>())) {
+            return stream.getMetaString(DataFileConstants.CODEC);
+        }
+    }
+
+    private static void await(final CyclicBarrier barrier) {
+        try {
+            barrier.await(10, TimeUnit.SECONDS);
+        } catch (Exception e) {
+            throw new IllegalStateException("Streams were not serialised concurrently", e);
+        }
+    }
+
+    private static void await(final CountDownLatch latch) {
+        try {
+            latch.await(10, TimeUnit.SECONDS);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+}
@@ -0,0 +1,62 @@
+/*
+ * Copyright 2018-2021 Crown Copyright
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package uk.gov.gchq.palisade.service.data.parquet;
+
+import org.apache.parquet.io.DelegatingSeekableInputStream;
+import org.apache.parquet.io.InputFile;
+import org.apache.parquet.io.SeekableInputStream;
+
+import java.io.IOException;
+import java.nio.channels.Channels;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+
+/**
+ * An {@link InputFile} of a Parquet file on the local filesystem, read without Hadoop, so that only the footer and
+ * the column chunks which are needed are read from it.
+ */
+class LocalInputFile implements InputFile {
+    private final Path path;
+
+    LocalInputFile(final Path path) {
+        this.path = path;
+    }
+
+    @Override
+    public long getLength() throws IOException {
+        return Files.size(path);
+    }
+
+    @Override
+    public SeekableInputStream newStream() throws IOException {
+        FileChannel channel = FileChannel.open(path, StandardOpenOption.READ);
+        // The channel's stream is unbuffered, so the channel's position is always the position of the stream
+        return new DelegatingSeekableInputStream(Channels.newInputStream(channel)) {
+            @Override
+            public long getPos() throws IOException {
+                return channel.position();
+            }
+
+            @Override
+            public void seek(final long newPos) throws IOException {
+                channel.position(newPos);
+            }
+        };
+    }
+}
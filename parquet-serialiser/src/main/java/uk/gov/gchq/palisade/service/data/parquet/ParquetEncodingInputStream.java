@@ -0,0 +1,194 @@
+/*
+ * Copyright 2018-2021 Crown Copyright
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package uk.gov.gchq.palisade.service.data.parquet;
+
+import org.apache.parquet.hadoop.ParquetWriter;
+import org.apache.parquet.io.OutputFile;
+import org.apache.parquet.io.PositionOutputStream;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.Iterator;
+import java.util.stream.Stream;
+
+import static java.util.Objects.requireNonNull;
+
+/**
+ * An {@link InputStream} of a Parquet file, encoded lazily from a {@link Stream} of domain objects.
+ * No background thread is used, instead each time the reader drains the buffered bytes, records are pulled from the
+ * stream and written until the next row group has been flushed (or the stream is exhausted, when the footer is
+ * written). As such, the stream of objects is consumed on whichever thread is reading from this {@link InputStream}.
+ *
+ * @param <O> the domain object type
+ */
+class ParquetEncodingInputStream<O> extends InputStream {
+    private final WriterFactory<O> writers;
+    private final Stream<O> objects;
+    private final Iterator<O> iterator;
+    private final Buffer buffer = new Buffer();
+    private ParquetWriter<O> writer;
+    private int position;
+    private boolean finished;
+
+    /**
+     * Create a new {@link ParquetEncodingInputStream}, nothing will be read from the stream of objects until this
+     * {@link InputStream} is itself read.
+     *
+     * @param writers a factory for the writer, given the file it should write to
+     * @param objects the stream of domain objects to encode
+     */
+    ParquetEncodingInputStream(final WriterFactory<O> writers, final Stream<O> objects) {
+        this.writers = requireNonNull(writers, "writers is required");
+        this.objects = requireNonNull(objects, "objects is required");
+        this.iterator = objects.iterator();
+    }
+
+    @Override
+    public int read() throws IOException {
+        if (!ensureBuffered()) {
+            return -1;
+        }
+        return buffer.array()[position++] & 0xFF;
+    }
+
+    @Override
+    public int read(final byte[] bytes, final int offset, final int length) throws IOException {
+        if (length == 0) {
+            return 0;
+        }
+        if (!ensureBuffered()) {
+            return -1;
+        }
+        int count = Math.min(length, buffer.size() - position);
+        System.arraycopy(buffer.array(), position, bytes, offset, count);
+        position += count;
+        return count;
+    }
+
+    @Override
+    public int available() {
+        return buffer.size() - position;
+    }
+
+    @Override
+    public void close() throws IOException {
+        finished = true;
+        buffer.reset();
+        position = 0;
+        objects.close();
+    }
+
+    private boolean ensureBuffered() throws IOException {
+        while (position == buffer.size()) {
+            if (finished) {
+                return false;
+            }
+            buffer.reset();
+            position = 0;
+            nextRowGroup();
+        }
+        return true;
+    }
+
+    private void nextRowGroup() throws IOException {
+        if (writer == null) {
+            // The magic bytes are written as soon as the writer is created
+            writer = writers.create(new StreamOutputFile(buffer));
+        }
+        // The writer writes to the buffer each time a row group is flushed
+        while (buffer.size() == 0 && iterator.hasNext()) {
+            writer.write(iterator.next());
+        }
+        if (buffer.size() == 0) {
+            // Write out whatever remains as the final row group, followed by the footer
+            writer.close();
+            objects.close();
+            finished = true;
+        }
+    }
+
+    /**
+     * Creates the writer for the file, once this {@link InputStream} is first read.
+     *
+     * @param <O> the domain object type
+     */
+    @FunctionalInterface
+    interface WriterFactory<O> {
+        ParquetWriter<O> create(OutputFile output) throws IOException;
+    }
+
+    /**
+     * A {@link ByteArrayOutputStream} which allows reading back its contents without copying the array.
+     */
+    private static final class Buffer extends ByteArrayOutputStream {
+        byte[] array() {
+            return buf;
+        }
+    }
+
+    /**
+     * An {@link OutputFile} which writes to a stream, tracking its position in the file across any resets of the
+     * stream's buffer.
+     */
+    private static final class StreamOutputFile implements OutputFile {
+        private final ByteArrayOutputStream out;
+
+        StreamOutputFile(final ByteArrayOutputStream out) {
+            this.out = out;
+        }
+
+        @Override
+        public PositionOutputStream create(final long blockSizeHint) {
+            return new PositionOutputStream() {
+                private long pos;
+
+                @Override
+                public long getPos() {
+                    return pos;
+                }
+
+                @Override
+                public void write(final int b) {
+                    out.write(b);
+                    pos++;
+                }
+
+                @Override
+                public void write(final byte[] bytes, final int offset, final int length) {
+                    out.write(bytes, offset, length);
+                    pos += length;
+                }
+            };
+        }
+
+        @Override
+        public PositionOutputStream createOrOverwrite(final long blockSizeHint) {
+            return create(blockSizeHint);
+        }
+
+        @Override
+        public boolean supportsBlockSize() {
+            return false;
+        }
+
+        @Override
+        public long defaultBlockSize() {
+            return 0;
+        }
+    }
+}
@@ -0,0 +1,365 @@
+/*
+ * Copyright 2018-2021 Crown Copyright
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package uk.gov.gchq.palisade.service.data.parquet;
+
+import com.fasterxml.jackson.annotation.JsonCreator;
+import com.fasterxml.jackson.annotation.JsonProperty;
+import org.apache.avro.Schema;
+import org.apache.avro.reflect.ReflectData;
+import org.apache.hadoop.conf.Configuration;
+import org.apache.parquet.avro.AvroParquetReader;
+import org.apache.parquet.avro.AvroParquetWriter;
+import org.apache.parquet.avro.AvroReadSupport;
+import org.apache.parquet.filter2.compat.FilterCompat;
+import org.apache.parquet.filter2.predicate.FilterPredicate;
+import org.apache.parquet.hadoop.ParquetReader;
+import org.apache.parquet.hadoop.ParquetWriter;
+import org.apache.parquet.hadoop.metadata.CompressionCodecName;
+import org.apache.parquet.io.InputFile;
+import org.apache.parquet.io.OutputFile;
+
+import uk.gov.gchq.palisade.Generated;
+import uk.gov.gchq.palisade.data.serialise.Serialiser;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.UncheckedIOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Locale;
+import java.util.Set;
+import java.util.Spliterator;
+import java.util.Spliterators;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.function.Consumer;
+import java.util.stream.Stream;
+import java.util.stream.StreamSupport;
+
+import static java.util.Objects.nonNull;
+import static java.util.Objects.requireNonNull;
+
+/**
+ * A {@code ParquetSerialiser} is used to serialise and deserialise Parquet files.
+ * Converts a parquet {@link InputStream} to/from a {@link Stream} of domain objects ({@link O}s), using the same
+ * reflected Avro schema for the domain class as the Avro serialiser.
+ * <p>
+ * Since a Parquet file's metadata is written in a footer at its end, {@link #deserialise(InputStream)} must first
+ * copy the whole file to a temporary local file in the {@code spoolDirectory}, which is deleted as soon as every record
+ * has been read, or when the returned stream is closed if that is sooner. Where the file
+ * can be read directly, {@link #deserialise(InputFile, FilterPredicate)} reads only the footer and the column chunks
+ * which are needed.
+ * <p>
+ * Only the columns for the {@code projection} are read, and where a {@link FilterPredicate} is given, any row group
+ * whose column statistics show that none of its records can match is skipped without being read.
+ *
+ * @param <O> the domain object type
+ */
+// Suppress making serialiser class itself serialisable
+@SuppressWarnings({"java:S2057", "java:S1948"})
+public class ParquetSerialiser<O> implements Serialiser<O> {
+    private static final int DEFAULT_ROW_GROUP_SIZE = 8 << 20;
+
+    private final Class<O> domainClass;
+    private final Schema schema;
+    private Set<String> projection = Set.of();
+    private Schema readerSchema;
+    private CompressionCodecName codec = CompressionCodecName.UNCOMPRESSED;
+    private int rowGroupSize = DEFAULT_ROW_GROUP_SIZE;
+    private String spoolDirectory;
+
+    /**
+     * Constructor for the {@link ParquetSerialiser}
+     *
+     * @param domainClass the class for the serialiser
+     */
+    @JsonCreator
+    public ParquetSerialiser(@JsonProperty("domainClass") final Class<O> domainClass) {
+        requireNonNull(domainClass, "domainClass is required");
+        this.domainClass = domainClass;
+        this.schema = ReflectData.AllowNull.get().getSchema(domainClass);
+        this.readerSchema = schema;
+    }
+
+    /**
+     * Sets the top-level fields read by {@link #deserialise(InputStream)}, where any other columns are not read at all,
+     * and the fields of the domain objects which are not in the projection are left unset.
+     *
+     * @param projection the names of the top-level fields to read, or an empty set to read every field
+     * @return the current {@link ParquetSerialiser} object
+     * @throws IllegalArgumentException if any of the fields are not in the domain class's schema
+     */
+    @Generated
+    public ParquetSerialiser<O> projection(final Set<String> projection) {
+        this.setProjection(projection);
+        return this;
+    }
+
+    /**
+     * Sets the compression codec used for serialised files.
+     *
+     * @param codec the name of the codec, such as uncompressed, snappy or gzip
+     * @return the current {@link ParquetSerialiser} object
+     */
+    @Generated
+    public ParquetSerialiser<O> codec(final String codec) {
+        this.setCodec(codec);
+        return this;
+    }
+
+    /**
+     * Sets the approximate number of bytes in each row group of serialised files, each of which is buffered in memory
+     * before being written, so this bounds the memory used by each response. Larger row groups compress better and
+     * are read more efficiently.
+     *
+     * @param rowGroupSize the number of bytes after which a row group is written
+     * @return the current {@link ParquetSerialiser} object
+     */
+    @Generated
+    public ParquetSerialiser<O> rowGroupSize(final int rowGroupSize) {
+        this.setRowGroupSize(rowGroupSize);
+        return this;
+    }
+
+    /**
+     * Sets the directory to which {@link #deserialise(InputStream)} copies each Parquet file before reading it, which
+     * must be large enough to hold every file being read at once.
+     *
+     * @param spoolDirectory the path of the directory, or null to use the system's default temporary directory
+     * @return the current {@link ParquetSerialiser} object
+     */
+    @Generated
+    public ParquetSerialiser<O> spoolDirectory(final String spoolDirectory) {
+        this.setSpoolDirectory(spoolDirectory);
+        return this;
+    }
+
+    @Generated
+    public Set<String> getProjection() {
+        return projection;
+    }
+
+    @Generated
+    public void setProjection(final Set<String> projection) {
+        requireNonNull(projection);
+        this.readerSchema = project(projection);
+        this.projection = Set.copyOf(projection);
+    }
+
+    @Generated
+    public String getCodec() {
+        return codec.name().toLowerCase(Locale.ROOT);
+    }
+
+    @Generated
+    public void setCodec(final String codec) {
+        requireNonNull(codec);
+        this.codec = CompressionCodecName.valueOf(codec.trim().toUpperCase(Locale.ROOT));
+    }
+
+    @Generated
+    public int getRowGroupSize() {
+        return rowGroupSize;
+    }
+
+    @Generated
+    public void setRowGroupSize(final int rowGroupSize) {
+        if (rowGroupSize < 1) {
+            throw new IllegalArgumentException("rowGroupSize must be positive, but was " + rowGroupSize);
+        }
+        this.rowGroupSize = rowGroupSize;
+    }
+
+    @Generated
+    public String getSpoolDirectory() {
+        return spoolDirectory;
+    }
+
+    @Generated
+    public void setSpoolDirectory(final String spoolDirectory) {
+        this.spoolDirectory = spoolDirectory;
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public Stream<O> deserialise(final InputStream input) {
+        return deserialise(input, null);
+    }
+
+    /**
+     * Deserialise only the records of a Parquet file which match a filter, skipping any row group whose column
+     * statistics show that none of its records can match. The whole file is first copied to a temporary local file,
+     * which is deleted once every record has been read or the returned stream is closed, whichever is sooner.
+     *
+     * @param input  the Parquet file
+     * @param filter the filter over the file's columns, or null to read every record
+     * @return a stream of the matching records in the file
+     */
+    public Stream<O> deserialise(final InputStream input, final FilterPredicate filter) {
+        Path file = copyToLocalFile(input);
+        try {
+            return read(new LocalInputFile(file), filter, () -> deleteCopy(file));
+        } catch (RuntimeException e) {
+            deleteCopy(file);
+            throw e;
+        }
+    }
+
+    /**
+     * Deserialise only the records of a Parquet file which match a filter, reading only the file's footer and the
+     * column chunks for the projection of the row groups which may contain matching records.
+     *
+     * @param input  the Parquet file, such as a local or Hadoop file
+     * @param filter the filter over the file's columns, or null to read every record
+     * @return a stream of the matching records in the file
+     */
+    public Stream<O> deserialise(final InputFile input, final FilterPredicate filter) {
+        return read(input, filter, () -> {
+        });
+    }
+
+    /**
+     * Read the records of a Parquet file, closing the reader and then running {@code onRelease} once, as soon as the
+     * last record has been read or the stream is closed.
+     *
+     * @param input     the Parquet file
+     * @param filter    the filter over the file's columns, or null to read every record
+     * @param onRelease run once the reader has been closed, such as to delete a local copy of the file
+     * @return a stream of the matching records in the file
+     */
+    private Stream<O> read(final InputFile input, final FilterPredicate filter, final Runnable onRelease) {
+        Configuration conf = new Configuration(false);
+        AvroReadSupport.setRequestedProjection(conf, readerSchema);
+        AvroReadSupport.setAvroReadSchema(conf, readerSchema);
+        ParquetReader<O> reader;
+        try {
+            reader = AvroParquetReader.<O>builder(input)
+                    .withDataModel(ReflectData.AllowNull.get())
+                    .withConf(conf)
+                    .withFilter(nonNull(filter) ? FilterCompat.get(filter) : FilterCompat.NOOP)
+                    .build();
+        } catch (IOException e) {
+            throw new UncheckedIOException("An error occurred during deserialisaton", e);
+        }
+        AtomicBoolean open = new AtomicBoolean(true);
+        Runnable release = () -> {
+            if (open.compareAndSet(true, false)) {
+                try {
+                    reader.close();
+                } catch (IOException e) {
+                    throw new UncheckedIOException("Failed to close the input stream", e);
+                } finally {
+                    onRelease.run();
+                }
+            }
+        };
+        Spliterator<O> readerSpliterator = new Spliterators.AbstractSpliterator<>(Long.MAX_VALUE, Spliterator.ORDERED | Spliterator.NONNULL) {
+            @Override
+            public boolean tryAdvance(final Consumer<? super O> action) {
+                O next;
+                try {
+                    next = reader.read();
+                } catch (IOException e) {
+                    throw new UncheckedIOException("An error occurred during deserialisaton", e);
+                }
+                if (next == null) {
+                    release.run();
+                    return false;
+                }
+                action.accept(next);
+                return true;
+            }
+        };
+        return StreamSupport.stream(readerSpliterator, false)
+                .onClose(release);
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public InputStream serialise(final Stream<O> objects) {
+        if (nonNull(objects)) {
+            return new ParquetEncodingInputStream<>(this::createWriter, objects);
+        }
+        return InputStream.nullInputStream();
+    }
+
+    private Path copyToLocalFile(final InputStream input) {
+        try (input) {
+            Path file = nonNull(spoolDirectory)
+                    ? Files.createTempFile(Path.of(spoolDirectory), "palisade-", ".parquet")
+                    : Files.createTempFile("palisade-", ".parquet");
+            try {
+                Files.copy(input, file, StandardCopyOption.REPLACE_EXISTING);
+            } catch (IOException e) {
+                deleteCopy(file);
+                throw e;
+            }
+            return file;
+        } catch (IOException e) {
+            throw new UncheckedIOException("An error occurred during deserialisaton", e);
+        }
+    }
+
+    private static void deleteCopy(final Path file) {
+        try {
+            Files.deleteIfExists(file);
+        } catch (IOException e) {
+            throw new UncheckedIOException("Failed to delete the local copy of the input stream", e);
+        }
+    }
+
+    private ParquetWriter<O> createWriter(final OutputFile output) throws IOException {
+        return AvroParquetWriter.<O>builder(output)
+                .withSchema(schema)
+                .withDataModel(ReflectData.AllowNull.get())
+                .withConf(new Configuration(false))
+                .withCompressionCodec(codec)
+                .withRowGroupSize(rowGroupSize)
+                .build();
+    }
+
+    private Schema project(final Set<String> fields) {
+        if (fields.isEmpty()) {
+            return schema;
+        }
+        List<Schema.Field> pruned = new ArrayList<>(fields.size());
+        for (Schema.Field field : schema.getFields()) {
+            if (fields.contains(field.name())) {
+                Schema.Field copy = new Schema.Field(field.name(), field.schema(), field.doc(), field.defaultVal(), field.order());
+                field.getObjectProps().forEach(copy::addProp);
+                field.aliases().forEach(copy::addAlias);
+                pruned.add(copy);
+            }
+        }
+        if (pruned.size() != fields.size()) {
+            Set<String> unknown = new HashSet<>(fields);
+            schema.getFields().forEach(field -> unknown.remove(field.name()));
+            throw new IllegalArgumentException("Fields " + unknown + " are not in the schema of " + domainClass.getName());
+        }
+        // The projection keeps the same full name, so records are still read into the domain class
+        Schema projected = Schema.createRecord(schema.getName(), schema.getDoc(), schema.getNamespace(), schema.isError(), pruned);
+        schema.getObjectProps().forEach(projected::addProp);
+        return projected;
+    }
+}
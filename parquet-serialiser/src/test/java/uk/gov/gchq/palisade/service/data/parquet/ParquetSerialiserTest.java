@@ -0,0 +1,258 @@
+/*
+ * Copyright 2018-2021 Crown Copyright
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package uk.gov.gchq.palisade.service.data.parquet;
+
+import org.apache.parquet.filter2.predicate.FilterApi;
+import org.apache.parquet.io.DelegatingSeekableInputStream;
+import org.apache.parquet.io.InputFile;
+import org.apache.parquet.io.SeekableInputStream;
+import org.apache.parquet.io.api.Binary;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import uk.gov.gchq.palisade.Generated;
+
+import java.io.FilterInputStream;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.List;
+import java.util.Objects;
+import java.util.Set;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.stream.Collectors;
+import java.util.stream.LongStream;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+
+class ParquetSerialiserTest {
+    static class Reading {
+        private String sensor;
+        private long timestamp;
+
+        @SuppressWarnings("unused")
+        Reading() {
+            // Used for serialisation
+        }
+
+        Reading(final String sensor, final long timestamp) {
+            this.sensor = sensor;
+            this.timestamp = timestamp;
+        }
+
+        @Override
+        @Generated
+        public boolean equals(final Object o) {
+            if (this == o) {
+                return true;
+            }
+            if (!(o instanceof Reading)) {
+                return false;
+            }
+            final Reading reading = (Reading) o;
+            return timestamp == reading.timestamp &&
+                    Objects.equals(sensor, reading.sensor);
+        }
+
+        @Override
+        @Generated
+        public int hashCode() {
+            return Objects.hash(sensor, timestamp);
+        }
+    }
+
+    /**
+     * An {@link InputFile} which counts the bytes read from it.
+     */
+    static class CountingInputFile implements InputFile {
+        private final InputFile file;
+        private final AtomicLong bytesRead = new AtomicLong();
+
+        CountingInputFile(final InputFile file) {
+            this.file = file;
+        }
+
+        @Override
+        public long getLength() throws IOException {
+            return file.getLength();
+        }
+
+        @Override
+        public SeekableInputStream newStream() throws IOException {
+            SeekableInputStream stream = file.newStream();
+            return new DelegatingSeekableInputStream(new FilterInputStream(stream) {
+                @Override
+                public int read() throws IOException {
+                    int b = super.read();
+                    bytesRead.addAndGet(b < 0 ? 0 : 1);
+                    return b;
+                }
+
+                @Override
+                public int read(final byte[] b, final int off, final int len) throws IOException {
+                    int count = super.read(b, off, len);
+                    bytesRead.addAndGet(Math.max(count, 0));
+                    return count;
+                }
+            }) {
+                @Override
+                public long getPos() throws IOException {
+                    return stream.getPos();
+                }
+
+                @Override
+                public void seek(final long newPos) throws IOException {
+                    stream.seek(newPos);
+                }
+            };
+        }
+    }
+
+    ParquetSerialiser<Reading> serialiser = new ParquetSerialiser<>(Reading.class);
+
+    private static List<Reading> readings(final long count) {
+        return LongStream.range(0, count)
+                .mapToObj(timestamp -> new Reading("sensor " + timestamp % 10, timestamp))
+                .collect(Collectors.toList());
+    }
+
+    @Test
+    void testSerialiseAndDeserialise() {
+        // Given
+        var readings = List.of(new Reading("sensor one", 1L), new Reading("sensor two", 2L));
+
+        // When
+        var inputStream = serialiser.serialise(readings.stream());
+        var readingStream = serialiser.deserialise(inputStream);
+
+        // Then
+        assertThat(readingStream.collect(Collectors.toList()))
+                .as("Check the serialised-deserialised records match their original counterparts")
+                .isEqualTo(readings);
+    }
+
+    @Test
+    void testProjectionLeavesOtherFieldsUnset() {
+        // Given
+        var readings = List.of(new Reading("sensor one", 1L), new Reading("sensor two", 2L));
+        var projectedSerialiser = new ParquetSerialiser<>(Reading.class).projection(Set.of("timestamp"));
+
+        // When
+        var readingStream = projectedSerialiser.deserialise(serialiser.codec("snappy").serialise(readings.stream()));
+
+        // Then
+        assertThat(readingStream.collect(Collectors.toList()))
+                .as("Check only the projected column was read")
+                .containsExactly(new Reading(null, 1L), new Reading(null, 2L));
+    }
+
+    @Test
+    void testProjectionOfUnknownFieldIsRejected() {
+        // When
+        var projection = Set.of("timestamp", "location");
+
+        // Then
+        assertThatThrownBy(() -> serialiser.projection(projection))
+                .as("Check a projection of a field not in the schema is rejected")
+                .isInstanceOf(IllegalArgumentException.class)
+                .hasMessageContaining("location");
+    }
+
+    @Test
+    void testFilterSkipsRowGroupsOfLocalFile(@TempDir final Path directory) throws IOException {
+        // Given a local file of many small row groups, ordered by timestamp
+        var readings = readings(10_000);
+        var file = directory.resolve("readings.parquet");
+        Files.copy(serialiser.rowGroupSize(1024).serialise(readings.stream()), file);
+        var unfilteredFile = new CountingInputFile(new LocalInputFile(file));
+        var filteredFile = new CountingInputFile(new LocalInputFile(file));
+
+        // When
+        var allReadings = serialiser.deserialise(unfilteredFile, null).collect(Collectors.toList());
+        var recentReadings = serialiser.deserialise(filteredFile, FilterApi.gtEq(FilterApi.longColumn("timestamp"), 9_900L))
+                .collect(Collectors.toList());
+
+        // Then
+        assertThat(allReadings)
+                .as("Check every record is returned without a filter")
+                .isEqualTo(readings);
+        assertThat(recentReadings)
+                .as("Check only the records matching the filter are returned")
+                .isEqualTo(readings.subList(9_900, 10_000));
+        assertThat(filteredFile.bytesRead.get())
+                .as("Check the row groups whose statistics cannot match the filter were not read")
+                .isLessThan(unfilteredFile.bytesRead.get() / 4);
+    }
+
+    @Test
+    void testFilterOfInputStreamDeletesLocalCopyOnClose() throws IOException {
+        // Given
+        var readings = readings(100);
+        var inputStream = serialiser.serialise(readings.stream());
+        var filter = FilterApi.eq(FilterApi.binaryColumn("sensor"), Binary.fromString("sensor 3"));
+        var tempFiles = tempFiles();
+
+        // When
+        List<Reading> matching;
+        try (var readingStream = serialiser.deserialise(inputStream, filter)) {
+            matching = readingStream.collect(Collectors.toList());
+        }
+
+        // Then
+        assertThat(matching)
+                .as("Check only the records matching the filter are returned")
+                .extracting(reading -> reading.timestamp)
+                .containsExactly(3L, 13L, 23L, 33L, 43L, 53L, 63L, 73L, 83L, 93L);
+        assertThat(tempFiles())
+                .as("Check the local copy of the input stream was deleted")
+                .isSubsetOf(tempFiles);
+    }
+
+    @Test
+    void testInputStreamIsSpooledToDirectoryAndDeletedOnceDrained(@TempDir final Path directory) throws IOException {
+        // Given a serialiser spooling input streams to a directory of its own
+        var readings = readings(100);
+        var spoolingSerialiser = new ParquetSerialiser<>(Reading.class).spoolDirectory(directory.toString());
+        var readingStream = spoolingSerialiser.deserialise(spoolingSerialiser.serialise(readings.stream()));
+        List<Path> spooled;
+        try (var files = Files.list(directory)) {
+            spooled = files.collect(Collectors.toList());
+        }
+
+        // When every record is read, without the stream being closed
+        var allReadings = readingStream.collect(Collectors.toList());
+
+        // Then
+        assertThat(allReadings)
+                .as("Check every record is returned")
+                .isEqualTo(readings);
+        assertThat(spooled)
+                .as("Check the input stream was copied to the spool directory")
+                .hasSize(1);
+        assertThat(spooled.get(0))
+                .as("Check the local copy was deleted once every record was read")
+                .doesNotExist();
+    }
+
+    private static Set<Path> tempFiles() throws IOException {
+        try (var files = Files.list(Path.of(System.getProperty("java.io.tmpdir")))) {
+            return files.filter(file -> file.getFileName().toString().endsWith(".parquet"))
+                    .collect(Collectors.toSet());
+        }
+    }
+}
@@ -0,0 +1,117 @@
+/*
+ * Copyright 2018-2021 Crown Copyright
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package uk.gov.gchq.palisade.service.data.s3;
+
+import akka.stream.alpakka.s3.BucketAccess;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.time.Duration;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionStage;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.function.Function;
+import java.util.function.LongSupplier;
+
+import static java.util.Objects.requireNonNull;
+
+/**
+ * A cache of the results of bucket-existence checks, so that reading an object does not first need a HEAD-bucket
+ * request every time. A bucket found to be accessible is cached for the {@code ttl}, while a bucket found to be
+ * inaccessible or missing is cached for the (usually much shorter) {@code negativeTtl}. A check which fails with an
+ * error is not cached at all. Concurrent lookups of the same bucket share a single check.
+ */
+class BucketAccessCache {
+    private static final Logger LOGGER = LoggerFactory.getLogger(BucketAccessCache.class);
+
+    private final Map<String, Entry> entries = new ConcurrentHashMap<>();
+    private final long ttlNanos;
+    private final long negativeTtlNanos;
+    private final Function<String, CompletionStage<BucketAccess>> check;
+    private final LongSupplier nanoClock;
+
+    /**
+     * Create a new cache of bucket-existence checks.
+     *
+     * @param ttl         how long a bucket found to be accessible is cached, where zero disables caching
+     * @param negativeTtl how long a bucket found to be inaccessible or missing is cached, where zero disables caching
+     * @param check       the check of a bucket against S3
+     * @param nanoClock   the source of the current time in nanoseconds, such as {@link System#nanoTime()}
+     */
+    BucketAccessCache(final Duration ttl, final Duration negativeTtl, final Function<String, CompletionStage<BucketAccess>> check, final LongSupplier nanoClock) {
+        this.ttlNanos = requireNonNull(ttl, "ttl is required").toNanos();
+        this.negativeTtlNanos = requireNonNull(negativeTtl, "negativeTtl is required").toNanos();
+        this.check = requireNonNull(check, "check is required");
+        this.nanoClock = requireNonNull(nanoClock, "nanoClock is required");
+    }
+
+    /**
+     * Get the access to a bucket, checking it against S3 only if there is no unexpired result for it.
+     *
+     * @param bucketName the name of the bucket
+     * @return the access to the bucket
+     */
+    CompletionStage<BucketAccess> get(final String bucketName) {
+        long now = nanoClock.getAsLong();
+        Entry created = new Entry();
+        Entry entry = entries.compute(bucketName, (String name, Entry existing) ->
+                existing != null && !existing.isExpired(now) ? existing : created);
+        // Only the lookup which created the entry runs the check
+        if (entry == created) {
+            LOGGER.debug("Checking access to bucket '{}'", bucketName);
+            // Composing the check captures any exception it throws, rather than leaving the entry incomplete
+            CompletableFuture.completedFuture(bucketName).thenCompose(check).whenComplete((BucketAccess access, Throwable error) -> {
+                if (error != null) {
+                    // Errors may be transient, so are retried by the next read
+                    entries.remove(bucketName, entry);
+                    entry.access.completeExceptionally(error);
+                } else {
+                    long ttl = access == BucketAccess.accessGranted() ? ttlNanos : negativeTtlNanos;
+                    entry.expiresAt = nanoClock.getAsLong() + ttl;
+                    entry.access.complete(access);
+                }
+            });
+        }
+        return entry.access;
+    }
+
+    /**
+     * Remove any result cached for a bucket, such as when reading an object from it was forbidden, so that the next
+     * read checks the bucket again.
+     *
+     * @param bucketName the name of the bucket
+     */
+    void invalidate(final String bucketName) {
+        if (entries.remove(bucketName) != null) {
+            LOGGER.debug("Invalidated cached access to bucket '{}'", bucketName);
+        }
+    }
+
+    /**
+     * The result of a check, and when it expires once complete.
+     */
+    private static final class Entry {
+        private final CompletableFuture<BucketAccess> access = new CompletableFuture<>();
+        private volatile long expiresAt;
+
+        boolean isExpired(final long now) {
+            // A check still in progress never expires
+            return access.isDone() && now - expiresAt >= 0;
+        }
+    }
+}
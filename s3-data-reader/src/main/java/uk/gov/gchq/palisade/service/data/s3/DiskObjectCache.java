@@ -0,0 +1,291 @@
+/*
+ * Copyright 2018-2021 Crown Copyright
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package uk.gov.gchq.palisade.service.data.s3;
+
+import akka.Done;
+import akka.NotUsed;
+import akka.stream.ActorAttributes;
+import akka.stream.javadsl.Flow;
+import akka.stream.javadsl.Source;
+import akka.stream.javadsl.StreamConverters;
+import akka.util.ByteString;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.Channels;
+import java.nio.channels.FileChannel;
+import java.nio.file.DirectoryStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.Optional;
+import java.util.UUID;
+import java.util.concurrent.CompletionStage;
+import java.util.function.Supplier;
+
+import static java.util.Objects.requireNonNull;
+
+/**
+ * A cache of whole S3 objects in files on the local disk, keyed by bucket and key, and holding the ETag of the version
+ * of each object it has cached. Once the files total more than the {@code maxBytes} budget, the least recently used are
+ * evicted. The index of files is held only in memory, so any files left by a previous run are deleted on creation.
+ * <p>
+ * Cache hits are read back through a {@link FileChannel}, rather than being held in memory. The channel is opened only
+ * once the read is run, and only while the entry is still in the index, so an entry evicted while it is being read is
+ * deleted only once the read is done. Files are written as the object is read, on the blocking IO dispatcher so that
+ * disk writes never hold up the dispatcher running the download, though each chunk is passed on only once it has been
+ * written. A failure to write the file never fails the read it is copied from: the object is simply not cached.
+ */
+class DiskObjectCache {
+    private static final Logger LOGGER = LoggerFactory.getLogger(DiskObjectCache.class);
+    private static final String SUFFIX = ".s3cache";
+
+    private final Path directory;
+    private final long maxBytes;
+    // Access-ordered, so that iteration starts with the least recently used entry
+    private final Map<String, Entry> entries = new LinkedHashMap<>(16, 0.75f, true);
+    private long totalBytes;
+
+    /**
+     * Create a new cache in a directory, which is created if it does not exist.
+     *
+     * @param directory the directory holding the cached objects
+     * @param maxBytes  the maximum total size of the cached objects
+     */
+    DiskObjectCache(final Path directory, final long maxBytes) {
+        this.directory = requireNonNull(directory, "directory is required");
+        this.maxBytes = maxBytes;
+        try {
+            Files.createDirectories(directory);
+            try (DirectoryStream<Path> stale = Files.newDirectoryStream(directory, "*" + SUFFIX)) {
+                for (Path file : stale) {
+                    Files.delete(file);
+                }
+            }
+        } catch (IOException e) {
+            throw new UncheckedIOException("Failed to create the S3 object cache in " + directory, e);
+        }
+    }
+
+    /**
+     * Get the cached copy of an object, marking it as recently used.
+     *
+     * @param bucketName the bucket holding the object
+     * @param objectKey  the key of the object
+     * @return the cached copy of the object, if there is one
+     */
+    synchronized Optional<Entry> get(final String bucketName, final String objectKey) {
+        return Optional.ofNullable(entries.get(cacheKey(bucketName, objectKey)));
+    }
+
+    /**
+     * Read the content of a cached object from its file, or from elsewhere if it is no longer cached. Nothing is opened
+     * until the returned {@link Source} is run, at which point the entry is checked to still be cached.
+     *
+     * @param bucketName the bucket holding the object
+     * @param objectKey  the key of the object
+     * @param entry      the cached copy of the object, as returned by {@link #get(String, String)}
+     * @param uncached   the content of the object to read instead if the entry has since been evicted or replaced
+     * @return the content of the object
+     */
+    Source<ByteString, NotUsed> read(final String bucketName, final String objectKey, final Entry entry, final Supplier<Source<ByteString, NotUsed>> uncached) {
+        return Source.lazySource(() -> open(bucketName, objectKey, entry)
+                .map((FileChannel channel) -> StreamConverters.fromInputStream(() -> Channels.newInputStream(channel))
+                        .mapMaterializedValue(ioResult -> NotUsed.notUsed()))
+                .orElseGet(uncached))
+                .mapMaterializedValue(notUsed -> NotUsed.notUsed());
+    }
+
+    /**
+     * Copy the content of an object to a new file as it is read, which then replaces any older copy of the object once
+     * the whole object has been read. Objects without an ETag, or larger than the whole cache, are not cached.
+     * Any error writing the file is logged and stops the object being cached, but never fails or shortens the content.
+     *
+     * @param bucketName the bucket holding the object
+     * @param objectKey  the key of the object
+     * @param eTag       the ETag of the downloaded version of the object, if it has one
+     * @param size       the size of the object in bytes
+     * @param content    the content of the downloaded object
+     * @return the content of the object, also written to the cache
+     */
+    Source<ByteString, NotUsed> write(final String bucketName, final String objectKey, final Optional<String> eTag, final long size, final Source<ByteString, NotUsed> content) {
+        if (eTag.isEmpty() || size > maxBytes) {
+            return content;
+        }
+        CacheFile cacheFile = new CacheFile(cacheKey(bucketName, objectKey), new Entry(eTag.get(), directory.resolve(UUID.randomUUID() + SUFFIX), size));
+        return content
+                .via(Flow.of(ByteString.class)
+                        .map(cacheFile::write)
+                        .async(ActorAttributes.IODispatcher().dispatcher()))
+                .watchTermination((NotUsed notUsed, CompletionStage<Done> done) -> {
+                    done.whenComplete((Done result, Throwable error) -> cacheFile.finish(error == null));
+                    return NotUsed.notUsed();
+                });
+    }
+
+    /**
+     * Remove the cached copy of an object, such as when it has been deleted from S3.
+     *
+     * @param bucketName the bucket holding the object
+     * @param objectKey  the key of the object
+     */
+    void remove(final String bucketName, final String objectKey) {
+        Entry removed;
+        synchronized (this) {
+            removed = entries.remove(cacheKey(bucketName, objectKey));
+            if (removed != null) {
+                totalBytes -= removed.size;
+            }
+        }
+        if (removed != null) {
+            delete(removed.file);
+        }
+    }
+
+    private synchronized Optional<FileChannel> open(final String bucketName, final String objectKey, final Entry entry) {
+        if (entries.get(cacheKey(bucketName, objectKey)) != entry) {
+            return Optional.empty();
+        }
+        try {
+            return Optional.of(FileChannel.open(entry.file, StandardOpenOption.READ));
+        } catch (IOException e) {
+            LOGGER.warn("Failed to open cached S3 object {}", entry.file, e);
+            return Optional.empty();
+        }
+    }
+
+    private void put(final String cacheKey, final Entry entry) {
+        Entry replaced;
+        Map<String, Entry> evicted = new LinkedHashMap<>();
+        synchronized (this) {
+            replaced = entries.put(cacheKey, entry);
+            totalBytes += entry.size - (replaced != null ? replaced.size : 0);
+            Iterator<Map.Entry<String, Entry>> leastRecentlyUsed = entries.entrySet().iterator();
+            while (totalBytes > maxBytes && leastRecentlyUsed.hasNext()) {
+                Map.Entry<String, Entry> eldest = leastRecentlyUsed.next();
+                totalBytes -= eldest.getValue().size;
+                evicted.put(eldest.getKey(), eldest.getValue());
+                leastRecentlyUsed.remove();
+            }
+        }
+        if (replaced != null) {
+            delete(replaced.file);
+        }
+        evicted.forEach((String evictedKey, Entry evictedEntry) -> {
+            LOGGER.debug("Evicted '{}' of {} bytes from the S3 object cache", evictedKey, evictedEntry.size);
+            delete(evictedEntry.file);
+        });
+    }
+
+    private static String cacheKey(final String bucketName, final String objectKey) {
+        return bucketName + "/" + objectKey;
+    }
+
+    private static void delete(final Path file) {
+        try {
+            Files.deleteIfExists(file);
+        } catch (IOException e) {
+            LOGGER.warn("Failed to delete cached S3 object {}", file, e);
+        }
+    }
+
+    /**
+     * A file being written with the content of an object as it is read, which is abandoned on the first error.
+     */
+    private final class CacheFile {
+        private final String cacheKey;
+        private final Entry entry;
+        private FileChannel channel;
+        private long written;
+        private boolean failed;
+
+        CacheFile(final String cacheKey, final Entry entry) {
+            this.cacheKey = cacheKey;
+            this.entry = entry;
+        }
+
+        ByteString write(final ByteString bytes) {
+            if (!failed) {
+                try {
+                    FileChannel open = open();
+                    for (ByteBuffer buffer : bytes.getByteBuffers()) {
+                        while (buffer.hasRemaining()) {
+                            written += open.write(buffer);
+                        }
+                    }
+                } catch (IOException e) {
+                    LOGGER.warn("Failed to write {} to the S3 object cache, so it will not be cached", cacheKey, e);
+                    failed = true;
+                }
+            }
+            return bytes;
+        }
+
+        void finish(final boolean completed) {
+            // A download which failed or was cancelled leaves a partial file
+            boolean complete = completed && !failed && written == entry.size;
+            try {
+                if (complete) {
+                    // An empty object is never written to, so its file is created here
+                    open().close();
+                } else if (channel != null) {
+                    channel.close();
+                }
+            } catch (IOException e) {
+                LOGGER.warn("Failed to write {} to the S3 object cache, so it will not be cached", cacheKey, e);
+                complete = false;
+            }
+            if (complete) {
+                put(cacheKey, entry);
+            } else {
+                delete(entry.file);
+            }
+        }
+
+        private FileChannel open() throws IOException {
+            if (channel == null) {
+                channel = FileChannel.open(entry.file, StandardOpenOption.CREATE_NEW, StandardOpenOption.WRITE);
+            }
+            return channel;
+        }
+    }
+
+    /**
+     * A cached copy of an object, and the ETag of the version it is a copy of.
+     */
+    static final class Entry {
+        private final String eTag;
+        private final Path file;
+        private final long size;
+
+        Entry(final String eTag, final Path file, final long size) {
+            this.eTag = eTag;
+            this.file = file;
+            this.size = size;
+        }
+
+        String getETag() {
+            return eTag;
+        }
+    }
+}
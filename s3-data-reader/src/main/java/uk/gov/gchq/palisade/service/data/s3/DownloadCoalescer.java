@@ -0,0 +1,180 @@
+/*
+ * Copyright 2018-2021 Crown Copyright
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package uk.gov.gchq.palisade.service.data.s3;
+
+import akka.Done;
+import akka.NotUsed;
+import akka.japi.Pair;
+import akka.stream.KillSwitches;
+import akka.stream.Materializer;
+import akka.stream.UniqueKillSwitch;
+import akka.stream.javadsl.BroadcastHub;
+import akka.stream.javadsl.Keep;
+import akka.stream.javadsl.Sink;
+import akka.stream.javadsl.Source;
+import akka.util.ByteString;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CompletionStage;
+import java.util.function.Supplier;
+
+import static java.util.Objects.requireNonNull;
+
+/**
+ * Coalesces concurrent downloads of the same object into a single download, whose content is fanned out to every
+ * reader through a {@link BroadcastHub}. The hub buffers at most {@code bufferSize} chunks, so the shared download
+ * proceeds at the pace of its slowest reader.
+ * <p>
+ * A reader joining once the shared download has already passed its first chunk would miss the start of the object, so
+ * instead reads the object with a download of its own. The shared download is stopped once every reader has left, and
+ * any reader arriving after it has finished starts a new download.
+ */
+class DownloadCoalescer {
+    private static final Logger LOGGER = LoggerFactory.getLogger(DownloadCoalescer.class);
+    private static final int MAX_BUFFER_SIZE = 4095;
+
+    // Guarded by this
+    private final Map<String, Flight> flights = new HashMap<>();
+    private final Materializer materialiser;
+    private final int bufferSize;
+
+    /**
+     * Create a new coalescer of downloads.
+     *
+     * @param materialiser the materialiser running the shared downloads
+     * @param bufferSize   the number of chunks buffered for the readers of a shared download, which must be a power of two
+     */
+    DownloadCoalescer(final Materializer materialiser, final int bufferSize) {
+        if (bufferSize < 1 || bufferSize > MAX_BUFFER_SIZE || Integer.bitCount(bufferSize) != 1) {
+            throw new IllegalArgumentException("bufferSize must be a power of two less than 4096, but was " + bufferSize);
+        }
+        this.materialiser = requireNonNull(materialiser, "materialiser is required");
+        this.bufferSize = bufferSize;
+    }
+
+    /**
+     * Read an object, sharing any download of it already in progress, or otherwise starting a new download which later
+     * readers may share. This must be called when the reader's stream is run, rather than when it is created.
+     *
+     * @param objectId the identity of the object, such as its bucket and key
+     * @param download the download of the object, which is run at most once for each call
+     * @return the content of the object
+     */
+    Source<ByteString, NotUsed> read(final String objectId, final Supplier<Source<ByteString, NotUsed>> download) {
+        Flight flight;
+        boolean started;
+        synchronized (this) {
+            flight = flights.get(objectId);
+            started = flight == null || !flight.join();
+            if (started) {
+                flight = start(objectId, download.get());
+            } else {
+                LOGGER.debug("Joining the download of '{}' already in progress", objectId);
+            }
+        }
+        Flight joined = flight;
+        Source<Pair<ByteString, Long>, NotUsed> chunks = joined.hub
+                .watchTermination((NotUsed notUsed, CompletionStage<Done> done) -> {
+                    done.whenComplete((ignored, error) -> leave(objectId, joined));
+                    return notUsed;
+                });
+        if (started) {
+            // The hub holds every chunk until its first reader attaches, so the reader starting it sees the whole object
+            return chunks.map(Pair::first);
+        }
+        return chunks
+                .prefixAndTail(1)
+                .flatMapConcat((Pair<List<Pair<ByteString, Long>>, Source<Pair<ByteString, Long>, NotUsed>> prefixAndTail) -> {
+                    List<Pair<ByteString, Long>> prefix = prefixAndTail.first();
+                    if (!prefix.isEmpty() && prefix.get(0).second() == 0L) {
+                        return Source.from(prefix).concat(prefixAndTail.second()).map(Pair::first);
+                    }
+                    // The download had already passed the start of the object, or finished, before this reader attached
+                    LOGGER.debug("Joined the download of '{}' too late, so downloading it separately", objectId);
+                    prefixAndTail.second().runWith(Sink.cancelled(), materialiser);
+                    return download.get();
+                });
+    }
+
+    private Flight start(final String objectId, final Source<ByteString, NotUsed> download) {
+        LOGGER.debug("Starting a shared download of '{}'", objectId);
+        Flight flight = new Flight();
+        // Each chunk is numbered, so that a reader can tell whether it has seen the start of the object
+        Pair<UniqueKillSwitch, Source<Pair<ByteString, Long>, NotUsed>> running = download
+                .zipWithIndex()
+                .viaMat(KillSwitches.single(), Keep.right())
+                .watchTermination((UniqueKillSwitch killSwitch, CompletionStage<Done> done) -> {
+                    done.whenComplete((ignored, error) -> finish(objectId, flight));
+                    return killSwitch;
+                })
+                .toMat(BroadcastHub.of(chunkClass(), bufferSize), Keep.both())
+                .run(materialiser);
+        flight.killSwitch = running.first();
+        flight.hub = running.second();
+        flights.put(objectId, flight);
+        return flight;
+    }
+
+    private synchronized void finish(final String objectId, final Flight flight) {
+        // Readers already joined still receive the rest of the buffer, but any new reader starts a new download
+        flight.closed = true;
+        flights.remove(objectId, flight);
+    }
+
+    private void leave(final String objectId, final Flight flight) {
+        boolean abandoned;
+        synchronized (this) {
+            flight.readers--;
+            abandoned = flight.readers == 0 && !flight.closed;
+            if (abandoned) {
+                flight.closed = true;
+                flights.remove(objectId, flight);
+            }
+        }
+        if (abandoned) {
+            LOGGER.debug("Every reader of '{}' has left, so stopping its shared download", objectId);
+            flight.killSwitch.shutdown();
+        }
+    }
+
+    @SuppressWarnings("unchecked")
+    private static Class<Pair<ByteString, Long>> chunkClass() {
+        return (Class<Pair<ByteString, Long>>) (Class<?>) Pair.class;
+    }
+
+    /**
+     * A shared download, and the number of readers still reading it.
+     */
+    private static final class Flight {
+        private Source<Pair<ByteString, Long>, NotUsed> hub;
+        private UniqueKillSwitch killSwitch;
+        private int readers = 1;
+        private boolean closed;
+
+        boolean join() {
+            if (closed) {
+                return false;
+            }
+            readers++;
+            return true;
+        }
+    }
+}
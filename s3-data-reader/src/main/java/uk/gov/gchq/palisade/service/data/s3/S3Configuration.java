@@ -19,6 +19,7 @@ package uk.gov.gchq.palisade.service.data.s3;
 import akka.stream.Materializer;
 import org.springframework.boot.autoconfigure.condition.ConditionalOnClass;
 import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.boot.context.properties.EnableConfigurationProperties;
 import org.springframework.context.annotation.Bean;
 import org.springframework.context.annotation.Configuration;
 
@@ -31,17 +32,19 @@ import static uk.gov.gchq.palisade.service.data.s3.S3Properties.S3_PREFIX;
  */
 @Configuration
 @ConditionalOnClass(DataReader.class)
+@EnableConfigurationProperties(S3Properties.class)
 public class S3Configuration {
 
     /**
      * Bean implementation for {@link S3DataReader} which is used for setting s3Configurations and reading available resources.
      *
+     * @param properties   the properties configuring how objects are read from S3
      * @param materialiser the materialiser
      * @return a new instance of {@link S3DataReader}
      */
     @Bean
     @ConditionalOnProperty(prefix = "data", name = "implementation", havingValue = S3_PREFIX)
-    DataReader s3DataReader(final Materializer materialiser) {
-        return new S3DataReader(materialiser);
+    DataReader s3DataReader(final S3Properties properties, final Materializer materialiser) {
+        return new S3DataReader(properties, materialiser);
     }
 }
@@ -18,10 +18,15 @@ package uk.gov.gchq.palisade.service.data.s3;
 
 import akka.Done;
 import akka.NotUsed;
+import akka.http.javadsl.model.StatusCodes;
+import akka.http.javadsl.model.headers.ByteRange;
 import akka.japi.Pair;
+import akka.japi.pf.PFBuilder;
 import akka.stream.Materializer;
 import akka.stream.alpakka.s3.BucketAccess;
 import akka.stream.alpakka.s3.ObjectMetadata;
+import akka.stream.alpakka.s3.S3Exception;
+import akka.stream.alpakka.s3.S3Headers;
 import akka.stream.alpakka.s3.javadsl.S3;
 import akka.stream.javadsl.Sink;
 import akka.stream.javadsl.Source;
@@ -29,6 +34,8 @@ import akka.stream.javadsl.StreamConverters;
 import akka.util.ByteString;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
+import scala.PartialFunction;
+import scala.collection.immutable.Map.Map1;
 
 import uk.gov.gchq.palisade.resource.LeafResource;
 import uk.gov.gchq.palisade.service.data.exception.ForbiddenException;
@@ -36,10 +43,13 @@ import uk.gov.gchq.palisade.service.data.service.reader.DataReader;
 
 import java.io.InputStream;
 import java.net.URI;
+import java.nio.file.Path;
+import java.util.List;
 import java.util.Optional;
 import java.util.concurrent.CompletableFuture;
 import java.util.concurrent.CompletionStage;
 
+import static uk.gov.gchq.palisade.service.data.s3.S3Properties.S3_PATH_SEP;
 import static uk.gov.gchq.palisade.service.data.s3.S3Properties.S3_PREFIX;
 
 /**
@@ -52,6 +62,12 @@ public class S3DataReader implements DataReader {
     private static final int PARALLELISM = 1;
 
     private final Materializer materialiser;
+    private final BucketAccessCache bucketAccess;
+    private final int downloadConcurrency;
+    private final long parallelDownloadThreshold;
+    private final long downloadPartSize;
+    private final DiskObjectCache diskCache;
+    private final DownloadCoalescer coalescer;
 
     /**
      * Default constructor for the S3DataReader, taking in a materaliser
@@ -59,7 +75,35 @@ public class S3DataReader implements DataReader {
      * @param materialiser The Materializer is responsible for turning a stream blueprint into a running stream.
      */
     public S3DataReader(final Materializer materialiser) {
+        this(new S3Properties(), materialiser);
+    }
+
+    /**
+     * Constructor for the S3DataReader, taking in the properties configuring how objects are read and a materaliser
+     *
+     * @param properties   the properties configuring how objects are read, such as how long bucket checks are cached
+     * @param materialiser The Materializer is responsible for turning a stream blueprint into a running stream.
+     */
+    public S3DataReader(final S3Properties properties, final Materializer materialiser) {
         this.materialiser = materialiser;
+        this.bucketAccess = new BucketAccessCache(properties.getBucketAccessTtl(), properties.getBucketAccessNegativeTtl(),
+                bucketName -> S3.checkIfBucketExistsSource(bucketName).runWith(Sink.head(), materialiser),
+                System::nanoTime);
+        this.downloadConcurrency = properties.getDownloadConcurrency();
+        this.parallelDownloadThreshold = properties.getParallelDownloadThreshold().toBytes();
+        this.downloadPartSize = properties.getDownloadPartSize().toBytes();
+        if (downloadConcurrency < 1) {
+            throw new IllegalArgumentException("downloadConcurrency must be positive, but was " + downloadConcurrency);
+        }
+        if (downloadPartSize < 1) {
+            throw new IllegalArgumentException("downloadPartSize must be positive, but was " + downloadPartSize);
+        }
+        this.diskCache = properties.getDiskCacheDirectory() != null
+                ? new DiskObjectCache(Path.of(properties.getDiskCacheDirectory()), properties.getDiskCacheSize().toBytes())
+                : null;
+        this.coalescer = properties.isCoalesceDownloads()
+                ? new DownloadCoalescer(materialiser, properties.getCoalescingBufferSize())
+                : null;
     }
 
     @Override
@@ -74,25 +118,71 @@ public class S3DataReader implements DataReader {
                 .runWith(StreamConverters.asInputStream(), materialiser);
     }
 
+    /**
+     * Read a range of bytes of a resource, using a HTTP Range GET so that only the requested bytes are downloaded.
+     * If the range extends past the end of the object, only the bytes up to the end of the object are read, and if it
+     * starts at or past the end of the object, nothing is read. Ranges are always downloaded from S3, without using
+     * the disk cache or sharing a download with any other read of the object.
+     *
+     * @param resource the resource to read
+     * @param offset   the index of the first byte to read
+     * @param length   the number of bytes to read
+     * @return an {@link InputStream} of the bytes in the range
+     */
+    public InputStream read(final LeafResource resource, final long offset, final long length) {
+        LOGGER.debug("Invoking read with resource: {}, offset: {} and length: {}", resource, offset, length);
+        return readSource(resource, offset, length)
+                .runWith(StreamConverters.asInputStream(), materialiser);
+    }
+
     @Override
     public Source<ByteString, CompletionStage<Done>> readSource(final LeafResource resource) {
-        URI resourceUri = URI.create(resource.getId());
+        URI resourceUri = s3Uri(resource);
+        String bucket = resourceUri.getHost();
+        // Strip leading slash
+        String resourcePrefix = resourceUri.getPath().substring(1);
+        LOGGER.debug("Using bucket '{}' and prefix '{}'", bucket, resourcePrefix);
 
-        if (!resourceUri.getScheme().equals(S3_PREFIX)) {
-            throw new UnsupportedOperationException(String.format(
-                    "Requested resource scheme is out of scope for %s. Found: %s expected: %s",
-                    S3DataReader.class.getSimpleName(), resourceUri.getScheme(), S3_PREFIX
-            ));
-        }
+        return checkBucketAccessibleCached(bucket)
+                .flatMapMerge(PARALLELISM, access -> coalescer != null
+                        ? coalescedObject(bucket, resourcePrefix)
+                        : readObject(bucket, resourcePrefix))
+                .mapMaterializedValue(notUsed -> CompletableFuture.completedStage(Done.done()));
+    }
 
+    /**
+     * Read a range of bytes of a resource, using a HTTP Range GET so that only the requested bytes are downloaded.
+     * If the range extends past the end of the object, only the bytes up to the end of the object are read, and if it
+     * starts at or past the end of the object, nothing is read. Ranges are always downloaded from S3, without using
+     * the disk cache or sharing a download with any other read of the object.
+     *
+     * @param resource the resource to read
+     * @param offset   the index of the first byte to read
+     * @param length   the number of bytes to read
+     * @return a {@link Source} of the bytes in the range
+     */
+    public Source<ByteString, CompletionStage<Done>> readSource(final LeafResource resource, final long offset, final long length) {
+        if (offset < 0 || length < 0 || offset > Long.MAX_VALUE - length) {
+            throw new IllegalArgumentException(String.format("Invalid byte range with offset %d and length %d", offset, length));
+        }
+        URI resourceUri = s3Uri(resource);
+        if (length == 0) {
+            return Source.<ByteString>empty()
+                    .mapMaterializedValue(notUsed -> CompletableFuture.completedStage(Done.done()));
+        }
         String bucket = resourceUri.getHost();
         // Strip leading slash
         String resourcePrefix = resourceUri.getPath().substring(1);
-        LOGGER.debug("Using bucket '{}' and prefix '{}'", bucket, resourcePrefix);
+        LOGGER.debug("Using bucket '{}' and prefix '{}' for bytes {} to {}", bucket, resourcePrefix, offset, offset + length - 1);
 
-        return checkBucketAccessible(bucket)
-                .flatMapMerge(PARALLELISM, access -> downloadObject(bucket, resourcePrefix))
-                .flatMapMerge(PARALLELISM, Pair::first)
+        return checkBucketAccessibleCached(bucket)
+                .flatMapMerge(PARALLELISM, access -> downloadObject(bucket, resourcePrefix, ByteRange.createSlice(offset, offset + length - 1))
+                        .flatMapMerge(PARALLELISM, Pair::first)
+                        // S3 responds 416 Range Not Satisfiable to a range starting at or past the end of the object
+                        .recoverWithRetries(1, new PFBuilder<Throwable, Source<ByteString, NotUsed>>()
+                                .match(S3Exception.class, (S3Exception e) -> e.statusCode().intValue() == StatusCodes.RANGE_NOT_SATISFIABLE.intValue(),
+                                        (S3Exception e) -> Source.empty())
+                                .build()))
                 .mapMaterializedValue(notUsed -> CompletableFuture.completedStage(Done.done()));
     }
 
@@ -109,29 +199,182 @@ public class S3DataReader implements DataReader {
                 .runWith(Sink.head(), materialiser);
     }
 
+    private static URI s3Uri(final LeafResource resource) {
+        URI resourceUri = URI.create(resource.getId());
+
+        if (!resourceUri.getScheme().equals(S3_PREFIX)) {
+            throw new UnsupportedOperationException(String.format(
+                    "Requested resource scheme is out of scope for %s. Found: %s expected: %s",
+                    S3DataReader.class.getSimpleName(), resourceUri.getScheme(), S3_PREFIX
+            ));
+        }
+        return resourceUri;
+    }
+
+    private Source<BucketAccess, NotUsed> checkBucketAccessibleCached(final String bucketName) {
+        // The bucket check is usually answered from the cache, rather than costing a request before every download
+        return Source.completionStage(bucketAccess.get(bucketName))
+                .map((BucketAccess access) -> requireAccessible(bucketName, access));
+    }
+
     private static Source<BucketAccess, NotUsed> checkBucketAccessible(final String bucketName) {
         return S3.checkIfBucketExistsSource(bucketName)
-                .map((BucketAccess access) -> {
-                    LOGGER.debug("Bucket existence check returned {}", access);
-                    if (access == BucketAccess.accessDenied()) {
-                        throw new IllegalArgumentException("Access denied to bucket " + bucketName);
-                    } else if (access == BucketAccess.notExists()) {
-                        throw new IllegalArgumentException("Could not find bucket " + bucketName);
-                    } else {
-                        return access;
-                    }
-                });
+                .map((BucketAccess access) -> requireAccessible(bucketName, access));
+    }
+
+    private static BucketAccess requireAccessible(final String bucketName, final BucketAccess access) {
+        LOGGER.debug("Bucket existence check returned {}", access);
+        if (access == BucketAccess.accessDenied()) {
+            throw new IllegalArgumentException("Access denied to bucket " + bucketName);
+        } else if (access == BucketAccess.notExists()) {
+            throw new IllegalArgumentException("Could not find bucket " + bucketName);
+        } else {
+            return access;
+        }
     }
 
-    private static Source<Pair<Source<ByteString, NotUsed>, ObjectMetadata>, NotUsed> downloadObject(final String bucketName, final String objectKey) {
+    private Source<Pair<Source<ByteString, NotUsed>, ObjectMetadata>, NotUsed> downloadObject(final String bucketName, final String objectKey) {
         // List the contents of the bucket, and if the resource exists, get the metadata for the resource
         // Then return the value as a Pair of Contents and the resources metadata
         return S3.download(bucketName, objectKey)
+                .mapError(forbidden(bucketName, objectKey))
+                .map(foundObject -> requireFound(objectKey, foundObject));
+    }
+
+    private Source<Pair<Source<ByteString, NotUsed>, ObjectMetadata>, NotUsed> downloadObject(final String bucketName, final String objectKey, final ByteRange range) {
+        return S3.download(bucketName, objectKey, range)
+                .mapError(forbidden(bucketName, objectKey))
+                .map(foundObject -> requireFound(objectKey, foundObject));
+    }
+
+    private static Pair<Source<ByteString, NotUsed>, ObjectMetadata> requireFound(final String objectKey, final Optional<Pair<Source<ByteString, NotUsed>, ObjectMetadata>> foundObject) {
+        LOGGER.debug("Download for object '{}' was present? {}", objectKey, foundObject.isPresent());
+        foundObject.ifPresent(sourceMetaPair -> LOGGER.trace("Object metadata was '{}'", sourceMetaPair.second().headers()));
+        // A missing object says nothing about access to its bucket, so the cached check is kept
+        return foundObject.orElseThrow(() -> notFound(objectKey));
+    }
+
+    private static ForbiddenException notFound(final String objectKey) {
+        return new ForbiddenException("Resource access was denied, or the object no longer exists, for key " + objectKey);
+    }
+
+    private PartialFunction<Throwable, Throwable> forbidden(final String bucketName, final String objectKey) {
+        return new PFBuilder<Throwable, Throwable>()
+                .match(S3Exception.class, (S3Exception e) -> e.statusCode().intValue() == StatusCodes.FORBIDDEN.intValue(), (S3Exception e) -> {
+                    // Access to the bucket itself may have been revoked since it was cached
+                    bucketAccess.invalidate(bucketName);
+                    return new ForbiddenException("Resource access was denied for key " + objectKey, e);
+                })
+                .build();
+    }
+
+    private Source<ByteString, NotUsed> coalescedObject(final String bucketName, final String objectKey) {
+        // Concurrent reads of the same version of an object share a single download, but each still checks its access
+        // The version is looked up first, so a read starting after the object is overwritten never shares a download of
+        // the old version, since the shared download was itself started after its reader saw the same ETag
+        return S3.getObjectMetadata(bucketName, objectKey)
+                .mapError(forbidden(bucketName, objectKey))
+                .map((Optional<ObjectMetadata> foundObject) -> foundObject.orElseThrow(() -> notFound(objectKey)))
+                .flatMapMerge(PARALLELISM, (ObjectMetadata metadata) -> metadata.getETag()
+                        .map(eTag -> coalescer.read(bucketName + S3_PATH_SEP + objectKey + "#" + eTag, () -> readObject(bucketName, objectKey)))
+                        .orElseGet(() -> readObject(bucketName, objectKey)));
+    }
+
+    private Source<ByteString, NotUsed> readObject(final String bucketName, final String objectKey) {
+        if (diskCache != null) {
+            return cachedContent(bucketName, objectKey);
+        }
+        return downloadObject(bucketName, objectKey)
+                .flatMapMerge(PARALLELISM, download -> objectContent(bucketName, objectKey, download.first(), download.second()));
+    }
+
+    private Source<ByteString, NotUsed> cachedContent(final String bucketName, final String objectKey) {
+        Optional<DiskObjectCache.Entry> cached = diskCache.get(bucketName, objectKey);
+        if (cached.isEmpty()) {
+            return downloadToCache(bucketName, objectKey);
+        }
+        // Download the object only if it has changed since it was cached, otherwise S3 responds 304 Not Modified
+        DiskObjectCache.Entry entry = cached.get();
+        return S3.download(bucketName, objectKey, customHeader("If-None-Match", entry.getETag()))
+                .mapError(forbidden(bucketName, objectKey))
                 .map((Optional<Pair<Source<ByteString, NotUsed>, ObjectMetadata>> foundObject) -> {
-                    LOGGER.debug("Download for object '{}' was present? {}", objectKey, foundObject.isPresent());
-                    foundObject.ifPresent(sourceMetaPair -> LOGGER.trace("Object metadata was '{}'", sourceMetaPair.second().headers()));
-                    return foundObject.orElseThrow(() -> new ForbiddenException("Resource access was denied, or the object no longer exists, for key " + objectKey));
+                    if (foundObject.isEmpty()) {
+                        diskCache.remove(bucketName, objectKey);
+                    }
+                    return requireFound(objectKey, foundObject);
+                })
+                .flatMapMerge(PARALLELISM, download -> {
+                    LOGGER.debug("Cached object '{}' has changed, so is being downloaded again", objectKey);
+                    return writeToCache(bucketName, objectKey, download.first(), download.second());
+                })
+                .recoverWithRetries(1, new PFBuilder<Throwable, Source<ByteString, NotUsed>>()
+                        .match(S3Exception.class, (S3Exception e) -> e.statusCode().intValue() == StatusCodes.NOT_MODIFIED.intValue(), (S3Exception e) -> {
+                            LOGGER.debug("Cached object '{}' is unchanged, so is being read from the cache", objectKey);
+                            return diskCache.read(bucketName, objectKey, entry, () -> {
+                                LOGGER.debug("Cached object '{}' was evicted before it could be read, so is being downloaded again", objectKey);
+                                return downloadToCache(bucketName, objectKey);
+                            });
+                        })
+                        .build());
+    }
+
+    private Source<ByteString, NotUsed> downloadToCache(final String bucketName, final String objectKey) {
+        return downloadObject(bucketName, objectKey)
+                .flatMapMerge(PARALLELISM, download -> writeToCache(bucketName, objectKey, download.first(), download.second()));
+    }
+
+    private Source<ByteString, NotUsed> writeToCache(final String bucketName, final String objectKey, final Source<ByteString, NotUsed> body, final ObjectMetadata metadata) {
+        return diskCache.write(bucketName, objectKey, metadata.getETag(), metadata.getContentLength(),
+                objectContent(bucketName, objectKey, body, metadata));
+    }
+
+    private Source<ByteString, NotUsed> objectContent(final String bucketName, final String objectKey, final Source<ByteString, NotUsed> body, final ObjectMetadata metadata) {
+        long contentLength = metadata.getContentLength();
+        if (downloadConcurrency == 1 || contentLength <= parallelDownloadThreshold) {
+            return body;
+        }
+        int partCount = Math.toIntExact((contentLength + downloadPartSize - 1) / downloadPartSize);
+        LOGGER.debug("Downloading object '{}' of {} bytes as {} parts", objectKey, contentLength, partCount);
+        // The first part is read from the download already open, and the rest are fetched as ranged GETs
+        // At most downloadConcurrency parts are buffered at once, and each is emitted in order once it is complete
+        return Source.range(0, partCount - 1)
+                .mapAsync(downloadConcurrency, (Integer part) -> {
+                    long start = part * downloadPartSize;
+                    long end = Math.min(start + downloadPartSize, contentLength);
+                    Source<ByteString, NotUsed> partBody = part == 0
+                            ? takeBytes(body, end)
+                            : downloadRange(bucketName, objectKey, metadata, ByteRange.createSlice(start, end - 1));
+                    return partBody.runWith(Sink.fold(ByteString.emptyByteString(), ByteString::concat), materialiser);
                 });
     }
 
+    private Source<ByteString, NotUsed> downloadRange(final String bucketName, final String objectKey, final ObjectMetadata metadata, final ByteRange range) {
+        // Every range must come from the same version of the object as the first part, or the download fails
+        S3Headers headers = metadata.getETag()
+                .map(eTag -> customHeader("If-Match", eTag))
+                .orElseGet(S3Headers::create);
+        return S3.download(bucketName, objectKey, range, metadata.getVersionId(), headers)
+                .mapError(forbidden(bucketName, objectKey))
+                .flatMapConcat(foundObject -> requireFound(objectKey, foundObject).first());
+    }
+
+    private static S3Headers customHeader(final String name, final String value) {
+        // Alpakka takes custom headers as a Scala map
+        return S3Headers.create().withCustomHeaders(new Map1<>(name, value));
+    }
+
+    private static Source<ByteString, NotUsed> takeBytes(final Source<ByteString, NotUsed> source, final long limit) {
+        return source
+                .statefulMapConcat(() -> {
+                    long[] remaining = {limit};
+                    return (ByteString bytes) -> {
+                        int count = (int) Math.min(bytes.size(), remaining[0]);
+                        remaining[0] -= count;
+                        return List.of(Pair.create(bytes.take(count), remaining[0] == 0));
+                    };
+                })
+                // Cancel the download once the limit is reached, including the chunk reaching it
+                .takeWhile(chunk -> !chunk.second(), true)
+                .map(Pair::first);
+    }
 }
@@ -16,14 +16,118 @@
 
 package uk.gov.gchq.palisade.service.data.s3;
 
+import org.springframework.boot.context.properties.ConfigurationProperties;
+import org.springframework.util.unit.DataSize;
+
+import uk.gov.gchq.palisade.Generated;
+
+import java.time.Duration;
+
 /**
- * S3 Properties class, containing default information about resources added to S3.
+ * S3 Properties class, containing default information about resources added to S3, and the configuration of how the
+ * {@link S3DataReader} reads them.
  */
-public final class S3Properties {
+@ConfigurationProperties(prefix = "s3")
+public class S3Properties {
     public static final String S3_PREFIX = "s3";
     public static final String S3_PATH_SEP = "/";
+    private Duration bucketAccessTtl = Duration.ofMinutes(5);
+    private Duration bucketAccessNegativeTtl = Duration.ofSeconds(10);
+    private int downloadConcurrency = 1;
+    private DataSize parallelDownloadThreshold = DataSize.ofMegabytes(64);
+    private DataSize downloadPartSize = DataSize.ofMegabytes(8);
+    private String diskCacheDirectory;
+    private DataSize diskCacheSize = DataSize.ofGigabytes(1);
+    private boolean coalesceDownloads;
+    private int coalescingBufferSize = 64;
+
+    @Generated
+    public Duration getBucketAccessTtl() {
+        return bucketAccessTtl;
+    }
+
+    @Generated
+    public void setBucketAccessTtl(final Duration bucketAccessTtl) {
+        this.bucketAccessTtl = bucketAccessTtl;
+    }
+
+    @Generated
+    public Duration getBucketAccessNegativeTtl() {
+        return bucketAccessNegativeTtl;
+    }
+
+    @Generated
+    public void setBucketAccessNegativeTtl(final Duration bucketAccessNegativeTtl) {
+        this.bucketAccessNegativeTtl = bucketAccessNegativeTtl;
+    }
+
+    @Generated
+    public int getDownloadConcurrency() {
+        return downloadConcurrency;
+    }
+
+    @Generated
+    public void setDownloadConcurrency(final int downloadConcurrency) {
+        this.downloadConcurrency = downloadConcurrency;
+    }
+
+    @Generated
+    public DataSize getParallelDownloadThreshold() {
+        return parallelDownloadThreshold;
+    }
+
+    @Generated
+    public void setParallelDownloadThreshold(final DataSize parallelDownloadThreshold) {
+        this.parallelDownloadThreshold = parallelDownloadThreshold;
+    }
+
+    @Generated
+    public DataSize getDownloadPartSize() {
+        return downloadPartSize;
+    }
+
+    @Generated
+    public void setDownloadPartSize(final DataSize downloadPartSize) {
+        this.downloadPartSize = downloadPartSize;
+    }
+
+    @Generated
+    public String getDiskCacheDirectory() {
+        return diskCacheDirectory;
+    }
+
+    @Generated
+    public void setDiskCacheDirectory(final String diskCacheDirectory) {
+        this.diskCacheDirectory = diskCacheDirectory;
+    }
+
+    @Generated
+    public DataSize getDiskCacheSize() {
+        return diskCacheSize;
+    }
+
+    @Generated
+    public void setDiskCacheSize(final DataSize diskCacheSize) {
+        this.diskCacheSize = diskCacheSize;
+    }
+
+    @Generated
+    public boolean isCoalesceDownloads() {
+        return coalesceDownloads;
+    }
+
+    @Generated
+    public void setCoalesceDownloads(final boolean coalesceDownloads) {
+        this.coalesceDownloads = coalesceDownloads;
+    }
+
+    @Generated
+    public int getCoalescingBufferSize() {
+        return coalescingBufferSize;
+    }
 
-    private S3Properties() {
-        // Hide constructor
+    @Generated
+    public void setCoalescingBufferSize(final int coalescingBufferSize) {
+        this.coalescingBufferSize = coalescingBufferSize;
     }
 }
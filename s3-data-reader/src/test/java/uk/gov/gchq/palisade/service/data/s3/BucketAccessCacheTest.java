@@ -0,0 +1,140 @@
+/*
+ * Copyright 2018-2021 Crown Copyright
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package uk.gov.gchq.palisade.service.data.s3;
+
+import akka.stream.alpakka.s3.BucketAccess;
+import org.junit.jupiter.api.Test;
+
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionStage;
+import java.util.concurrent.atomic.AtomicLong;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+
+/**
+ * Tests for caching the results of bucket-existence checks.
+ */
+class BucketAccessCacheTest {
+    private static final Duration TTL = Duration.ofMinutes(5);
+    private static final Duration NEGATIVE_TTL = Duration.ofSeconds(10);
+
+    private final AtomicLong clock = new AtomicLong();
+    private final List<CompletableFuture<BucketAccess>> checks = new ArrayList<>();
+    private final BucketAccessCache cache = new BucketAccessCache(TTL, NEGATIVE_TTL, this::check, clock::get);
+
+    private CompletionStage<BucketAccess> check(final String bucketName) {
+        CompletableFuture<BucketAccess> check = new CompletableFuture<>();
+        checks.add(check);
+        return check;
+    }
+
+    @Test
+    void testAccessibleBucketIsCachedForTtl() {
+        // Given
+        cache.get("bucket");
+        checks.get(0).complete(BucketAccess.accessGranted());
+
+        // When
+        clock.addAndGet(TTL.toNanos() - 1);
+        var cached = cache.get("bucket").toCompletableFuture().join();
+        clock.addAndGet(1);
+        cache.get("bucket");
+
+        // Then
+        assertThat(cached)
+                .as("Check that an accessible bucket is answered from the cache until its ttl")
+                .isEqualTo(BucketAccess.accessGranted());
+        assertThat(checks)
+                .as("Check that the bucket is checked again once its ttl has passed")
+                .hasSize(2);
+    }
+
+    @Test
+    void testMissingBucketIsCachedForNegativeTtl() {
+        // Given
+        cache.get("bucket");
+        checks.get(0).complete(BucketAccess.notExists());
+
+        // When
+        clock.addAndGet(NEGATIVE_TTL.toNanos() - 1);
+        var cached = cache.get("bucket").toCompletableFuture().join();
+        clock.addAndGet(1);
+        cache.get("bucket");
+
+        // Then
+        assertThat(cached)
+                .as("Check that a missing bucket is answered from the cache until its negative ttl")
+                .isEqualTo(BucketAccess.notExists());
+        assertThat(checks)
+                .as("Check that the bucket is checked again once its negative ttl has passed")
+                .hasSize(2);
+    }
+
+    @Test
+    void testConcurrentLookupsShareOneCheck() {
+        // When
+        var first = cache.get("bucket");
+        var second = cache.get("bucket");
+        checks.get(0).complete(BucketAccess.accessGranted());
+
+        // Then
+        assertThat(checks)
+                .as("Check that lookups made while a check is in progress share that check")
+                .hasSize(1);
+        assertThat(second.toCompletableFuture().join())
+                .as("Check that both lookups see the same result")
+                .isEqualTo(first.toCompletableFuture().join());
+    }
+
+    @Test
+    void testFailedCheckIsNotCached() {
+        // Given
+        var failed = cache.get("bucket");
+        checks.get(0).completeExceptionally(new IllegalStateException("Test exception"));
+
+        // When
+        cache.get("bucket");
+
+        // Then
+        assertThatThrownBy(() -> failed.toCompletableFuture().join())
+                .as("Check that the failure of the check is returned")
+                .hasCauseInstanceOf(IllegalStateException.class);
+        assertThat(checks)
+                .as("Check that a failed check is retried by the next lookup")
+                .hasSize(2);
+    }
+
+    @Test
+    void testInvalidatedBucketIsCheckedAgain() {
+        // Given
+        cache.get("bucket");
+        checks.get(0).complete(BucketAccess.accessGranted());
+
+        // When
+        cache.invalidate("bucket");
+        cache.get("bucket");
+
+        // Then
+        assertThat(checks)
+                .as("Check that an invalidated bucket is checked again before its ttl")
+                .hasSize(2);
+    }
+}
@@ -0,0 +1,187 @@
+/*
+ * Copyright 2018-2021 Crown Copyright
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package uk.gov.gchq.palisade.service.data.s3;
+
+import akka.NotUsed;
+import akka.actor.ActorSystem;
+import akka.stream.Materializer;
+import akka.stream.javadsl.Sink;
+import akka.stream.javadsl.Source;
+import akka.stream.javadsl.StreamConverters;
+import akka.util.ByteString;
+import org.junit.jupiter.api.AfterAll;
+import org.junit.jupiter.api.BeforeAll;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.TestInstance;
+import org.junit.jupiter.api.TestInstance.Lifecycle;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.List;
+import java.util.Optional;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.TimeUnit;
+import java.util.stream.Collectors;
+import java.util.stream.IntStream;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+
+/**
+ * Tests for caching whole objects on the local disk.
+ */
+@TestInstance(Lifecycle.PER_CLASS)
+class DiskObjectCacheTest {
+    private static final List<ByteString> CHUNKS = IntStream.range(0, 100)
+            .mapToObj(i -> ByteString.fromString("chunk " + i + "\n"))
+            .collect(Collectors.toList());
+    private static final ByteString CONTENT = CHUNKS.stream().reduce(ByteString.emptyByteString(), ByteString::concat);
+    private static final ByteString DOWNLOADED_CONTENT = ByteString.fromString("downloaded again");
+    private static final Source<ByteString, NotUsed> DOWNLOADED = Source.single(DOWNLOADED_CONTENT);
+
+    ActorSystem system;
+    Materializer materialiser;
+
+    @BeforeAll
+    void setup() {
+        system = ActorSystem.create("disk-object-cache-test");
+        materialiser = Materializer.createMaterializer(system);
+    }
+
+    @AfterAll
+    void tearDown() {
+        system.terminate();
+    }
+
+    private ByteString readFully(final Source<ByteString, NotUsed> source) {
+        return source.runWith(Sink.fold(ByteString.emptyByteString(), ByteString::concat), materialiser)
+                .toCompletableFuture()
+                .join();
+    }
+
+    private static Optional<DiskObjectCache.Entry> awaitCached(final DiskObjectCache cache, final String objectKey) throws InterruptedException {
+        // The entry is added once the stream it was written from has completed
+        for (int attempt = 0; attempt < 50; attempt++) {
+            Optional<DiskObjectCache.Entry> entry = cache.get("bucket", objectKey);
+            if (entry.isPresent()) {
+                return entry;
+            }
+            TimeUnit.MILLISECONDS.sleep(100);
+        }
+        return Optional.empty();
+    }
+
+    @Test
+    void testWrittenObjectIsReadFromCache(@TempDir final Path directory) throws InterruptedException {
+        // Given an object which has been read through the cache
+        var cache = new DiskObjectCache(directory, CONTENT.size());
+        readFully(cache.write("bucket", "object", Optional.of("etag"), CONTENT.size(), Source.from(CHUNKS)));
+
+        // When
+        var entry = awaitCached(cache, "object");
+
+        // Then
+        assertThat(entry)
+                .as("Check that the object was cached with its ETag")
+                .hasValueSatisfying(cached -> assertThat(cached.getETag()).isEqualTo("etag"));
+        assertThat(readFully(cache.read("bucket", "object", entry.orElseThrow(), () -> DOWNLOADED)))
+                .as("Check that the cached copy holds the whole object")
+                .isEqualTo(CONTENT);
+    }
+
+    @Test
+    void testFailedCacheWriteDoesNotShortenContent(@TempDir final Path directory) throws IOException, InterruptedException {
+        // Given a cache whose directory has since been removed, so no file can be written
+        var cacheDirectory = directory.resolve("cache");
+        var cache = new DiskObjectCache(cacheDirectory, CONTENT.size());
+        Files.delete(cacheDirectory);
+
+        // When
+        var content = readFully(cache.write("bucket", "object", Optional.of("etag"), CONTENT.size(), Source.from(CHUNKS)));
+
+        // Then
+        assertThat(content)
+                .as("Check that the whole object is still read when it cannot be cached")
+                .isEqualTo(CONTENT);
+        assertThat(awaitCached(cache, "object"))
+                .as("Check that the object was not cached")
+                .isEmpty();
+    }
+
+    @Test
+    void testFailedDownloadIsNotCached(@TempDir final Path directory) throws IOException, InterruptedException {
+        // Given a download which fails part way through
+        var cache = new DiskObjectCache(directory, CONTENT.size());
+        var download = Source.from(CHUNKS.subList(0, 50))
+                .concat(Source.<ByteString>failed(new IOException("Connection reset")));
+
+        // When
+        var written = cache.write("bucket", "object", Optional.of("etag"), CONTENT.size(), download);
+
+        // Then
+        assertThatThrownBy(() -> readFully(written))
+                .as("Check that the failure of the download is passed on")
+                .isInstanceOf(CompletionException.class)
+                .hasRootCauseInstanceOf(IOException.class);
+        assertThat(awaitCached(cache, "object"))
+                .as("Check that the partial object was not cached")
+                .isEmpty();
+        try (var files = Files.list(directory)) {
+            assertThat(files)
+                    .as("Check that the partial file was deleted")
+                    .isEmpty();
+        }
+    }
+
+    @Test
+    void testEntryEvictedBeforeReadIsRunIsNotRead(@TempDir final Path directory) throws InterruptedException {
+        // Given a cache with room for one object, and a read of that object created while it was still cached
+        var cache = new DiskObjectCache(directory, CONTENT.size());
+        readFully(cache.write("bucket", "first", Optional.of("etag"), CONTENT.size(), Source.from(CHUNKS)));
+        var content = cache.read("bucket", "first", awaitCached(cache, "first").orElseThrow(), () -> DOWNLOADED);
+
+        // When the object is evicted by another before the read is run
+        readFully(cache.write("bucket", "second", Optional.of("etag"), CONTENT.size(), Source.from(CHUNKS)));
+        awaitCached(cache, "second").orElseThrow();
+
+        // Then
+        assertThat(readFully(content))
+                .as("Check that an entry evicted before the read is run is not read, so the object is downloaded instead")
+                .isEqualTo(DOWNLOADED_CONTENT);
+    }
+
+    @Test
+    void testEntryEvictedWhileBeingReadIsStillRead(@TempDir final Path directory) throws IOException, InterruptedException {
+        // Given a cache with room for one object, and a read of that object which has started
+        var cache = new DiskObjectCache(directory, CONTENT.size());
+        readFully(cache.write("bucket", "first", Optional.of("etag"), CONTENT.size(), Source.from(CHUNKS)));
+        var started = cache.read("bucket", "first", awaitCached(cache, "first").orElseThrow(), () -> DOWNLOADED)
+                .runWith(StreamConverters.asInputStream(), materialiser);
+        var firstByte = started.read();
+
+        // When the object is evicted part way through the read
+        readFully(cache.write("bucket", "second", Optional.of("etag"), CONTENT.size(), Source.from(CHUNKS)));
+        awaitCached(cache, "second").orElseThrow();
+
+        // Then
+        assertThat(ByteString.fromArray(new byte[]{(byte) firstByte}).concat(ByteString.fromArray(started.readAllBytes())))
+                .as("Check that a read started before the object was evicted still reads the whole object")
+                .isEqualTo(CONTENT);
+    }
+}
@@ -0,0 +1,149 @@
+/*
+ * Copyright 2018-2021 Crown Copyright
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package uk.gov.gchq.palisade.service.data.s3;
+
+import akka.Done;
+import akka.NotUsed;
+import akka.actor.ActorSystem;
+import akka.stream.Materializer;
+import akka.stream.javadsl.Sink;
+import akka.stream.javadsl.Source;
+import akka.util.ByteString;
+import org.junit.jupiter.api.AfterAll;
+import org.junit.jupiter.api.BeforeAll;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.TestInstance;
+import org.junit.jupiter.api.TestInstance.Lifecycle;
+
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.stream.Collectors;
+import java.util.stream.IntStream;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+/**
+ * Tests for sharing concurrent downloads of the same object.
+ */
+@TestInstance(Lifecycle.PER_CLASS)
+class DownloadCoalescerTest {
+    private static final List<ByteString> CHUNKS = IntStream.range(0, 100)
+            .mapToObj(i -> ByteString.fromString("chunk " + i + "\n"))
+            .collect(Collectors.toList());
+    private static final ByteString CONTENT = CHUNKS.stream().reduce(ByteString.emptyByteString(), ByteString::concat);
+
+    ActorSystem system;
+    Materializer materialiser;
+    DownloadCoalescer coalescer;
+
+    @BeforeAll
+    void setup() {
+        system = ActorSystem.create("download-coalescer-test");
+        materialiser = Materializer.createMaterializer(system);
+        coalescer = new DownloadCoalescer(materialiser, 16);
+    }
+
+    @AfterAll
+    void tearDown() {
+        system.terminate();
+    }
+
+    private ByteString readFully(final Source<ByteString, NotUsed> source) {
+        return source.runWith(Sink.fold(ByteString.emptyByteString(), ByteString::concat), materialiser)
+                .toCompletableFuture()
+                .join();
+    }
+
+    @Test
+    void testConcurrentReadsShareOneDownload() throws InterruptedException {
+        // Given a download which waits until it is released
+        var downloads = new AtomicInteger();
+        var release = new CompletableFuture<Done>();
+        Source<ByteString, NotUsed> download = Source.completionStage(release)
+                .flatMapConcat(done -> Source.from(CHUNKS));
+
+        // When two readers read the object before the download is released
+        var first = CompletableFuture.supplyAsync(() -> readFully(coalescer.read("shared", () -> {
+            downloads.incrementAndGet();
+            return download;
+        })));
+        var second = CompletableFuture.supplyAsync(() -> readFully(coalescer.read("shared", () -> {
+            downloads.incrementAndGet();
+            return download;
+        })));
+        // Allow both readers to attach to the shared download
+        TimeUnit.MILLISECONDS.sleep(500);
+        release.complete(Done.done());
+
+        // Then both readers read the whole object from a single download
+        assertThat(List.of(first.join(), second.join()))
+                .as("Check that every reader reads the whole object")
+                .containsOnly(CONTENT);
+        assertThat(downloads)
+                .as("Check that the object was only downloaded once")
+                .hasValue(1);
+    }
+
+    @Test
+    void testReadAfterDownloadFinishedDownloadsAgain() {
+        // Given a download which has already been read
+        var downloads = new AtomicInteger();
+        readFully(coalescer.read("finished", () -> {
+            downloads.incrementAndGet();
+            return Source.from(CHUNKS);
+        }));
+
+        // When the object is read again
+        var content = readFully(coalescer.read("finished", () -> {
+            downloads.incrementAndGet();
+            return Source.from(CHUNKS);
+        }));
+
+        // Then it is downloaded again, rather than reading the end of the finished download
+        assertThat(content)
+                .as("Check that a reader arriving after a download has finished reads the whole object")
+                .isEqualTo(CONTENT);
+        assertThat(downloads)
+                .as("Check that the object was downloaded again")
+                .hasValue(2);
+    }
+
+    @Test
+    void testDownloadStoppedWhenEveryReaderLeaves() throws Exception {
+        // Given an endless download
+        var terminated = new CompletableFuture<Done>();
+        Source<ByteString, NotUsed> download = Source.repeat(ByteString.fromString("chunk"))
+                .watchTermination((notUsed, done) -> {
+                    done.whenComplete((ignored, error) -> terminated.complete(Done.done()));
+                    return notUsed;
+                });
+
+        // When its only reader cancels after the first chunk
+        coalescer.read("abandoned", () -> download)
+                .take(1)
+                .runWith(Sink.ignore(), materialiser)
+                .toCompletableFuture()
+                .join();
+
+        // Then the download is stopped
+        assertThat(terminated.get(5, TimeUnit.SECONDS))
+                .as("Check that a download is stopped once it has no readers")
+                .isEqualTo(Done.done());
+    }
+}
@@ -16,6 +16,7 @@
 
 package uk.gov.gchq.palisade.service.data.s3;
 
+import akka.stream.Materializer;
 import org.junit.jupiter.api.BeforeAll;
 import org.junit.jupiter.api.MethodOrderer.OrderAnnotation;
 import org.junit.jupiter.api.Order;
@@ -23,10 +24,12 @@ import org.junit.jupiter.api.Test;
 import org.junit.jupiter.api.TestInstance;
 import org.junit.jupiter.api.TestInstance.Lifecycle;
 import org.junit.jupiter.api.TestMethodOrder;
+import org.junit.jupiter.api.io.TempDir;
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.boot.test.context.SpringBootTest;
 import org.springframework.test.context.ActiveProfiles;
 import org.springframework.test.context.ContextConfiguration;
+import org.springframework.util.unit.DataSize;
 import software.amazon.awssdk.auth.credentials.AwsBasicCredentials;
 import software.amazon.awssdk.auth.credentials.StaticCredentialsProvider;
 import software.amazon.awssdk.core.sync.RequestBody;
@@ -41,7 +44,13 @@ import uk.gov.gchq.palisade.util.AbstractResourceBuilder;
 
 import java.io.IOException;
 import java.net.URI;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Optional;
+import java.util.concurrent.TimeUnit;
 import java.util.stream.Collectors;
+import java.util.stream.IntStream;
+import java.util.stream.Stream;
 
 import static org.assertj.core.api.Assertions.assertThat;
 import static org.testcontainers.containers.localstack.LocalStackContainer.Service.S3;
@@ -58,6 +67,8 @@ import static uk.gov.gchq.palisade.service.data.s3.S3Initialiser.localStackConta
 class S3DataReaderTest {
     @Autowired
     S3DataReader reader;
+    @Autowired
+    Materializer materialiser;
 
     private static final String BUCKET_NAME = "test-bucket";
 
@@ -134,4 +145,116 @@ class S3DataReaderTest {
                 .as("Check that the S3DataReader reads data from S3 Bucket that is equal to what was written using the AWS S3Client")
                 .isEqualTo(testData);
     }
+
+    @Test
+    @Order(4)
+    void testReadResourceInParallelParts() throws IOException {
+        // Given a reader downloading any object over 1KB in parallel parts of 1KB
+        var properties = new S3Properties();
+        properties.setDownloadConcurrency(3);
+        properties.setParallelDownloadThreshold(DataSize.ofKilobytes(1));
+        properties.setDownloadPartSize(DataSize.ofKilobytes(1));
+        var parallelReader = new S3DataReader(properties, materialiser);
+
+        // Given we write an object of several parts, whose last part is incomplete
+        var s3Resource = (FileResource) ((LeafResource) AbstractResourceBuilder.create("s3://" + BUCKET_NAME + "/largeFile.txt"))
+                .type("text")
+                .serialisedFormat("text/plain; charset=UTF-8")
+                .connectionDetail(new SimpleConnectionDetail().serviceName("s3-data-service"));
+        var testData = IntStream.range(0, 1_000)
+                .mapToObj(i -> "line " + i + "\n")
+                .collect(Collectors.joining());
+        s3.putObject(b -> b.acl(ObjectCannedACL.PUBLIC_READ_WRITE)
+                .bucket(BUCKET_NAME)
+                .key(URI.create(s3Resource.getId()).getPath().substring(1)), RequestBody.fromString(testData));
+
+        // When we read the data back in parallel parts
+        var readData = new String(parallelReader.read(s3Resource).readAllBytes());
+
+        // Then the parts are reassembled in order
+        assertThat(readData)
+                .as("Check that an object downloaded in parallel parts is equal to what was written")
+                .isEqualTo(testData);
+    }
+
+    @Test
+    @Order(5)
+    void testReadResourceRange() throws IOException {
+        // Given we write some test data to an object in a bucket
+        var s3Resource = (FileResource) ((LeafResource) AbstractResourceBuilder.create("s3://" + BUCKET_NAME + "/rangeFile.txt"))
+                .type("text")
+                .serialisedFormat("text/plain; charset=UTF-8")
+                .connectionDetail(new SimpleConnectionDetail().serviceName("s3-data-service"));
+        var testData = "Header, body and footer";
+        s3.putObject(b -> b.acl(ObjectCannedACL.PUBLIC_READ_WRITE)
+                .bucket(BUCKET_NAME)
+                .key(URI.create(s3Resource.getId()).getPath().substring(1)), RequestBody.fromString(testData));
+
+        // When we read ranges of the data back using the S3DataReader
+        var body = new String(reader.read(s3Resource, 8, 4).readAllBytes());
+        var footer = new String(reader.read(s3Resource, 17, 100).readAllBytes());
+        var pastEnd = reader.read(s3Resource, testData.length(), 10).readAllBytes();
+
+        // Then only the bytes in each range are read
+        assertThat(body)
+                .as("Check that the S3DataReader reads only the requested range of the object")
+                .isEqualTo("body");
+        assertThat(footer)
+                .as("Check that a range past the end of the object is read up to the end of the object")
+                .isEqualTo("footer");
+        assertThat(pastEnd)
+                .as("Check that a range starting at the end of the object reads nothing")
+                .isEmpty();
+    }
+
+    @Test
+    @Order(6)
+    void testReadResourceThroughDiskCache(@TempDir final Path cacheDirectory) throws IOException, InterruptedException {
+        // Given a reader caching objects on the local disk
+        var properties = new S3Properties();
+        properties.setDiskCacheDirectory(cacheDirectory.toString());
+        var cachingReader = new S3DataReader(properties, materialiser);
+
+        // Given we write some test data to an object in a bucket
+        var s3Resource = (FileResource) ((LeafResource) AbstractResourceBuilder.create("s3://" + BUCKET_NAME + "/cachedFile.txt"))
+                .type("text")
+                .serialisedFormat("text/plain; charset=UTF-8")
+                .connectionDetail(new SimpleConnectionDetail().serviceName("s3-data-service"));
+        var objectKey = URI.create(s3Resource.getId()).getPath().substring(1);
+        s3.putObject(b -> b.bucket(BUCKET_NAME).key(objectKey), RequestBody.fromString("Original data"));
+
+        // When we read the object, then mark its cached copy so that a read from the cache can be told apart
+        var firstRead = new String(cachingReader.read(s3Resource).readAllBytes());
+        var cachedFile = awaitCachedFile(cacheDirectory);
+        Files.writeString(cachedFile, "ORIGINAL DATA");
+        var cachedRead = new String(cachingReader.read(s3Resource).readAllBytes());
+        // Then change the object and read it again
+        s3.putObject(b -> b.bucket(BUCKET_NAME).key(objectKey), RequestBody.fromString("Changed data"));
+        var changedRead = new String(cachingReader.read(s3Resource).readAllBytes());
+
+        // Then the unchanged object is served from the cache, and the changed object is downloaded again
+        assertThat(firstRead)
+                .as("Check that the first read downloads the object")
+                .isEqualTo("Original data");
+        assertThat(cachedRead)
+                .as("Check that the second read of an unchanged object is served from the cached file")
+                .isEqualTo("ORIGINAL DATA");
+        assertThat(changedRead)
+                .as("Check that a read after the object has changed returns the new data")
+                .isEqualTo("Changed data");
+    }
+
+    private static Path awaitCachedFile(final Path cacheDirectory) throws IOException, InterruptedException {
+        // The object is added to the cache once the read it was copied from has completed
+        for (int attempt = 0; attempt < 50; attempt++) {
+            try (Stream<Path> files = Files.list(cacheDirectory)) {
+                Optional<Path> cached = files.findFirst();
+                if (cached.isPresent()) {
+                    return cached.get();
+                }
+            }
+            TimeUnit.MILLISECONDS.sleep(100);
+        }
+        throw new AssertionError("No object was cached in " + cacheDirectory);
+    }
 }
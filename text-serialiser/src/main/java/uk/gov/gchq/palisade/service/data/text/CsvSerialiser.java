@@ -0,0 +1,230 @@
+/*
+ * Copyright 2018-2021 Crown Copyright
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package uk.gov.gchq.palisade.service.data.text;
+
+import com.fasterxml.jackson.annotation.JsonAutoDetect.Visibility;
+import com.fasterxml.jackson.annotation.JsonCreator;
+import com.fasterxml.jackson.annotation.JsonProperty;
+import com.fasterxml.jackson.annotation.PropertyAccessor;
+import com.fasterxml.jackson.core.JsonEncoding;
+import com.fasterxml.jackson.databind.DeserializationFeature;
+import com.fasterxml.jackson.databind.MappingIterator;
+import com.fasterxml.jackson.databind.ObjectReader;
+import com.fasterxml.jackson.databind.ObjectWriter;
+import com.fasterxml.jackson.databind.SerializationFeature;
+import com.fasterxml.jackson.dataformat.csv.CsvGenerator;
+import com.fasterxml.jackson.dataformat.csv.CsvMapper;
+import com.fasterxml.jackson.dataformat.csv.CsvSchema;
+
+import uk.gov.gchq.palisade.Generated;
+import uk.gov.gchq.palisade.data.serialise.Serialiser;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.UncheckedIOException;
+import java.nio.charset.StandardCharsets;
+import java.util.Spliterator;
+import java.util.Spliterators;
+import java.util.concurrent.ForkJoinPool;
+import java.util.stream.Stream;
+import java.util.stream.StreamSupport;
+
+import static java.util.Objects.nonNull;
+import static java.util.Objects.requireNonNull;
+
+/**
+ * A {@code CsvSerialiser} is used to serialise and deserialise comma-separated values, with a header line naming the
+ * columns followed by one line for each record. Converts a CSV {@link InputStream} to/from a {@link Stream} of domain
+ * objects ({@link O}s).
+ * <p>
+ * There is a column for each field of the domain class, which must be a scalar, an enum, or a list of these, written
+ * with its elements separated by semicolons. Both null and empty strings are written as empty values. When
+ * deserialising, columns are matched to fields by the names in the header line, and any unknown columns are ignored.
+ * <p>
+ * Records are written through Jackson's streaming CSV generator, and each chunk of {@code chunkRecordCount} records is
+ * written to a reused buffer. If the {@code encodingParallelism} is greater than one, chunks are instead encoded in
+ * parallel on the {@link ForkJoinPool#commonPool()}.
+ *
+ * @param <O> the domain object type
+ */
+// Suppress making serialiser class itself serialisable
+@SuppressWarnings({"java:S2057", "java:S1948"})
+public class CsvSerialiser<O> implements Serialiser<O> {
+    private static final int DEFAULT_CHUNK_RECORD_COUNT = 4096;
+    private static final CsvMapper MAPPER = CsvMapper.builder()
+            .visibility(PropertyAccessor.GETTER, Visibility.NONE)
+            .visibility(PropertyAccessor.IS_GETTER, Visibility.NONE)
+            .visibility(PropertyAccessor.SETTER, Visibility.NONE)
+            .visibility(PropertyAccessor.FIELD, Visibility.ANY)
+            .disable(DeserializationFeature.FAIL_ON_UNKNOWN_PROPERTIES)
+            .build();
+
+    private final CsvSchema schema;
+    private final ObjectWriter writer;
+    private final ObjectReader reader;
+    private int encodingParallelism = 1;
+    private int chunkRecordCount = DEFAULT_CHUNK_RECORD_COUNT;
+
+    /**
+     * Constructor for the {@link CsvSerialiser}
+     *
+     * @param domainClass the class for the serialiser
+     */
+    @JsonCreator
+    public CsvSerialiser(@JsonProperty("domainClass") final Class<O> domainClass) {
+        requireNonNull(domainClass, "domainClass is required");
+        // The header is written once by the first chunk, rather than by the generator of every chunk
+        this.schema = MAPPER.schemaFor(domainClass).withoutHeader();
+        this.writer = MAPPER.writerFor(domainClass).with(schema).without(SerializationFeature.FLUSH_AFTER_WRITE_VALUE);
+        // Columns are matched by the names in the header, so that they may be in any order
+        this.reader = MAPPER.readerFor(domainClass).with(schema.withHeader().withColumnReordering(true));
+    }
+
+    /**
+     * Sets the number of chunks to encode at once on the common fork-join pool, where 1 encodes each chunk on the
+     * thread reading the serialised stream.
+     *
+     * @param encodingParallelism the number of chunks to encode at once
+     * @return the current {@link CsvSerialiser} object
+     */
+    @Generated
+    public CsvSerialiser<O> encodingParallelism(final int encodingParallelism) {
+        this.setEncodingParallelism(encodingParallelism);
+        return this;
+    }
+
+    /**
+     * Sets the number of records written to the buffer in each chunk.
+     *
+     * @param chunkRecordCount the number of records in each chunk
+     * @return the current {@link CsvSerialiser} object
+     */
+    @Generated
+    public CsvSerialiser<O> chunkRecordCount(final int chunkRecordCount) {
+        this.setChunkRecordCount(chunkRecordCount);
+        return this;
+    }
+
+    @Generated
+    public int getEncodingParallelism() {
+        return encodingParallelism;
+    }
+
+    @Generated
+    public void setEncodingParallelism(final int encodingParallelism) {
+        if (encodingParallelism < 1) {
+            throw new IllegalArgumentException("encodingParallelism must be positive, but was " + encodingParallelism);
+        }
+        this.encodingParallelism = encodingParallelism;
+    }
+
+    @Generated
+    public int getChunkRecordCount() {
+        return chunkRecordCount;
+    }
+
+    @Generated
+    public void setChunkRecordCount(final int chunkRecordCount) {
+        if (chunkRecordCount < 1) {
+            throw new IllegalArgumentException("chunkRecordCount must be positive, but was " + chunkRecordCount);
+        }
+        this.chunkRecordCount = chunkRecordCount;
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public Stream<O> deserialise(final InputStream input) {
+        MappingIterator<O> records;
+        try {
+            records = reader.readValues(input);
+        } catch (IOException e) {
+            throw new UncheckedIOException("An error occurred during deserialisation", e);
+        }
+        return StreamSupport.stream(Spliterators.spliteratorUnknownSize(records, Spliterator.ORDERED | Spliterator.NONNULL), false)
+                .onClose(() -> {
+                    try {
+                        records.close();
+                    } catch (IOException e) {
+                        throw new UncheckedIOException("Failed to close the input stream", e);
+                    }
+                });
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public InputStream serialise(final Stream<O> objects) {
+        if (nonNull(objects)) {
+            return new TextEncodingInputStream<>(this::createEncoder, objects, chunkRecordCount, encodingParallelism, ForkJoinPool.commonPool());
+        }
+        return InputStream.nullInputStream();
+    }
+
+    private TextEncoder<O> createEncoder(final TextBuffer buffer) throws IOException {
+        CsvGenerator generator = MAPPER.getFactory().createGenerator(buffer, JsonEncoding.UTF8);
+        generator.setSchema(schema);
+        byte[] header = header().getBytes(StandardCharsets.UTF_8);
+        return new TextEncoder<>() {
+            @Override
+            public void writeHeader() {
+                buffer.write(header, 0, header.length);
+            }
+
+            @Override
+            public void write(final O record) throws IOException {
+                writer.writeValue(generator, record);
+            }
+
+            @Override
+            public void flush() throws IOException {
+                generator.flush();
+            }
+        };
+    }
+
+    private String header() {
+        StringBuilder header = new StringBuilder();
+        for (int i = 0; i < schema.size(); i++) {
+            if (i > 0) {
+                header.append(schema.getColumnSeparator());
+            }
+            appendName(header, schema.columnName(i));
+        }
+        return header.append(schema.getLineSeparator()).toString();
+    }
+
+    private void appendName(final StringBuilder header, final String name) {
+        char quote = (char) schema.getQuoteChar();
+        boolean quoted = name.indexOf(schema.getColumnSeparator()) >= 0 || name.indexOf(quote) >= 0
+                || name.indexOf('\n') >= 0 || name.indexOf('\r') >= 0;
+        if (!quoted) {
+            header.append(name);
+            return;
+        }
+        // Any quote in the name is escaped by doubling it
+        header.append(quote);
+        int start = 0;
+        for (int i = name.indexOf(quote); i >= 0; i = name.indexOf(quote, start)) {
+            header.append(name, start, i + 1).append(quote);
+            start = i + 1;
+        }
+        header.append(name, start, name.length()).append(quote);
+    }
+}
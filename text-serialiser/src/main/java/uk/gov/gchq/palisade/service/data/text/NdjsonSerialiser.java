@@ -0,0 +1,189 @@
+/*
+ * Copyright 2018-2021 Crown Copyright
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package uk.gov.gchq.palisade.service.data.text;
+
+import com.fasterxml.jackson.annotation.JsonAutoDetect.Visibility;
+import com.fasterxml.jackson.annotation.JsonCreator;
+import com.fasterxml.jackson.annotation.JsonProperty;
+import com.fasterxml.jackson.annotation.PropertyAccessor;
+import com.fasterxml.jackson.core.JsonEncoding;
+import com.fasterxml.jackson.core.JsonGenerator;
+import com.fasterxml.jackson.databind.DeserializationFeature;
+import com.fasterxml.jackson.databind.MappingIterator;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.ObjectReader;
+import com.fasterxml.jackson.databind.ObjectWriter;
+import com.fasterxml.jackson.databind.SerializationFeature;
+
+import uk.gov.gchq.palisade.Generated;
+import uk.gov.gchq.palisade.data.serialise.Serialiser;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.UncheckedIOException;
+import java.util.Spliterator;
+import java.util.Spliterators;
+import java.util.concurrent.ForkJoinPool;
+import java.util.stream.Stream;
+import java.util.stream.StreamSupport;
+
+import static java.util.Objects.nonNull;
+import static java.util.Objects.requireNonNull;
+
+/**
+ * An {@code NdjsonSerialiser} is used to serialise and deserialise newline-delimited JSON, with one JSON object for
+ * each record on its own line. Converts an NDJSON {@link InputStream} to/from a {@link Stream} of domain objects
+ * ({@link O}s).
+ * <p>
+ * As for the Avro serialiser, the fields of the domain class are written rather than its getters, unless the class is
+ * annotated otherwise. Records are written and read through Jackson's streaming generator and parser, without building
+ * a tree for each record, and each chunk of {@code chunkRecordCount} records is written to a reused buffer.
+ * If the {@code encodingParallelism} is greater than one, chunks are instead encoded in parallel on the
+ * {@link ForkJoinPool#commonPool()}.
+ *
+ * @param <O> the domain object type
+ */
+// Suppress making serialiser class itself serialisable
+@SuppressWarnings({"java:S2057", "java:S1948"})
+public class NdjsonSerialiser<O> implements Serialiser<O> {
+    private static final int DEFAULT_CHUNK_RECORD_COUNT = 4096;
+    private static final ObjectMapper MAPPER = new ObjectMapper()
+            .setVisibility(PropertyAccessor.GETTER, Visibility.NONE)
+            .setVisibility(PropertyAccessor.IS_GETTER, Visibility.NONE)
+            .setVisibility(PropertyAccessor.SETTER, Visibility.NONE)
+            .setVisibility(PropertyAccessor.FIELD, Visibility.ANY)
+            .configure(DeserializationFeature.FAIL_ON_UNKNOWN_PROPERTIES, false);
+
+    private final ObjectWriter writer;
+    private final ObjectReader reader;
+    private int encodingParallelism = 1;
+    private int chunkRecordCount = DEFAULT_CHUNK_RECORD_COUNT;
+
+    /**
+     * Constructor for the {@link NdjsonSerialiser}
+     *
+     * @param domainClass the class for the serialiser
+     */
+    @JsonCreator
+    public NdjsonSerialiser(@JsonProperty("domainClass") final Class<O> domainClass) {
+        requireNonNull(domainClass, "domainClass is required");
+        // Each chunk is flushed once, rather than after every record
+        this.writer = MAPPER.writerFor(domainClass).without(SerializationFeature.FLUSH_AFTER_WRITE_VALUE);
+        this.reader = MAPPER.readerFor(domainClass);
+    }
+
+    /**
+     * Sets the number of chunks to encode at once on the common fork-join pool, where 1 encodes each chunk on the
+     * thread reading the serialised stream.
+     *
+     * @param encodingParallelism the number of chunks to encode at once
+     * @return the current {@link NdjsonSerialiser} object
+     */
+    @Generated
+    public NdjsonSerialiser<O> encodingParallelism(final int encodingParallelism) {
+        this.setEncodingParallelism(encodingParallelism);
+        return this;
+    }
+
+    /**
+     * Sets the number of records written to the buffer in each chunk.
+     *
+     * @param chunkRecordCount the number of records in each chunk
+     * @return the current {@link NdjsonSerialiser} object
+     */
+    @Generated
+    public NdjsonSerialiser<O> chunkRecordCount(final int chunkRecordCount) {
+        this.setChunkRecordCount(chunkRecordCount);
+        return this;
+    }
+
+    @Generated
+    public int getEncodingParallelism() {
+        return encodingParallelism;
+    }
+
+    @Generated
+    public void setEncodingParallelism(final int encodingParallelism) {
+        if (encodingParallelism < 1) {
+            throw new IllegalArgumentException("encodingParallelism must be positive, but was " + encodingParallelism);
+        }
+        this.encodingParallelism = encodingParallelism;
+    }
+
+    @Generated
+    public int getChunkRecordCount() {
+        return chunkRecordCount;
+    }
+
+    @Generated
+    public void setChunkRecordCount(final int chunkRecordCount) {
+        if (chunkRecordCount < 1) {
+            throw new IllegalArgumentException("chunkRecordCount must be positive, but was " + chunkRecordCount);
+        }
+        this.chunkRecordCount = chunkRecordCount;
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public Stream<O> deserialise(final InputStream input) {
+        MappingIterator<O> records;
+        try {
+            records = reader.readValues(input);
+        } catch (IOException e) {
+            throw new UncheckedIOException("An error occurred during deserialisation", e);
+        }
+        return StreamSupport.stream(Spliterators.spliteratorUnknownSize(records, Spliterator.ORDERED | Spliterator.NONNULL), false)
+                .onClose(() -> {
+                    try {
+                        records.close();
+                    } catch (IOException e) {
+                        throw new UncheckedIOException("Failed to close the input stream", e);
+                    }
+                });
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public InputStream serialise(final Stream<O> objects) {
+        if (nonNull(objects)) {
+            return new TextEncodingInputStream<>(this::createEncoder, objects, chunkRecordCount, encodingParallelism, ForkJoinPool.commonPool());
+        }
+        return InputStream.nullInputStream();
+    }
+
+    private TextEncoder<O> createEncoder(final TextBuffer buffer) throws IOException {
+        JsonGenerator generator = MAPPER.getFactory().createGenerator(buffer, JsonEncoding.UTF8);
+        // Records are separated by a newline written after each one, so that chunks can be concatenated
+        generator.setRootValueSeparator(null);
+        return new TextEncoder<>() {
+            @Override
+            public void write(final O record) throws IOException {
+                writer.writeValue(generator, record);
+                generator.writeRaw('\n');
+            }
+
+            @Override
+            public void flush() throws IOException {
+                generator.flush();
+            }
+        };
+    }
+}
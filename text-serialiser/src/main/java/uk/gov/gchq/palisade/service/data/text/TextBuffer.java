@@ -0,0 +1,62 @@
+/*
+ * Copyright 2018-2021 Crown Copyright
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package uk.gov.gchq.palisade.service.data.text;
+
+import java.io.OutputStream;
+import java.util.Arrays;
+
+/**
+ * A growable buffer of encoded text, which is reset and reused for each chunk of records. The buffer's array may be
+ * read back without copying. Unlike a {@link java.io.ByteArrayOutputStream}, none of its methods are synchronized.
+ */
+final class TextBuffer extends OutputStream {
+    private static final int INITIAL_CAPACITY = 8192;
+
+    private byte[] bytes = new byte[INITIAL_CAPACITY];
+    private int size;
+
+    byte[] array() {
+        return bytes;
+    }
+
+    int size() {
+        return size;
+    }
+
+    void reset() {
+        size = 0;
+    }
+
+    @Override
+    public void write(final int b) {
+        ensureCapacity(size + 1);
+        bytes[size++] = (byte) b;
+    }
+
+    @Override
+    public void write(final byte[] b, final int offset, final int length) {
+        ensureCapacity(size + length);
+        System.arraycopy(b, offset, bytes, size, length);
+        size += length;
+    }
+
+    private void ensureCapacity(final int capacity) {
+        if (capacity > bytes.length) {
+            bytes = Arrays.copyOf(bytes, Math.max(capacity, bytes.length * 2));
+        }
+    }
+}
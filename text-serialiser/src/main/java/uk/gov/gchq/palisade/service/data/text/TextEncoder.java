@@ -0,0 +1,64 @@
+/*
+ * Copyright 2018-2021 Crown Copyright
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package uk.gov.gchq.palisade.service.data.text;
+
+import java.io.IOException;
+
+/**
+ * Encodes records as text to the {@link TextBuffer} it was created for. An encoder is reused for many chunks of
+ * records, but only ever by one thread at a time.
+ *
+ * @param <O> the domain object type
+ */
+interface TextEncoder<O> {
+
+    /**
+     * Write anything which must appear once at the start of the output, such as a header line.
+     *
+     * @throws IOException if the header could not be written
+     */
+    default void writeHeader() throws IOException {
+        // Most formats have no header
+    }
+
+    /**
+     * Write a record, including any line terminator.
+     *
+     * @param record the record to write
+     * @throws IOException if the record could not be written
+     */
+    void write(O record) throws IOException;
+
+    /**
+     * Write any characters still held by the encoder to its buffer.
+     *
+     * @throws IOException if the characters could not be written
+     */
+    default void flush() throws IOException {
+        // Most encoders write directly to their buffer
+    }
+
+    /**
+     * Creates an encoder writing to a given buffer.
+     *
+     * @param <O> the domain object type
+     */
+    @FunctionalInterface
+    interface Factory<O> {
+        TextEncoder<O> create(TextBuffer buffer) throws IOException;
+    }
+}
@@ -0,0 +1,231 @@
+/*
+ * Copyright 2018-2021 Crown Copyright
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package uk.gov.gchq.palisade.service.data.text;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.UncheckedIOException;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Deque;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Queue;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.Executor;
+import java.util.stream.Stream;
+
+import static java.util.Objects.requireNonNull;
+
+/**
+ * An {@link InputStream} of text, encoded lazily from a {@link Stream} of domain objects in chunks of a fixed number of
+ * records. Records are pulled from the stream on the thread reading from this {@link InputStream}.
+ * <p>
+ * With a {@code parallelism} of one, each chunk is encoded on the reading thread by a single encoder, whose buffer is
+ * reused for every chunk. Otherwise, each chunk is encoded on the given {@link Executor}, with up to {@code parallelism}
+ * chunks in flight at once, and written out in the original order. Each chunk's encoder is reused once the chunk has
+ * been read, so no more encoders are created than there are chunks in flight.
+ *
+ * @param <O> the domain object type
+ */
+class TextEncodingInputStream<O> extends InputStream {
+    private final TextEncoder.Factory<O> encoders;
+    private final Stream<O> objects;
+    private final Iterator<O> iterator;
+    private final int chunkRecords;
+    private final int parallelism;
+    private final Executor executor;
+    private final Queue<Chunk<O>> idle = new ConcurrentLinkedQueue<>();
+    private final Deque<CompletableFuture<Chunk<O>>> inFlight = new ArrayDeque<>();
+    private Chunk<O> current;
+    private int position;
+    private boolean started;
+    private boolean finished;
+
+    /**
+     * Create a new {@link TextEncodingInputStream}, nothing will be read from the stream of objects until this
+     * {@link InputStream} is itself read.
+     *
+     * @param encoders     a factory for the encoders of each chunk
+     * @param objects      the stream of domain objects to encode
+     * @param chunkRecords the number of records to write in each chunk
+     * @param parallelism  the maximum number of chunks to encode at once, where 1 encodes on the reading thread
+     * @param executor     the executor on which chunks are encoded if the parallelism is greater than one
+     */
+    TextEncodingInputStream(final TextEncoder.Factory<O> encoders, final Stream<O> objects, final int chunkRecords, final int parallelism, final Executor executor) {
+        if (chunkRecords < 1) {
+            throw new IllegalArgumentException("chunkRecords must be positive, but was " + chunkRecords);
+        }
+        if (parallelism < 1) {
+            throw new IllegalArgumentException("parallelism must be positive, but was " + parallelism);
+        }
+        this.encoders = requireNonNull(encoders, "encoders is required");
+        this.objects = requireNonNull(objects, "objects is required");
+        this.iterator = objects.iterator();
+        this.chunkRecords = chunkRecords;
+        this.parallelism = parallelism;
+        this.executor = requireNonNull(executor, "executor is required");
+    }
+
+    @Override
+    public int read() throws IOException {
+        if (!ensureBuffered()) {
+            return -1;
+        }
+        return current.buffer.array()[position++] & 0xFF;
+    }
+
+    @Override
+    public int read(final byte[] bytes, final int offset, final int length) throws IOException {
+        if (length == 0) {
+            return 0;
+        }
+        if (!ensureBuffered()) {
+            return -1;
+        }
+        int count = Math.min(length, current.buffer.size() - position);
+        System.arraycopy(current.buffer.array(), position, bytes, offset, count);
+        position += count;
+        return count;
+    }
+
+    @Override
+    public int available() {
+        return current != null ? current.buffer.size() - position : 0;
+    }
+
+    @Override
+    public void close() {
+        finished = true;
+        // Any encoder still running when cancelled is left for the garbage collector
+        inFlight.forEach(chunk -> chunk.cancel(false));
+        inFlight.clear();
+        release();
+        objects.close();
+    }
+
+    private boolean ensureBuffered() throws IOException {
+        while (current == null || position == current.buffer.size()) {
+            if (finished) {
+                return false;
+            }
+            position = 0;
+            if (!nextChunk()) {
+                finished = true;
+                objects.close();
+                return false;
+            }
+        }
+        return true;
+    }
+
+    private boolean nextChunk() throws IOException {
+        // The previous chunk has now been read, so its encoder can be reused
+        release();
+        if (!started) {
+            started = true;
+            Chunk<O> header = borrow();
+            header.encoder.writeHeader();
+            header.encoder.flush();
+            current = header;
+            return true;
+        }
+        if (parallelism == 1) {
+            if (!iterator.hasNext()) {
+                return false;
+            }
+            Chunk<O> chunk = borrow();
+            chunk.encode(iterator, chunkRecords);
+            current = chunk;
+            return true;
+        }
+        while (inFlight.size() < parallelism && iterator.hasNext()) {
+            List<O> records = new ArrayList<>(chunkRecords);
+            while (records.size() < chunkRecords && iterator.hasNext()) {
+                records.add(iterator.next());
+            }
+            inFlight.add(CompletableFuture.supplyAsync(() -> encodeUnchecked(records), executor));
+        }
+        if (inFlight.isEmpty()) {
+            return false;
+        }
+        current = await(inFlight.remove());
+        return true;
+    }
+
+    private Chunk<O> borrow() throws IOException {
+        Chunk<O> chunk = idle.poll();
+        if (chunk == null) {
+            TextBuffer buffer = new TextBuffer();
+            chunk = new Chunk<>(buffer, encoders.create(buffer));
+        }
+        chunk.buffer.reset();
+        return chunk;
+    }
+
+    private void release() {
+        if (current != null) {
+            idle.add(current);
+            current = null;
+        }
+    }
+
+    private Chunk<O> encodeUnchecked(final List<O> records) {
+        try {
+            Chunk<O> chunk = borrow();
+            chunk.encode(records.iterator(), records.size());
+            return chunk;
+        } catch (IOException e) {
+            throw new UncheckedIOException("An error occurred during serialisation", e);
+        }
+    }
+
+    private static <O> Chunk<O> await(final CompletableFuture<Chunk<O>> chunk) throws IOException {
+        try {
+            return chunk.join();
+        } catch (CompletionException e) {
+            if (e.getCause() instanceof UncheckedIOException) {
+                throw ((UncheckedIOException) e.getCause()).getCause();
+            }
+            throw e;
+        }
+    }
+
+    /**
+     * An encoder and the buffer it writes to.
+     *
+     * @param <O> the domain object type
+     */
+    private static final class Chunk<O> {
+        private final TextBuffer buffer;
+        private final TextEncoder<O> encoder;
+
+        Chunk(final TextBuffer buffer, final TextEncoder<O> encoder) {
+            this.buffer = buffer;
+            this.encoder = encoder;
+        }
+
+        void encode(final Iterator<O> records, final int count) throws IOException {
+            for (int i = 0; i < count && records.hasNext(); i++) {
+                encoder.write(records.next());
+            }
+            encoder.flush();
+        }
+    }
+}
@@ -0,0 +1,192 @@
+/*
+ * Copyright 2018-2021 Crown Copyright
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package uk.gov.gchq.palisade.service.data.text;
+
+import com.fasterxml.jackson.annotation.JsonProperty;
+import org.junit.jupiter.api.Test;
+
+import uk.gov.gchq.palisade.Generated;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.util.List;
+import java.util.Objects;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+class CsvSerialiserTest {
+    static class Contact {
+        private String name;
+        private Integer extension;
+        private List<String> teams;
+
+        @SuppressWarnings("unused")
+        Contact() {
+            // Used for serialisation
+        }
+
+        Contact(final String name, final Integer extension, final List<String> teams) {
+            this.name = name;
+            this.extension = extension;
+            this.teams = teams;
+        }
+
+        @Override
+        @Generated
+        public boolean equals(final Object o) {
+            if (this == o) {
+                return true;
+            }
+            if (!(o instanceof Contact)) {
+                return false;
+            }
+            final Contact that = (Contact) o;
+            return Objects.equals(name, that.name) &&
+                    Objects.equals(extension, that.extension) &&
+                    Objects.equals(teams, that.teams);
+        }
+
+        @Override
+        @Generated
+        public int hashCode() {
+            return Objects.hash(name, extension, teams);
+        }
+    }
+
+    static class Name {
+        private String name;
+
+        @SuppressWarnings("unused")
+        Name() {
+            // Used for serialisation
+        }
+
+        Name(final String name) {
+            this.name = name;
+        }
+
+        @Override
+        @Generated
+        public boolean equals(final Object o) {
+            if (this == o) {
+                return true;
+            }
+            if (!(o instanceof Name)) {
+                return false;
+            }
+            return Objects.equals(name, ((Name) o).name);
+        }
+
+        @Override
+        @Generated
+        public int hashCode() {
+            return Objects.hash(name);
+        }
+    }
+
+    static class Quoted {
+        @JsonProperty("surname, forename")
+        private String name;
+        @JsonProperty("\"role\"")
+        private String role;
+    }
+
+    CsvSerialiser<Contact> serialiser = new CsvSerialiser<>(Contact.class);
+
+    @Test
+    void testSerialiseAndDeserialiseQuotedValuesAcrossChunks() {
+        // Given values which must be quoted, or which take more than one byte
+        var contacts = List.of(
+                new Contact("Smith, \"Jo\"", 101, List.of("sales", "support")),
+                new Contact("line one\nline two", null, List.of()),
+                new Contact("é€😀", 103, List.of("ops")));
+
+        // When each record is written in its own chunk
+        var inputStream = serialiser.chunkRecordCount(1).serialise(contacts.stream());
+        var contactStream = serialiser.deserialise(inputStream);
+
+        // Then
+        assertThat(contactStream.collect(Collectors.toList()))
+                .as("Check the serialised-deserialised records match their original counterparts")
+                .isEqualTo(contacts);
+    }
+
+    @Test
+    void testParallelSerialiseIsIdentical() throws IOException {
+        // Given
+        var contacts = List.of(
+                new Contact("one", 1, List.of("a")),
+                new Contact("two", 2, List.of("b")),
+                new Contact("three", 3, List.of("c")),
+                new Contact("four", 4, List.of("d")));
+        var parallelSerialiser = new CsvSerialiser<>(Contact.class).chunkRecordCount(1).encodingParallelism(4);
+
+        // When
+        var sequential = serialiser.chunkRecordCount(1).serialise(contacts.stream()).readAllBytes();
+        var parallel = parallelSerialiser.serialise(contacts.stream()).readAllBytes();
+
+        // Then
+        assertThat(parallel)
+                .as("Check that chunks encoded in parallel are written in their original order, after a single header")
+                .isEqualTo(sequential);
+    }
+
+    @Test
+    void testSerialiseEmptyStreamAsHeader() throws IOException {
+        // Given
+        var inputStream = serialiser.serialise(Stream.empty());
+
+        // When
+        var text = new String(inputStream.readAllBytes(), StandardCharsets.UTF_8);
+
+        // Then
+        assertThat(text)
+                .as("Check that an empty stream is serialised as just the header line, with the columns in name order")
+                .isEqualTo("extension,name,teams\n");
+    }
+
+    @Test
+    void testHeaderQuotesColumnNames() throws IOException {
+        // Given
+        var quotedSerialiser = new CsvSerialiser<>(Quoted.class);
+
+        // When
+        var text = new String(quotedSerialiser.serialise(Stream.empty()).readAllBytes(), StandardCharsets.UTF_8);
+
+        // Then
+        assertThat(text)
+                .as("Check that column names containing separators or quotes are quoted in the header")
+                .isEqualTo("\"\"\"role\"\"\",\"surname, forename\"\n");
+    }
+
+    @Test
+    void testDeserialiseSubsetOfColumns() {
+        // Given
+        var contacts = List.of(new Contact("one", 1, List.of("a")), new Contact("two", 2, List.of("b")));
+        var nameSerialiser = new CsvSerialiser<>(Name.class);
+
+        // When
+        var names = nameSerialiser.deserialise(serialiser.serialise(contacts.stream()));
+
+        // Then
+        assertThat(names.collect(Collectors.toList()))
+                .as("Check that columns not in the domain class are ignored")
+                .containsExactly(new Name("one"), new Name("two"));
+    }
+}
@@ -0,0 +1,189 @@
+/*
+ * Copyright 2018-2021 Crown Copyright
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package uk.gov.gchq.palisade.service.data.text;
+
+import org.junit.jupiter.api.Test;
+
+import uk.gov.gchq.palisade.Generated;
+
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.util.List;
+import java.util.Objects;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+
+class NdjsonSerialiserTest {
+    static class Source {
+        private String host;
+        private int port;
+
+        @SuppressWarnings("unused")
+        Source() {
+            // Used for serialisation
+        }
+
+        Source(final String host, final int port) {
+            this.host = host;
+            this.port = port;
+        }
+
+        @Override
+        @Generated
+        public boolean equals(final Object o) {
+            if (this == o) {
+                return true;
+            }
+            if (!(o instanceof Source)) {
+                return false;
+            }
+            final Source that = (Source) o;
+            return port == that.port &&
+                    Objects.equals(host, that.host);
+        }
+
+        @Override
+        @Generated
+        public int hashCode() {
+            return Objects.hash(host, port);
+        }
+    }
+
+    static class LogEntry {
+        private String message;
+        private Source source;
+        private List<String> tags;
+
+        @SuppressWarnings("unused")
+        LogEntry() {
+            // Used for serialisation
+        }
+
+        LogEntry(final String message, final Source source, final List<String> tags) {
+            this.message = message;
+            this.source = source;
+            this.tags = tags;
+        }
+
+        @Override
+        @Generated
+        public boolean equals(final Object o) {
+            if (this == o) {
+                return true;
+            }
+            if (!(o instanceof LogEntry)) {
+                return false;
+            }
+            final LogEntry that = (LogEntry) o;
+            return Objects.equals(message, that.message) &&
+                    Objects.equals(source, that.source) &&
+                    Objects.equals(tags, that.tags);
+        }
+
+        @Override
+        @Generated
+        public int hashCode() {
+            return Objects.hash(message, source, tags);
+        }
+    }
+
+    NdjsonSerialiser<LogEntry> serialiser = new NdjsonSerialiser<>(LogEntry.class);
+
+    @Test
+    void testSerialiseAndDeserialiseNestedRecordsAcrossChunks() {
+        // Given
+        var entries = List.of(
+                new LogEntry("started", new Source("host-a", 8080), List.of("boot")),
+                new LogEntry("no source", null, null),
+                new LogEntry("é€😀", new Source("host-b", 8443), List.of()));
+
+        // When each record is written in its own chunk
+        var inputStream = serialiser.chunkRecordCount(1).serialise(entries.stream());
+        var entryStream = serialiser.deserialise(inputStream);
+
+        // Then
+        assertThat(entryStream.collect(Collectors.toList()))
+                .as("Check the serialised-deserialised records, and their null fields, match their original counterparts")
+                .isEqualTo(entries);
+    }
+
+    @Test
+    void testSerialiseOneRecordPerLine() throws IOException {
+        // Given a record with a newline in one of its values
+        var entries = List.of(
+                new LogEntry("first\nsecond", new Source("host-a", 8080), List.of("multi-line")),
+                new LogEntry("third", null, null));
+
+        // When
+        var text = new String(serialiser.serialise(entries.stream()).readAllBytes(), StandardCharsets.UTF_8);
+
+        // Then
+        assertThat(text)
+                .as("Check that each record is written on its own line, with any newline in a value escaped")
+                .isEqualTo("{\"message\":\"first\\nsecond\",\"source\":{\"host\":\"host-a\",\"port\":8080},\"tags\":[\"multi-line\"]}\n"
+                        + "{\"message\":\"third\",\"source\":null,\"tags\":null}\n");
+    }
+
+    @Test
+    void testParallelSerialiseIsIdentical() throws IOException {
+        // Given
+        var entries = List.of(
+                new LogEntry("one", null, List.of("a")),
+                new LogEntry("two", null, List.of("b")),
+                new LogEntry("three", null, List.of("c")),
+                new LogEntry("four", null, List.of("d")));
+        var parallelSerialiser = new NdjsonSerialiser<>(LogEntry.class).chunkRecordCount(1).encodingParallelism(4);
+
+        // When
+        var sequential = serialiser.chunkRecordCount(1).serialise(entries.stream()).readAllBytes();
+        var parallel = parallelSerialiser.serialise(entries.stream()).readAllBytes();
+
+        // Then
+        assertThat(parallel)
+                .as("Check that chunks encoded in parallel are written in their original order")
+                .isEqualTo(sequential);
+    }
+
+    @Test
+    void testSerialiseAndDeserialiseEmptyStream() throws IOException {
+        // Given
+        var inputStream = serialiser.serialise(Stream.empty());
+
+        // When
+        var bytes = inputStream.readAllBytes();
+
+        // Then
+        assertThat(bytes)
+                .as("Check that an empty stream is serialised as no lines")
+                .isEmpty();
+        assertThat(serialiser.deserialise(new ByteArrayInputStream(bytes)))
+                .as("Check that no lines are deserialised as an empty stream")
+                .isEmpty();
+    }
+
+    @Test
+    void testInvalidChunkRecordCountIsRejected() {
+        // Then
+        assertThatThrownBy(() -> serialiser.chunkRecordCount(0))
+                .as("Check that a chunk must hold at least one record")
+                .isInstanceOf(IllegalArgumentException.class);
+    }
+}
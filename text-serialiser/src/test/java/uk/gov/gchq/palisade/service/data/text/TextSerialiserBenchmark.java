@@ -0,0 +1,148 @@
+/*
+ * Copyright 2018-2021 Crown Copyright
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package uk.gov.gchq.palisade.service.data.text;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.runner.Runner;
+import org.openjdk.jmh.runner.RunnerException;
+import org.openjdk.jmh.runner.options.OptionsBuilder;
+
+import uk.gov.gchq.palisade.data.serialise.Serialiser;
+import uk.gov.gchq.palisade.service.data.avro.AvroSerialiser;
+
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+import java.util.stream.Collectors;
+import java.util.stream.IntStream;
+import java.util.stream.Stream;
+
+/**
+ * Compares the throughput of the NDJSON and CSV serialisers against the Avro serialiser, for the same flat domain
+ * objects. This is not run as part of the test suite, but may be run from its {@code main} method on the test classpath.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class TextSerialiserBenchmark {
+    private static final int RECORD_COUNT = 100_000;
+    private static final int BUFFER_SIZE = 8192;
+
+    @Param({"avro", "ndjson", "csv", "ndjson-parallel", "csv-parallel"})
+    private String format;
+
+    private List<Trade> trades;
+    private Serialiser<Trade> serialiser;
+    private byte[] serialised;
+
+    public enum Side {
+        BUY, SELL
+    }
+
+    public static class Trade {
+        private String symbol;
+        private long timestamp;
+        private double price;
+        private int quantity;
+        private boolean settled;
+        private Side side;
+
+        @SuppressWarnings("unused")
+        Trade() {
+            // Used for serialisation
+        }
+
+        Trade(final int i) {
+            this.symbol = "SYM" + i % 500;
+            this.timestamp = 1_600_000_000_000L + i;
+            this.price = 100 + i % 1000 / 100.0;
+            this.quantity = i % 300;
+            this.settled = i % 7 != 0;
+            this.side = i % 2 == 0 ? Side.BUY : Side.SELL;
+        }
+    }
+
+    @Setup
+    public void setup() throws IOException {
+        trades = IntStream.range(0, RECORD_COUNT)
+                .mapToObj(Trade::new)
+                .collect(Collectors.toList());
+        switch (format) {
+            case "avro":
+                serialiser = new AvroSerialiser<>(Trade.class);
+                break;
+            case "ndjson":
+                serialiser = new NdjsonSerialiser<>(Trade.class);
+                break;
+            case "csv":
+                serialiser = new CsvSerialiser<>(Trade.class);
+                break;
+            case "ndjson-parallel":
+                serialiser = new NdjsonSerialiser<>(Trade.class).encodingParallelism(Runtime.getRuntime().availableProcessors());
+                break;
+            case "csv-parallel":
+                serialiser = new CsvSerialiser<>(Trade.class).encodingParallelism(Runtime.getRuntime().availableProcessors());
+                break;
+            default:
+                throw new IllegalArgumentException("Unknown format " + format);
+        }
+        try (InputStream input = serialiser.serialise(trades.stream())) {
+            serialised = input.readAllBytes();
+        }
+    }
+
+    @Benchmark
+    public long serialise() throws IOException {
+        long bytes = 0;
+        byte[] buffer = new byte[BUFFER_SIZE];
+        try (InputStream input = serialiser.serialise(trades.stream())) {
+            for (int read = input.read(buffer); read >= 0; read = input.read(buffer)) {
+                bytes += read;
+            }
+        }
+        return bytes;
+    }
+
+    @Benchmark
+    public long deserialise() throws IOException {
+        try (Stream<Trade> records = serialiser.deserialise(new ByteArrayInputStream(serialised))) {
+            return records.count();
+        }
+    }
+
+    public static void main(final String[] args) throws RunnerException {
+        new Runner(new OptionsBuilder()
+                .include(TextSerialiserBenchmark.class.getSimpleName())
+                .build())
+                .run();
+    }
+}